@@ -3,29 +3,50 @@ package org.mate;
 import org.mate.accessibility.ImageHandler;
 import org.mate.endpoints.*;
 import org.mate.io.Device;
+import org.mate.network.AdmissionController;
 import org.mate.network.Endpoint;
 import org.mate.network.Router;
+import org.mate.network.SelectorServer;
 import org.mate.network.message.Message;
 import org.mate.network.message.Messages;
+import org.mate.network.message.PayloadCompression;
 import org.mate.network.message.serialization.Parser;
-import org.mate.network.message.serialization.Serializer;
+import org.mate.network.metrics.RequestMetrics;
+import org.mate.network.message.serialization.MessageWriter;
 import org.mate.pdf.Report;
+import org.mate.traces.TraceCollector;
+import org.mate.traces.TraceStore;
 import org.mate.util.AndroidEnvironment;
 import org.mate.util.Log;
+import org.mate.util.Threads;
 
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.nio.channels.Channels;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Server {
     private static final String MATE_SERVER_PROPERTIES_PATH = "mate-server.properties";
@@ -34,6 +55,20 @@ public class Server {
     private int port;
     private boolean cleanup;
 
+    // the path of an additional unix domain socket for co-located clients, null if disabled
+    private Path unixSocketPath;
+
+    // either 'blocking' (one thread per connection) or 'selector' (non-blocking connections, bounded worker pool)
+    private String connectionMode;
+
+    // the number of worker threads (also used for batch requests) and the maximal number of queued requests in the
+    // 'selector' connection mode, with virtual threads the maximal number of concurrently handled requests instead
+    private int workerThreads;
+    private int workerQueue;
+
+    // either 'platform' or 'virtual' threads (requires JDK 21+) for handling connections and requests
+    private String executionMode;
+
     // TODO: Store results within app directory, e.g. apps/com.zola.bmi/results/.
     @Deprecated
     private Path resultsPath;
@@ -46,6 +81,58 @@ public class Server {
 
     private AndroidEnvironment androidEnvironment;
 
+    // executes the connections and the pipelined requests in the 'blocking' connection mode
+    private ExecutorService executorService;
+
+    // the statistics of the handled requests
+    private final RequestMetrics metrics;
+
+    // the interval in seconds in which the request statistics are logged, 0 disables logging
+    private long metricsDumpInterval;
+
+    // limits the number of concurrently executed expensive requests
+    private AdmissionController admissionController;
+
+    // the maximal time in seconds to wait for the requests in flight when the server is drained
+    private long drainTimeout;
+
+    // the number of megabytes the decoded traces files may occupy in memory, 0 disables caching
+    private long traceCacheSize;
+
+    // whether the raw traces pulled from the emulator are archived in addition to the binary traces files
+    private boolean archiveTraces;
+
+    // the number of megabytes the compressed parameters of a request may occupy once decompressed
+    private long maxDecompressedSize;
+
+    // the interval in seconds in which the traces of dead chromosomes are collected, 0 disables the collection
+    private long traceGcInterval;
+
+    // the minimal age in seconds of a dead chromosome before its traces are collected
+    private long traceGcMinAge;
+
+    // the number of megabytes the traces of an app may occupy before dead chromosomes are collected, 0 means always
+    private long traceGcMaxSize;
+
+    // removes the traces of the chromosomes that are no longer live
+    private TraceCollector traceCollector;
+
+    // periodically collects the traces of dead chromosomes, null if disabled
+    private ScheduledExecutorService traceGc;
+
+    // set once the server is drained, further requests are rejected
+    private volatile boolean draining;
+
+    // tracks the requests that are currently handled
+    private final Phaser inFlightRequests;
+
+    // the listening channels and the open client connections of the 'blocking' connection mode
+    private final List<ServerSocketChannel> listeners;
+    private final Set<SocketChannel> connections;
+
+    // the connection engine of the 'selector' connection mode
+    private volatile SelectorServer selectorServer;
+
     public static void main(String[] args) {
         Server server = new Server();
         server.loadConfig();
@@ -60,6 +147,24 @@ public class Server {
         router = new Router();
         port = 12345;
         cleanup = true;
+        connectionMode = "blocking";
+        workerThreads = Runtime.getRuntime().availableProcessors();
+        workerQueue = 256;
+        executionMode = "platform";
+        // subjects without an endpoint, e.g. garbage sent by a broken client, don't get metrics of their own
+        metrics = new RequestMetrics(subject -> router.resolve(subject) != null);
+        metricsDumpInterval = 0;
+        admissionController = AdmissionController.fromProperties(new Properties());
+        drainTimeout = 30;
+        traceCacheSize = 64;
+        archiveTraces = false;
+        maxDecompressedSize = PayloadCompression.DEFAULT_MAX_SIZE / (1024 * 1024);
+        traceGcInterval = 60;
+        traceGcMinAge = 600;
+        traceGcMaxSize = 0;
+        inFlightRequests = new Phaser(1);
+        listeners = new CopyOnWriteArrayList<>();
+        connections = new HashSet<>();
         resultsPath = Path.of("results");
         appsDir = Path.of("apps");
         logger = new Log();
@@ -82,6 +187,31 @@ public class Server {
         cleanup = Optional.ofNullable(properties.getProperty("cleanup")).map(Boolean::valueOf).orElse(cleanup);
         resultsPath = Optional.ofNullable(properties.getProperty("results_path")).map(Paths::get).orElse(resultsPath);
         appsDir = Optional.ofNullable(properties.getProperty("apps_dir")).map(Paths::get).orElse(appsDir);
+        unixSocketPath = Optional.ofNullable(properties.getProperty("unix_socket_path")).map(Paths::get)
+                .orElse(unixSocketPath);
+        connectionMode = Optional.ofNullable(properties.getProperty("connection_mode")).orElse(connectionMode);
+        workerThreads = Optional.ofNullable(properties.getProperty("worker_threads")).map(Integer::valueOf)
+                .orElse(workerThreads);
+        workerQueue = Optional.ofNullable(properties.getProperty("worker_queue")).map(Integer::valueOf)
+                .orElse(workerQueue);
+        executionMode = Optional.ofNullable(properties.getProperty("execution_mode")).orElse(executionMode);
+        metricsDumpInterval = Optional.ofNullable(properties.getProperty("metrics_dump_interval")).map(Long::valueOf)
+                .orElse(metricsDumpInterval);
+        admissionController = AdmissionController.fromProperties(properties);
+        drainTimeout = Optional.ofNullable(properties.getProperty("drain_timeout")).map(Long::valueOf)
+                .orElse(drainTimeout);
+        traceCacheSize = Optional.ofNullable(properties.getProperty("trace_cache_size")).map(Long::valueOf)
+                .orElse(traceCacheSize);
+        archiveTraces = Optional.ofNullable(properties.getProperty("archive_traces")).map(Boolean::valueOf)
+                .orElse(archiveTraces);
+        maxDecompressedSize = Optional.ofNullable(properties.getProperty("max_decompressed_size"))
+                .map(Long::valueOf).orElse(maxDecompressedSize);
+        traceGcInterval = Optional.ofNullable(properties.getProperty("trace_gc_interval")).map(Long::valueOf)
+                .orElse(traceGcInterval);
+        traceGcMinAge = Optional.ofNullable(properties.getProperty("trace_gc_min_age")).map(Long::valueOf)
+                .orElse(traceGcMinAge);
+        traceGcMaxSize = Optional.ofNullable(properties.getProperty("trace_gc_max_size")).map(Long::valueOf)
+                .orElse(traceGcMaxSize);
     }
 
     /**
@@ -89,6 +219,9 @@ public class Server {
      */
     public void init() {
         androidEnvironment = new AndroidEnvironment();
+        TraceStore.setCacheCapacity(traceCacheSize * 1024 * 1024);
+        PayloadCompression.setMaxSize(maxDecompressedSize * 1024 * 1024);
+        traceCollector = new TraceCollector(appsDir, traceGcMinAge * 1000, traceGcMaxSize * 1024 * 1024);
         ImageHandler imageHandler = new ImageHandler(androidEnvironment, appsDir);
         router.add("/legacy", new LegacyEndpoint(androidEnvironment, imageHandler));
         closeEndpoint = new CloseEndpoint();
@@ -103,6 +236,13 @@ public class Server {
         router.add("/utility", new UtilityEndpoint(androidEnvironment, appsDir));
         router.add("/fitness", new FitnessEndpoint(androidEnvironment, appsDir));
         router.add("/graph", new GraphEndpoint(androidEnvironment, appsDir));
+        // virtual threads must not be pooled, but a thread per sub request is bounded by the worker queue
+        final ExecutorService batchExecutor = useVirtualThreads() && Threads.virtualThreadsAvailable()
+                ? Threads.newWorkerExecutor("mate-batch", workerThreads, workerQueue, true)
+                : Executors.newFixedThreadPool(workerThreads, Threads.newThreadFactory("mate-batch", false));
+        router.add("/batch", new BatchEndpoint(this::handleRequest, batchExecutor));
+        router.add("/metrics", new MetricsEndpoint(metrics));
+        router.add("/traces", new TracesEndpoint(traceCollector));
 
         cleanup();
         createFolders();
@@ -134,89 +274,332 @@ public class Server {
      */
     public void run() {
 
-        final var executorService = Executors.newCachedThreadPool();
+        if (useVirtualThreads() && !Threads.virtualThreadsAvailable()) {
+            Log.printWarning("Virtual threads are not supported by this JVM, falling back to platform threads!");
+        }
+
+        if (metricsDumpInterval > 0) {
+            final var metricsDumper = Executors.newSingleThreadScheduledExecutor(
+                    Threads.newThreadFactory("mate-metrics", false));
+            metricsDumper.scheduleAtFixedRate(() -> Log.println(metrics.toString()),
+                    metricsDumpInterval, metricsDumpInterval, TimeUnit.SECONDS);
+        }
+
+        if (traceGcInterval > 0) {
+            traceGc = Executors.newSingleThreadScheduledExecutor(
+                    Threads.newThreadFactory("mate-gc", false));
+            traceGc.scheduleWithFixedDelay(traceCollector::collect,
+                    traceGcInterval, traceGcInterval, TimeUnit.SECONDS);
+        }
+
+        // drain the server when the process is terminated, e.g. by SIGTERM
+        Runtime.getRuntime().addShutdownHook(new Thread(this::drain, "mate-drain"));
+
+        switch (connectionMode) {
+            case "blocking":
+                runBlocking();
+                break;
+            case "selector":
+                runSelector();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown connection mode: " + connectionMode);
+        }
+    }
 
-        try (final ServerSocket server = new ServerSocket(port)) {
-            if (port == 0) {
-                // Don't remove this log, it is read by mate-commander.
-                System.out.println(server.getLocalPort());
+    /**
+     * Accepts incoming connections and handles each connection on a dedicated thread. If a unix domain socket is
+     * configured, its connections are accepted on a separate thread.
+     */
+    private void runBlocking() {
+
+        executorService = Threads.newPerTaskExecutor(useVirtualThreads());
+
+        try (final var server = ServerSocketChannel.open();
+             final var unixServer = unixSocketPath != null ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+                     : null) {
+            // allows a restarted server to bind the port while connections of the previous server are in TIME_WAIT
+            server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            server.bind(new InetSocketAddress(port));
+            listeners.add(server);
+
+            if (unixServer != null) {
+                // a stale socket file of a previous run prevents binding
+                Files.deleteIfExists(unixSocketPath);
+                unixServer.bind(UnixDomainSocketAddress.of(unixSocketPath));
+                Log.println("listening on unix domain socket " + unixSocketPath);
+                listeners.add(unixServer);
             }
 
-            logger.doLog();
-            Device.loadActiveDevices(androidEnvironment);
-            Device.appsDir = appsDir;
+            onListening(server.socket().getLocalPort());
 
-            while (true) {
-                Device.listActiveDevices();
-                Log.println("waiting for connection");
-                final var client = server.accept();
-                executorService.submit(() -> handleConnection(client));
+            if (unixServer != null) {
+                executorService.submit(() -> acceptConnections(unixServer));
+            }
+            acceptConnections(server);
+        } catch (AsynchronousCloseException e) {
+            if (!draining) {
+                Log.println("Unexpected exception:", e);
             }
         } catch (Exception e) {
             Log.println("Unexpected exception:", e);
             Device.listDevices(androidEnvironment);
         } finally {
+            // while draining, the connections are still served and the drain takes care of the cleanup
+            if (!draining) {
+                executorService.shutdownNow();
+                deleteUnixSocket();
+            }
+        }
+    }
+
+    /**
+     * Accepts the incoming connections of the given server socket channel until it is closed.
+     *
+     * @param server The server socket channel, either the TCP or the unix domain socket.
+     * @throws IOException If accepting a connection fails.
+     */
+    private void acceptConnections(final ServerSocketChannel server) throws IOException {
+        while (true) {
+            Device.listActiveDevices();
+            Log.println("waiting for connection");
+            final var client = server.accept();
+            executorService.submit(() -> handleConnection(client));
+        }
+    }
+
+    /**
+     * Serves all connections from a single selector thread and handles the requests on a bounded executor, i.e. a
+     * pool of platform threads or a virtual thread per request.
+     */
+    private void runSelector() {
+
+        try (final var server = new SelectorServer(port, unixSocketPath,
+                Threads.newWorkerExecutor("mate-worker", workerThreads, workerQueue, useVirtualThreads()),
+                this::handleRequest, closeEndpoint::isClosed, metrics)) {
+            selectorServer = server;
+            onListening(server.bind());
+            Device.listActiveDevices();
+            server.serve();
+        } catch (Exception e) {
+            Log.println("Unexpected exception:", e);
+            Device.listDevices(androidEnvironment);
+        }
+    }
+
+    /**
+     * Drains the server, which is invoked when the process is terminated. The server stops accepting connections and
+     * waits up to {@code drain_timeout} seconds for the requests in flight to complete, while further requests are
+     * rejected. Afterwards, the endpoints persist their state, see {@link Endpoint#drain()}. Thus, the server can be
+     * restarted or replaced by a new server on the same port without interrupting requests midway, e.g. an adb pull.
+     */
+    public synchronized void drain() {
+
+        if (draining) {
+            return;
+        }
+        draining = true;
+        Log.println("draining server");
+
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(drainTimeout);
+
+        // a running collection completes, but no further collection removes traces the endpoints are about to flush
+        final ScheduledExecutorService gc = traceGc;
+        if (gc != null) {
+            gc.shutdown();
+        }
+
+        // stop accepting connections and close the client connections once their requests have been answered
+        final SelectorServer selector = selectorServer;
+        if (selector != null) {
+            selector.drain();
+        }
+        for (final ServerSocketChannel listener : listeners) {
+            try {
+                listener.close();
+            } catch (IOException e) {
+                Log.println("Closing the server socket failed: " + e);
+            }
+        }
+        synchronized (connections) {
+            for (final SocketChannel connection : connections) {
+                try {
+                    // unblocks the reading thread, the response to the current request is still sent
+                    connection.shutdownInput();
+                } catch (IOException e) {
+                    Log.println("Shutting down connection failed: " + e);
+                }
+            }
+        }
+
+        try {
+            final int phase = inFlightRequests.arrive();
+            inFlightRequests.awaitAdvanceInterruptibly(phase, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+
+            final boolean closed = selector != null
+                    ? selector.awaitConnectionsClosed(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)
+                    : awaitConnectionsClosed(deadline);
+            if (!closed) {
+                Log.printWarning("Drain timeout elapsed before all connections have been closed!");
+            }
+        } catch (TimeoutException e) {
+            Log.printWarning("Drain timeout elapsed with " + (inFlightRequests.getRegisteredParties() - 1)
+                    + " requests in flight!");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (gc != null) {
+            try {
+                if (!gc.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    Log.printWarning("Drain timeout elapsed before the trace collection has been completed!");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        for (final Endpoint endpoint : router.getEndpoints()) {
+            try {
+                endpoint.drain();
+            } catch (Exception e) {
+                Log.println("Draining endpoint failed:", e);
+            }
+        }
+
+        if (executorService != null) {
             executorService.shutdownNow();
         }
+        deleteUnixSocket();
+        Log.println("server drained");
+    }
+
+    /**
+     * Waits until the client connections of the 'blocking' connection mode have been closed.
+     *
+     * @param deadline The deadline in terms of {@link System#nanoTime()}.
+     * @return Returns {@code true} if all connections have been closed, otherwise {@code false}.
+     * @throws InterruptedException If the current thread has been interrupted while waiting.
+     */
+    private boolean awaitConnectionsClosed(final long deadline) throws InterruptedException {
+        synchronized (connections) {
+            while (!connections.isEmpty()) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(connections, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Deletes the socket file of the unix domain socket, if any.
+     */
+    private void deleteUnixSocket() {
+        if (unixSocketPath != null) {
+            try {
+                Files.deleteIfExists(unixSocketPath);
+            } catch (IOException e) {
+                Log.printWarning("Unable to delete unix domain socket " + unixSocketPath + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * Checks whether connections and requests should be handled on virtual threads.
+     *
+     * @return Returns {@code true} if the virtual execution mode is configured, otherwise {@code false}.
+     */
+    private boolean useVirtualThreads() {
+        switch (executionMode) {
+            case "platform":
+                return false;
+            case "virtual":
+                return true;
+            default:
+                throw new IllegalArgumentException("Unknown execution mode: " + executionMode);
+        }
     }
 
     /**
-     * Handles an incoming connection.
+     * Performs the necessary setup once the server socket is bound.
      *
-     * @param client The client socket.
+     * @param localPort The port the server is listening on.
      */
-    private void handleConnection(final Socket client) {
+    private void onListening(final int localPort) {
+        if (port == 0) {
+            // Don't remove this log, it is read by mate-commander.
+            System.out.println(localPort);
+        }
+
+        logger.doLog();
+        Device.loadActiveDevices(androidEnvironment);
+        Device.appsDir = appsDir;
+        Device.archiveTraces = archiveTraces;
+    }
+
+    /**
+     * Handles an incoming connection. Requests without a correlation id are handled one after another on the
+     * connection's thread, while pipelined requests are executed concurrently and answered in order of completion.
+     *
+     * @param client The client socket channel.
+     */
+    private void handleConnection(final SocketChannel client) {
 
         Log.println("accepted connection");
 
-        try (final var in = Channels.newInputStream(Channels.newChannel(client.getInputStream()));
-             // Closing the output stream inherently closes the associated socket, see the docs.
-             final var out = client.getOutputStream()) {
+        // set once a close request has been handled or a response couldn't be sent
+        final var closed = new AtomicBoolean(false);
 
-            final Parser messageParser = new Parser(in);
+        // tracks the pipelined requests that are still executed
+        final var pipelinedRequests = new Phaser(1);
 
-            while (!closeEndpoint.isClosed()) {
-                var request = messageParser.nextMessage();
-                Messages.verifyMetadata(request);
-                Messages.stripMetadata(request);
-                Log.println("Request: " + request.getSubject());
+        synchronized (connections) {
+            connections.add(client);
+        }
+
+        try (client;
+             final Parser messageParser = new Parser(client);
+             final MessageWriter messageWriter = new MessageWriter(client)) {
 
-                Endpoint endpoint = router.resolve(request.getSubject());
-                Message response;
-                if (endpoint == null) {
-                    response = Messages.unknownEndpoint(request.getSubject());
-                } else {
+            try {
+                while (!closed.get() && !draining) {
+
+                    final Message request;
                     try {
-                        response = endpoint.handle(request);
-                    } catch (Exception e) {
-                        Log.println("Unexpected exception during handling request: ", e);
-                        Device.listDevices(androidEnvironment);
-                        /*
-                         * If MATE-Server fails to process the request, the only viable option is to send back an error
-                         * message, which in turn should quit MATE's execution. It doesn't make sense to close the
-                         * socket and ask MATE to re-send the request.
-                         */
-                        response = Messages.errorMessage(e.getMessage());
+                        request = messageParser.nextMessage();
+                        metrics.recordBytesIn(request.getSubject(), messageParser.getLastMessageSize());
+                    } catch (final IllegalStateException e) {
+                        if (closed.get() || draining) {
+                            // the input has been shut down by a pipelined request or by draining the server
+                            break;
+                        }
+                        throw e;
                     }
-                }
-                if (response == null) {
-                    response = Messages.unhandledMessage(request.getSubject());
-                }
-                Messages.addMetadata(response);
 
-                try {
-                    out.write(Serializer.serialize(response));
-                    out.flush();
-                } catch (Exception e) {
-                    Log.println("Can't send response:" + e);
-                    Device.listDevices(androidEnvironment);
-                    /*
-                     * If we can't send the response, we should close the socket, which in turn should lead to an
-                     * IOException/EOF on MATE's side. This in turn will be transformed to a lexing failure, which is
-                     * caught and the request is sent again on a new socket.
-                     */
-                    break;
+                    if (Messages.isPipelined(request)) {
+                        pipelinedRequests.register();
+                        executorService.submit(() -> {
+                            try {
+                                if (!respond(request, messageWriter, closed)) {
+                                    // unblock the reading thread
+                                    client.shutdownInput();
+                                }
+                            } catch (final IOException e) {
+                                Log.println("IOException during handling request:" + e);
+                            } finally {
+                                pipelinedRequests.arriveAndDeregister();
+                            }
+                        });
+                    } else if (!respond(request, messageWriter, closed)) {
+                        break;
+                    }
                 }
+            } finally {
+                // the writer must not be closed while pipelined requests are still executed
+                pipelinedRequests.arriveAndAwaitAdvance();
             }
         } catch (final IOException e) {
             /*
@@ -230,10 +613,110 @@ public class Server {
             Log.println("Unexpected exception: " + e);
             throw e;
         } finally {
+            synchronized (connections) {
+                connections.remove(client);
+                connections.notifyAll();
+            }
             Log.println("connection closed");
         }
     }
 
+    /**
+     * Handles the given request and sends back the response.
+     *
+     * @param request The incoming request.
+     * @param messageWriter The writer of the connection, shared by all requests of the connection.
+     * @param closed Set if the connection should be closed.
+     * @return Returns {@code false} if the connection should be closed, otherwise {@code true}.
+     */
+    private boolean respond(final Message request, final MessageWriter messageWriter, final AtomicBoolean closed) {
+
+        final Message response = handleRequest(request);
+
+        // must be checked on the thread that handled the request
+        if (closeEndpoint.isClosed()) {
+            closed.set(true);
+        }
+
+        try {
+            synchronized (messageWriter) {
+                metrics.recordBytesOut(request.getSubject(), messageWriter.write(response));
+            }
+        } catch (Exception e) {
+            Log.println("Can't send response:" + e);
+            Device.listDevices(androidEnvironment);
+            /*
+             * If we can't send the response, we should close the socket, which in turn should lead to an
+             * IOException/EOF on MATE's side. This in turn will be transformed to a lexing failure, which is
+             * caught and the request is sent again on a new socket.
+             */
+            closed.set(true);
+        }
+
+        return !closed.get();
+    }
+
+    /**
+     * Dispatches a single request to the responsible endpoint.
+     *
+     * @param request The incoming request.
+     * @return Returns the response including the protocol metadata.
+     */
+    private Message handleRequest(final Message request) {
+
+        Messages.verifyMetadata(request);
+        Messages.stripMetadata(request);
+        Log.println("Request: " + request.getSubject());
+
+        Endpoint endpoint = router.resolve(request.getSubject());
+        Message response;
+        if (endpoint == null) {
+            response = Messages.unknownEndpoint(request.getSubject());
+        } else if (!beginRequest()) {
+            // the server is drained, the client should re-send the request to the restarted server
+            response = Messages.busyMessage(request.getSubject(), 1);
+        } else {
+            final long start = System.nanoTime();
+            try {
+                PayloadCompression.decompress(request);
+                response = admissionController.admit(request.getSubject(), () -> endpoint.handle(request));
+            } catch (Exception e) {
+                Log.println("Unexpected exception during handling request: ", e);
+                Device.listDevices(androidEnvironment);
+                /*
+                 * If MATE-Server fails to process the request, the only viable option is to send back an error
+                 * message, which in turn should quit MATE's execution. It doesn't make sense to close the
+                 * socket and ask MATE to re-send the request.
+                 */
+                response = Messages.errorMessage(e.getMessage());
+            } finally {
+                inFlightRequests.arriveAndDeregister();
+            }
+            if (response == null) {
+                response = Messages.unhandledMessage(request.getSubject());
+            }
+            metrics.recordRequest(request.getSubject(), System.nanoTime() - start, Messages.isErrorMessage(response));
+        }
+        PayloadCompression.compress(request, response);
+        Messages.correlate(request, response);
+        Messages.addMetadata(response);
+        return response;
+    }
+
+    /**
+     * Registers a request as in flight unless the server is drained.
+     *
+     * @return Returns {@code true} if the request can be handled, otherwise {@code false}.
+     */
+    private boolean beginRequest() {
+        inFlightRequests.register();
+        if (draining) {
+            inFlightRequests.arriveAndDeregister();
+            return false;
+        }
+        return true;
+    }
+
     /**
      * Create directories for saving (intermediate) results
      */
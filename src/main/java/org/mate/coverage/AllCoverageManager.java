@@ -1,9 +1,10 @@
 package org.mate.coverage;
 
 import com.google.common.collect.Lists;
-import org.apache.commons.io.FileUtils;
 import org.mate.io.Device;
 import org.mate.network.message.Message;
+import org.mate.traces.AppTargetsCache;
+import org.mate.traces.TraceStore;
 import org.mate.util.AndroidEnvironment;
 import org.mate.util.Log;
 
@@ -11,7 +12,6 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Handles requests where multiple coverage criteria are required, i.e. a combination of method, branch and line coverage.
@@ -28,21 +28,6 @@ public class AllCoverageManager {
      */
     private static final String TRACES_DIR = "traces";
 
-    /**
-     * The total number of instructions.
-     */
-    private static Integer numberOfInstructions = null;
-
-    /**
-     * The total number of branches.
-     */
-    private static Integer numberOfBranches = null;
-
-    /**
-     * The total number of methods.
-     */
-    private static Integer numberOfMethods = null;
-
     /**
      * Stores the 'all coverage' data for a chromosome, which can be either a test case or a test suite.
      * <p>
@@ -125,7 +110,8 @@ public class AllCoverageManager {
             }
 
             try {
-                Files.copy(Path.of(srcDir.getPath(), entity), Path.of(targetDir.getPath(), entity));
+                TraceStore.forApp(appDir.toPath())
+                        .copy(Path.of(srcDir.getPath(), entity), Path.of(targetDir.getPath(), entity));
             } catch (IOException e) {
                 final var errorMsg = "Chromosome copy failed: entity " + entity + " could not be copied from "
                         + srcDir + " to " + targetDir;
@@ -190,53 +176,6 @@ public class AllCoverageManager {
         return coverage;
     }
 
-    /**
-     * Reads the blocks.txt file and computes the total number of methods, branches and instructions.
-     *
-     * @param basicBlocksFile The blocks.txt file.
-     */
-    private static void readBlocksFile(File basicBlocksFile) {
-
-        numberOfInstructions = 0;
-        numberOfBranches = 0;
-        numberOfMethods = 0;
-
-        final Set<String> methods = new HashSet<>();
-
-        try (var blocksReader = new BufferedReader(new InputStreamReader(new FileInputStream(basicBlocksFile)))) {
-
-            // an entry looks as follows: class name -> method name -> block id -> block size -> isBranch
-            String block;
-            while ((block = blocksReader.readLine()) != null) {
-
-                final String[] tuple = block.split("->");
-                if (tuple.length == 5) {
-
-                    final String method = tuple[0].trim() + "->" + tuple[1].trim();
-                    final int blockSize = Integer.parseInt(tuple[3].trim());
-                    final boolean isBranch = tuple[4].equals("isBranch");
-
-                    if (methods.add(method)) {
-                        // we deal with a new method
-                        numberOfMethods++;
-                    }
-
-                    numberOfInstructions += blockSize;
-
-                    if (isBranch) {
-                        numberOfBranches++;
-                    }
-                } else {
-                    Log.println("Malformed entry in " + basicBlocksFile + ": " + block);
-                }
-            }
-        } catch (IOException e) {
-            throw new IllegalStateException("Couldn't read from " + basicBlocksFile + "!", e);
-        } finally {
-            methods.clear(); // give free for garbage collection
-        }
-    }
-
     /**
      * Evaluates the 'all coverage' for a given set of traces files.
      *
@@ -252,69 +191,33 @@ public class AllCoverageManager {
             Log.println(String.format("TracesFile: %s [Exists: %b]", tracesFile, tracesFile.exists()));
         }
 
-        if (numberOfInstructions == null) {
-            // we only need to read the blocks.txt file once
-            readBlocksFile(basicBlocksFile);
-        }
-
-        int numberOfCoveredMethods = 0;
-        int numberOfCoveredBranches = 0;
-        int numberOfCoveredInstructions = 0;
-
-        final Set<String> coveredTraces = new HashSet<>();
-        final Set<String> coveredMethods = new HashSet<>();
-
-        for (var traceFile : tracesFiles) {
-            try (var tracesReader = new BufferedReader(new InputStreamReader(new FileInputStream(traceFile)))) {
-
-                // a trace looks as follows: class name -> method name -> block id -> block size -> isBranch
-                String trace;
-                while ((trace = tracesReader.readLine()) != null) {
-
-                    if (coveredTraces.add(trace)) {
-                        // we deal with a new trace
-
-                        final String[] tuple = trace.split("->");
-                        if (tuple.length == 5) {
-
-                            final String method = tuple[0].trim() + "->" + tuple[1].trim();
-                            final int blockSize = Integer.parseInt(tuple[3].trim());
-                            final boolean isBranch = tuple[4].equals("isBranch");
+        // the blocks.txt file is only re-read if it has changed
+        final AppTargetsCache.BlockCounts blockCounts = AppTargetsCache.get(basicBlocksFile).getBlockCounts();
 
-                            numberOfCoveredInstructions += blockSize;
-
-                            if (coveredMethods.add(method)) {
-                                numberOfCoveredMethods++;
-                            }
-
-                            if (isBranch) {
-                                numberOfCoveredBranches++;
-                            }
-                        } else {
-                            Log.println("Malformed trace in " + traceFile + ": " + trace);
-                        }
-                    }
-                }
-            } catch (IOException e) {
-                throw new IllegalStateException("Couldn't read from " + traceFile + "!", e);
-            }
+        final BitSet coveredBlocks;
+        try {
+            // the coverage of each traces file is stored along with the traces
+            coveredBlocks = TraceStore.forApp(basicBlocksFile.getParentFile())
+                    .readCoverage(tracesFiles, basicBlocksFile);
+        } catch (UncheckedIOException e) {
+            throw new IllegalStateException("Couldn't read from traces files!", e);
         }
 
-        // give free for garbage collection
-        coveredMethods.clear();
-        coveredTraces.clear();
+        final int numberOfCoveredMethods = blockCounts.getCoveredMethods(coveredBlocks);
+        final int numberOfCoveredBranches = blockCounts.getCoveredBranches(coveredBlocks);
+        final int numberOfCoveredInstructions = blockCounts.getCoveredInstructions(coveredBlocks);
 
         CoverageDTO coverageDTO = new CoverageDTO();
 
-        double methodCoverage = (double) numberOfCoveredMethods / numberOfMethods * 100;
+        double methodCoverage = (double) numberOfCoveredMethods / blockCounts.getNumberOfMethods() * 100;
         coverageDTO.setMethodCoverage(methodCoverage);
         Log.println("We have a total method coverage of " + methodCoverage + "%.");
 
-        double branchCoverage = (double) numberOfCoveredBranches / numberOfBranches * 100;
+        double branchCoverage = (double) numberOfCoveredBranches / blockCounts.getNumberOfBranches() * 100;
         coverageDTO.setBranchCoverage(branchCoverage);
         Log.println("We have a total branch coverage of " + branchCoverage + "%");
 
-        double lineCoverage = (double) numberOfCoveredInstructions / numberOfInstructions * 100;
+        double lineCoverage = (double) numberOfCoveredInstructions / blockCounts.getNumberOfInstructions() * 100;
         coverageDTO.setLineCoverage(lineCoverage);
         Log.println("We have a total line coverage of " + lineCoverage + "%");
 
@@ -432,24 +335,20 @@ public class AllCoverageManager {
         final Map<String, Integer> totalMethodsPerClass = new HashMap<>();
         final Set<String> coveredMethods = new HashSet<>();
 
-        try (var blocksReader = new BufferedReader(new InputStreamReader(new FileInputStream(blocksFile)))) {
-
-            // an entry looks as follows: class name -> method name -> block id -> block size -> isBranch
-            String block;
-            while ((block = blocksReader.readLine()) != null) {
+        // an entry looks as follows: class name -> method name -> block id -> block size -> isBranch
+        for (String block : AppTargetsCache.get(blocksFile).getLines()) {
 
-                final String[] tokens = block.split("->");
-                final String clazz = tokens[0];
-                final String method = tokens[1];
-                final String methodSignature = clazz + "->" + method;
+            final String[] tokens = block.split("->");
+            final String clazz = tokens[0];
+            final String method = tokens[1];
+            final String methodSignature = clazz + "->" + method;
 
-                if (!coveredMethods.contains(methodSignature)) {
+            if (!coveredMethods.contains(methodSignature)) {
 
-                    coveredMethods.add(methodSignature);
+                coveredMethods.add(methodSignature);
 
-                    // aggregate methods count per class
-                    totalMethodsPerClass.merge(clazz, 1, Integer::sum);
-                }
+                // aggregate methods count per class
+                totalMethodsPerClass.merge(clazz, 1, Integer::sum);
             }
         }
         return totalMethodsPerClass;
@@ -468,30 +367,26 @@ public class AllCoverageManager {
         final Set<String> coveredMethods = new HashSet<>();
 
         for (var traceFile : tracesFiles) {
-            try (var tracesReader = new BufferedReader(new InputStreamReader(new FileInputStream(traceFile)))) {
-
-                // a trace looks as follows: class name -> method name -> basic block id (instruction index)
-                // -> number of instructions of block -> isBranch
-                String trace;
-                while ((trace = tracesReader.readLine()) != null) {
-                    final String[] tuple = trace.split("->");
-                    if (tuple.length == 5) {
+            // a trace looks as follows: class name -> method name -> basic block id (instruction index)
+            // -> number of instructions of block -> isBranch
+            for (String trace : TraceStore.forTraceFile(traceFile).readTraces(traceFile)) {
+                final String[] tuple = trace.split("->");
+                if (tuple.length == 5) {
 
-                        final String clazz = tuple[0].trim();
-                        final String method = tuple[1].trim();
-                        final String methodSignature = clazz + "->" + method;
+                    final String clazz = tuple[0].trim();
+                    final String method = tuple[1].trim();
+                    final String methodSignature = clazz + "->" + method;
 
-                        if (!coveredMethods.contains(methodSignature)) {
+                    if (!coveredMethods.contains(methodSignature)) {
 
-                            coveredMethods.add(methodSignature);
+                        coveredMethods.add(methodSignature);
 
-                            // aggregate methods count per class
-                            coveredMethodsPerClass.merge(clazz, 1, Integer::sum);
-                        }
-                    } else {
-                        Log.printWarning("Found incomplete line \"" + trace + "\" in traces file \""
-                                + traceFile + "\"");
+                        // aggregate methods count per class
+                        coveredMethodsPerClass.merge(clazz, 1, Integer::sum);
                     }
+                } else {
+                    Log.printWarning("Found incomplete line \"" + trace + "\" in traces file \""
+                            + traceFile + "\"");
                 }
             }
         }
@@ -509,21 +404,17 @@ public class AllCoverageManager {
 
         final Map<String, Integer> totalBranchesPerClass = new HashMap<>();
 
-        try (var blocksReader = new BufferedReader(new InputStreamReader(new FileInputStream(blocksFile)))) {
+        // an entry looks as follows: class name -> method name -> block id -> block size -> isBranch
+        for (String block : AppTargetsCache.get(blocksFile).getLines()) {
 
-            // an entry looks as follows: class name -> method name -> block id -> block size -> isBranch
-            String block;
-            while ((block = blocksReader.readLine()) != null) {
+            final String[] tokens = block.split("->");
+            final String clazz = tokens[0];
+            boolean isBranch = tokens[4].equals("isBranch");
 
-                final String[] tokens = block.split("->");
-                final String clazz = tokens[0];
-                boolean isBranch = tokens[4].equals("isBranch");
-
-                // aggregate branches count per class
-                if (isBranch) {
-                    // add 1 to current count
-                    totalBranchesPerClass.merge(clazz, 1, Integer::sum);
-                }
+            // aggregate branches count per class
+            if (isBranch) {
+                // add 1 to current count
+                totalBranchesPerClass.merge(clazz, 1, Integer::sum);
             }
         }
         return totalBranchesPerClass;
@@ -541,30 +432,26 @@ public class AllCoverageManager {
         // stores a mapping of class -> (method -> basic block id) where a basic block can only contain a single branch!
         final Map<String, Map<String, Set<Integer>>> coveredBranches = new HashMap<>();
         for (var traceFile : tracesFiles) {
-            try (var tracesReader = new BufferedReader(new InputStreamReader(new FileInputStream(traceFile)))) {
-
-                // a trace looks as follows: class name -> method name -> basic block id (instruction index)
-                // -> number of instructions of block -> isBranch
-                String trace;
-                while ((trace = tracesReader.readLine()) != null) {
-                    final String[] tuple = trace.split("->");
-                    if (tuple.length == 5) {
-
-                        final String clazz = tuple[0].trim();
-                        final String method = tuple[1].trim();
-                        final Integer blockId = Integer.parseInt(tuple[2].trim());
-                        final boolean isBranch = tuple[4].trim().equals("isBranch");
-
-                        if (isBranch) {
-                            // ignore duplicate traces
-                            coveredBranches.putIfAbsent(clazz, new HashMap<>());
-                            coveredBranches.get(clazz).putIfAbsent(method, new HashSet<>());
-                            coveredBranches.get(clazz).get(method).add(blockId);
-                        }
-                    } else {
-                        Log.printWarning("Found incomplete line \"" + trace + "\" in traces file \""
-                                + traceFile + "\"");
+            // a trace looks as follows: class name -> method name -> basic block id (instruction index)
+            // -> number of instructions of block -> isBranch
+            for (String trace : TraceStore.forTraceFile(traceFile).readTraces(traceFile)) {
+                final String[] tuple = trace.split("->");
+                if (tuple.length == 5) {
+
+                    final String clazz = tuple[0].trim();
+                    final String method = tuple[1].trim();
+                    final Integer blockId = Integer.parseInt(tuple[2].trim());
+                    final boolean isBranch = tuple[4].trim().equals("isBranch");
+
+                    if (isBranch) {
+                        // ignore duplicate traces
+                        coveredBranches.putIfAbsent(clazz, new HashMap<>());
+                        coveredBranches.get(clazz).putIfAbsent(method, new HashSet<>());
+                        coveredBranches.get(clazz).get(method).add(blockId);
                     }
+                } else {
+                    Log.printWarning("Found incomplete line \"" + trace + "\" in traces file \""
+                            + traceFile + "\"");
                 }
             }
         }
@@ -590,27 +477,23 @@ public class AllCoverageManager {
         final Map<String, Map<String, Map<Integer, Integer>>> coveredInstructions = new HashMap<>();
 
         for (final var traceFile : tracesFiles) {
-            try (var tracesReader = new BufferedReader(new InputStreamReader(new FileInputStream(traceFile)))) {
-
-                // a trace looks as follows: class name -> method name -> basic block id (instruction index)
-                // -> number of instructions of block -> isBranch
-                String trace;
-                while ((trace = tracesReader.readLine()) != null) {
-                    final String[] tuple = trace.split("->");
-                    if (tuple.length == 5) {
+            // a trace looks as follows: class name -> method name -> basic block id (instruction index)
+            // -> number of instructions of block -> isBranch
+            for (String trace : TraceStore.forTraceFile(traceFile).readTraces(traceFile)) {
+                final String[] tuple = trace.split("->");
+                if (tuple.length == 5) {
 
-                        final String clazz = tuple[0].trim();
-                        final String method = tuple[1].trim();
-                        final Integer blockId = Integer.parseInt(tuple[2].trim());
-                        final int count = Integer.parseInt(tuple[3].trim());
+                    final String clazz = tuple[0].trim();
+                    final String method = tuple[1].trim();
+                    final Integer blockId = Integer.parseInt(tuple[2].trim());
+                    final int count = Integer.parseInt(tuple[3].trim());
 
-                        // ignore duplicate traces
-                        coveredInstructions.putIfAbsent(clazz, new HashMap<>());
-                        coveredInstructions.get(clazz).putIfAbsent(method, new HashMap<>());
-                        coveredInstructions.get(clazz).get(method).putIfAbsent(blockId, count);
-                    } else {
-                        Log.printWarning("Found incomplete line \"" + trace + "\" in traces file \"" + traceFile.toString() + "\"");
-                    }
+                    // ignore duplicate traces
+                    coveredInstructions.putIfAbsent(clazz, new HashMap<>());
+                    coveredInstructions.get(clazz).putIfAbsent(method, new HashMap<>());
+                    coveredInstructions.get(clazz).get(method).putIfAbsent(blockId, count);
+                } else {
+                    Log.printWarning("Found incomplete line \"" + trace + "\" in traces file \"" + traceFile.toString() + "\"");
                 }
             }
         }
@@ -637,20 +520,16 @@ public class AllCoverageManager {
 
         final Map<String, Integer> totalInstructionsPerClass = new HashMap<>();
 
-        try (var blocksReader = new BufferedReader(new InputStreamReader(new FileInputStream(blocksFile)))) {
-
-            // an entry looks as follows: class name -> method name -> block id -> block size -> isBranch
-            String block;
-            while ((block = blocksReader.readLine()) != null) {
+        // an entry looks as follows: class name -> method name -> block id -> block size -> isBranch
+        for (String block : AppTargetsCache.get(blocksFile).getLines()) {
 
-                final String[] tokens = block.split("->");
-                final String clazz = tokens[0];
-                final int instructionCount = Integer.parseInt(tokens[3]);
+            final String[] tokens = block.split("->");
+            final String clazz = tokens[0];
+            final int instructionCount = Integer.parseInt(tokens[3]);
 
-                // update aggregation count per class
-                final int recorded = totalInstructionsPerClass.getOrDefault(clazz, 0);
-                totalInstructionsPerClass.put(clazz, recorded + instructionCount);
-            }
+            // update aggregation count per class
+            final int recorded = totalInstructionsPerClass.getOrDefault(clazz, 0);
+            totalInstructionsPerClass.put(clazz, recorded + instructionCount);
         }
         return totalInstructionsPerClass;
     }
@@ -664,25 +543,12 @@ public class AllCoverageManager {
      */
     private static List<File> getTraceFiles(File tracesDir, String chromosomes) {
 
-        // collect the relevant traces files
-        List<File> tracesFiles = new ArrayList<>(FileUtils.listFiles(tracesDir, null, true));
-
-        if (chromosomes != null) {
-
-            // only consider the traces files described by the chromosome ids
-            tracesFiles = new ArrayList<>();
-
-            for (String chromosome : chromosomes.split("\\+")) {
-                try {
-                    tracesFiles.addAll(
-                            Files.walk(tracesDir.toPath().resolve(chromosome))
-                                    .filter(Files::isRegularFile)
-                                    .map(Path::toFile)
-                                    .collect(Collectors.toList()));
-                } catch (IOException e) {
-                    throw new IllegalStateException("Couldn't retrieve traces files!", e);
-                }
-            }
+        // the traces files are served from the index of the app, the file system is only scanned once
+        final List<File> tracesFiles;
+        try {
+            tracesFiles = TraceStore.forApp(tracesDir.getParentFile()).getTraceFiles(chromosomes);
+        } catch (UncheckedIOException e) {
+            throw new IllegalStateException("Couldn't retrieve traces files!", e);
         }
 
         Log.println("Number of considered traces files: " + tracesFiles.size());
@@ -1,10 +1,11 @@
 package org.mate.coverage;
 
 import com.google.common.collect.Lists;
-import org.apache.commons.io.FileUtils;
 import org.mate.io.Device;
 import org.mate.network.message.Message;
 import org.mate.network.message.Messages;
+import org.mate.traces.AppTargetsCache;
+import org.mate.traces.TraceStore;
 import org.mate.util.AndroidEnvironment;
 import org.mate.util.Log;
 
@@ -12,7 +13,6 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Handles requests related to basic block coverage, i.e. basic block line and basic block branch coverage.
@@ -29,16 +29,6 @@ public final class BasicBlockCoverageManager {
      */
     private static final String TRACES_DIR = "traces";
 
-    /**
-     * The total number of instructions.
-     */
-    private static Integer numberOfInstructions = null;
-
-    /**
-     * The total number of branches.
-     */
-    private static Integer numberOfBranches = null;
-
     /**
      * Copies the coverage data, i.e. traces of test cases, specified through the list of entities
      * from the source chromosome (test suite) to the target chromosome (test suite).
@@ -72,7 +62,8 @@ public final class BasicBlockCoverageManager {
             }
 
             try {
-                Files.copy(Path.of(srcDir.getPath(), entity), Path.of(targetDir.getPath(), entity));
+                TraceStore.forApp(appDir.toPath())
+                        .copy(Path.of(srcDir.getPath(), entity), Path.of(targetDir.getPath(), entity));
             } catch (IOException e) {
                 final var errorMsg = "Chromosome copy failed: entity " + entity + " could not be copied from "
                         + srcDir + " to " + targetDir;
@@ -222,48 +213,14 @@ public final class BasicBlockCoverageManager {
             Log.println("TracesFile: " + tracesFile + "[" + tracesFile.exists() + "]");
         }
 
-        if (numberOfInstructions == null) {
-            // we only need to read the blocks.txt file once
-
-            numberOfInstructions = 0;
-
-            try (var blocksReader = new BufferedReader(new InputStreamReader(new FileInputStream(basicBlocksFile)))) {
-
-                // an entry looks as follows: class name -> method name -> block id -> block size -> isBranch
-                String block;
-                while ((block = blocksReader.readLine()) != null) {
-
-                    final String[] tuple = block.split("->");
-                    if (tuple.length == 5) {
-                        final int blockSize = Integer.parseInt(tuple[3].trim());
-                        numberOfInstructions += blockSize;
-                    }
-                };
-            }
-        }
-
-        Set<String> coveredTraces = new HashSet<>();
-        int numberOfCoveredInstructions = 0;
-
-        for (var traceFile : tracesFiles) {
-            try (var tracesReader = new BufferedReader(new InputStreamReader(new FileInputStream(traceFile)))) {
-
-                // a trace looks as follows: class name -> method name -> block id -> block size -> isBranch
-                String trace;
-                while ((trace = tracesReader.readLine()) != null) {
+        // the blocks.txt file is only re-read if it has changed
+        final AppTargetsCache.BlockCounts blockCounts = AppTargetsCache.get(basicBlocksFile).getBlockCounts();
+        final int numberOfInstructions = blockCounts.getNumberOfInstructions();
 
-                    if (coveredTraces.add(trace)) {
-                        // we deal with a new trace
-
-                        final String[] tuple = trace.split("->");
-                        if (tuple.length == 5) {
-                            final int blockSize = Integer.parseInt(tuple[3].trim());
-                            numberOfCoveredInstructions += blockSize;
-                        }
-                    }
-                }
-            }
-        }
+        // the union of the (pre-computed) coverage of the traces files
+        final BitSet coveredBlocks = TraceStore.forApp(basicBlocksFile.getParentFile())
+                .readCoverage(tracesFiles, basicBlocksFile);
+        final int numberOfCoveredInstructions = blockCounts.getCoveredInstructions(coveredBlocks);
 
         double lineCoverage = (double) numberOfCoveredInstructions / numberOfInstructions * 100;
         Log.println("We have a total line coverage of " + lineCoverage + "%");
@@ -283,27 +240,23 @@ public final class BasicBlockCoverageManager {
         final Map<String, Map<String, Map<Integer, Integer>>> coveredInstructions = new HashMap<>();
 
         for (final var path : tracesFiles) {
-            try (var traceReader = new BufferedReader(new InputStreamReader(new FileInputStream(path)))) {
-
-                // a trace looks as follows: class name -> method name -> basic block id (instruction index)
-                // -> number of instructions of block -> isBranch
-                String line;
-                while ((line = traceReader.readLine()) != null) {
-                    final String[] tuple = line.split("->");
-                    if (tuple.length == 5) {
-
-                        final String clazz = tuple[0].trim();
-                        final String method = tuple[1].trim();
-                        final Integer blockId = Integer.parseInt(tuple[2].trim());
-                        final int count = Integer.parseInt(tuple[3].trim());
-
-                        // ignore duplicate traces
-                        coveredInstructions.putIfAbsent(clazz, new HashMap<>());
-                        coveredInstructions.get(clazz).putIfAbsent(method, new HashMap<>());
-                        coveredInstructions.get(clazz).get(method).putIfAbsent(blockId, count);
-                    } else {
-                        Log.printWarning("Found incomplete line \"" + line + "\" in traces file \"" + path.toString() + "\"");
-                    }
+            // a trace looks as follows: class name -> method name -> basic block id (instruction index)
+            // -> number of instructions of block -> isBranch
+            for (String line : TraceStore.forTraceFile(path).readTraces(path)) {
+                final String[] tuple = line.split("->");
+                if (tuple.length == 5) {
+
+                    final String clazz = tuple[0].trim();
+                    final String method = tuple[1].trim();
+                    final Integer blockId = Integer.parseInt(tuple[2].trim());
+                    final int count = Integer.parseInt(tuple[3].trim());
+
+                    // ignore duplicate traces
+                    coveredInstructions.putIfAbsent(clazz, new HashMap<>());
+                    coveredInstructions.get(clazz).putIfAbsent(method, new HashMap<>());
+                    coveredInstructions.get(clazz).get(method).putIfAbsent(blockId, count);
+                } else {
+                    Log.printWarning("Found incomplete line \"" + line + "\" in traces file \"" + path.toString() + "\"");
                 }
             }
         }
@@ -330,20 +283,16 @@ public final class BasicBlockCoverageManager {
 
         final Map<String, Integer> totalInstructionsPerClass = new HashMap<>();
 
-        try (var blocksReader = new BufferedReader(new InputStreamReader(new FileInputStream(blocksFile)))) {
-
-            // an entry looks as follows: class name -> method name -> block id -> block size -> isBranch
-            String block;
-            while ((block = blocksReader.readLine()) != null) {
+        // an entry looks as follows: class name -> method name -> block id -> block size -> isBranch
+        for (String block : AppTargetsCache.get(blocksFile).getLines()) {
 
-                final String[] tokens = block.split("->");
-                final String clazz = tokens[0];
-                final int instructionCount = Integer.parseInt(tokens[3]);
+            final String[] tokens = block.split("->");
+            final String clazz = tokens[0];
+            final int instructionCount = Integer.parseInt(tokens[3]);
 
-                // update aggregation count per class
-                final int recorded = totalInstructionsPerClass.getOrDefault(clazz, 0);
-                totalInstructionsPerClass.put(clazz, recorded + instructionCount);
-            }
+            // update aggregation count per class
+            final int recorded = totalInstructionsPerClass.getOrDefault(clazz, 0);
+            totalInstructionsPerClass.put(clazz, recorded + instructionCount);
         }
         return totalInstructionsPerClass;
     }
@@ -400,52 +349,14 @@ public final class BasicBlockCoverageManager {
             Log.println("TracesFile: " + tracesFile + "[" + tracesFile.exists() + "]");
         }
 
-        if (numberOfBranches == null) {
-            // we only need to read the blocks.txt file once
-
-            numberOfBranches = 0;
+        // the blocks.txt file is only re-read if it has changed
+        final AppTargetsCache.BlockCounts blockCounts = AppTargetsCache.get(basicBlocksFile).getBlockCounts();
+        final int numberOfBranches = blockCounts.getNumberOfBranches();
 
-            try (var blocksReader = new BufferedReader(new InputStreamReader(new FileInputStream(basicBlocksFile)))) {
-
-                // an entry looks as follows: class name -> method name -> block id -> block size -> isBranch
-                String block;
-                while ((block = blocksReader.readLine()) != null) {
-
-                    final String[] tuple = block.split("->");
-                    if (tuple.length == 5) {
-                        final boolean isBranch = tuple[4].equals("isBranch");
-                        if (isBranch) {
-                            numberOfBranches++;
-                        }
-                    }
-                }
-            }
-        }
-
-        Set<String> coveredTraces = new HashSet<>();
-        int numberOfCoveredBranches = 0;
-
-        for (var traceFile : tracesFiles) {
-            try (var tracesReader = new BufferedReader(new InputStreamReader(new FileInputStream(traceFile)))) {
-
-                // a trace looks as follows: class name -> method name -> block id -> block size -> isBranch
-                String trace;
-                while ((trace = tracesReader.readLine()) != null) {
-
-                    if (coveredTraces.add(trace)) {
-                        // we deal with a new trace
-
-                        final String[] tuple = trace.split("->");
-                        if (tuple.length == 5) {
-                            final boolean isBranch = tuple[4].equals("isBranch");
-                            if (isBranch) {
-                                numberOfCoveredBranches++;
-                            }
-                        }
-                    }
-                }
-            }
-        }
+        // the union of the (pre-computed) coverage of the traces files
+        final BitSet coveredBlocks = TraceStore.forApp(basicBlocksFile.getParentFile())
+                .readCoverage(tracesFiles, basicBlocksFile);
+        final int numberOfCoveredBranches = blockCounts.getCoveredBranches(coveredBlocks);
 
         double branchCoverage = (double) numberOfCoveredBranches / numberOfBranches * 100;
         Log.println("We have a total branch coverage of " + branchCoverage + "%");
@@ -463,21 +374,17 @@ public final class BasicBlockCoverageManager {
 
         final Map<String, Integer> totalBranchesPerClass = new HashMap<>();
 
-        try (var blocksReader = new BufferedReader(new InputStreamReader(new FileInputStream(blocksFile)))) {
+        // an entry looks as follows: class name -> method name -> block id -> block size -> isBranch
+        for (String line : AppTargetsCache.get(blocksFile).getLines()) {
 
-            // an entry looks as follows: class name -> method name -> block id -> block size -> isBranch
-            String line;
-            while ((line = blocksReader.readLine()) != null) {
+            final String[] tokens = line.split("->");
+            final String clazz = tokens[0];
+            boolean isBranch = tokens[4].equals("isBranch");
 
-                final String[] tokens = line.split("->");
-                final String clazz = tokens[0];
-                boolean isBranch = tokens[4].equals("isBranch");
-
-                // aggregate branches count per class
-                if (isBranch) {
-                    // add 1 to current count
-                    totalBranchesPerClass.merge(clazz, 1, Integer::sum);
-                }
+            // aggregate branches count per class
+            if (isBranch) {
+                // add 1 to current count
+                totalBranchesPerClass.merge(clazz, 1, Integer::sum);
             }
         }
         return totalBranchesPerClass;
@@ -495,30 +402,26 @@ public final class BasicBlockCoverageManager {
         // stores a mapping of class -> (method -> basic block id) where a basic block can only contain a single branch!
         final Map<String, Map<String, Set<Integer>>> coveredBranches = new HashMap<>();
         for (var traceFile : tracesFiles) {
-            try (var branchesReader = new BufferedReader(new InputStreamReader(new FileInputStream(traceFile)))) {
-
-                // a trace looks as follows: class name -> method name -> basic block id (instruction index)
-                // -> number of instructions of block -> isBranch
-                String line;
-                while ((line = branchesReader.readLine()) != null) {
-                    final String[] tuple = line.split("->");
-                    if (tuple.length == 5) {
-
-                        final String clazz = tuple[0].trim();
-                        final String method = tuple[1].trim();
-                        final Integer blockId = Integer.parseInt(tuple[2].trim());
-                        final boolean isBranch = tuple[4].trim().equals("isBranch");
-
-                        if (isBranch) {
-                            // ignore duplicate traces
-                            coveredBranches.putIfAbsent(clazz, new HashMap<>());
-                            coveredBranches.get(clazz).putIfAbsent(method, new HashSet<>());
-                            coveredBranches.get(clazz).get(method).add(blockId);
-                        }
-                    } else {
-                        Log.printWarning("Found incomplete line \"" + line + "\" in traces file \""
-                                + traceFile + "\"");
+            // a trace looks as follows: class name -> method name -> basic block id (instruction index)
+            // -> number of instructions of block -> isBranch
+            for (String line : TraceStore.forTraceFile(traceFile).readTraces(traceFile)) {
+                final String[] tuple = line.split("->");
+                if (tuple.length == 5) {
+
+                    final String clazz = tuple[0].trim();
+                    final String method = tuple[1].trim();
+                    final Integer blockId = Integer.parseInt(tuple[2].trim());
+                    final boolean isBranch = tuple[4].trim().equals("isBranch");
+
+                    if (isBranch) {
+                        // ignore duplicate traces
+                        coveredBranches.putIfAbsent(clazz, new HashMap<>());
+                        coveredBranches.get(clazz).putIfAbsent(method, new HashSet<>());
+                        coveredBranches.get(clazz).get(method).add(blockId);
                     }
+                } else {
+                    Log.printWarning("Found incomplete line \"" + line + "\" in traces file \""
+                            + traceFile + "\"");
                 }
             }
         }
@@ -606,26 +509,13 @@ public final class BasicBlockCoverageManager {
      */
     private static List<File> getTraceFiles(File tracesDir, String chromosomes) {
 
-        // collect the relevant traces files
-        List<File> tracesFiles = new ArrayList<>(FileUtils.listFiles(tracesDir, null, true));
-
-        if (chromosomes != null) {
-
-            // only consider the traces files described by the chromosome ids
-            tracesFiles = new ArrayList<>();
-
-            for (String chromosome : chromosomes.split("\\+")) {
-                try {
-                    tracesFiles.addAll(
-                            Files.walk(tracesDir.toPath().resolve(chromosome))
-                                    .filter(Files::isRegularFile)
-                                    .map(Path::toFile)
-                                    .collect(Collectors.toList()));
-                } catch (IOException e) {
-                    Log.printError("Couldn't retrieve traces files!");
-                    throw new IllegalArgumentException(e);
-                }
-            }
+        // the traces files are served from the index of the app, the file system is only scanned once
+        final List<File> tracesFiles;
+        try {
+            tracesFiles = TraceStore.forApp(tracesDir.getParentFile()).getTraceFiles(chromosomes);
+        } catch (UncheckedIOException e) {
+            Log.printError("Couldn't retrieve traces files!");
+            throw new IllegalArgumentException(e);
         }
 
         Log.println("Number of considered traces files: " + tracesFiles.size());
@@ -1,10 +1,11 @@
 package org.mate.coverage;
 
 import com.google.common.collect.Lists;
-import org.apache.commons.io.FileUtils;
 import org.mate.io.Device;
 import org.mate.network.message.Message;
 import org.mate.network.message.Messages;
+import org.mate.traces.AppTargetsCache;
+import org.mate.traces.TraceStore;
 import org.mate.util.AndroidEnvironment;
 import org.mate.util.Log;
 
@@ -12,7 +13,6 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Handles requests related to branch coverage.
@@ -29,11 +29,6 @@ public final class BranchCoverageManager {
      */
     private static final String TRACES_DIR = "traces";
 
-    /**
-     * The total number of branches.
-     */
-    private static Integer numberOfBranches = null;
-
     /**
      * Copies the coverage data, i.e. traces of test cases, specified through the list of entities
      * from the source chromosome (test suite) to the target chromosome (test suite).
@@ -67,7 +62,8 @@ public final class BranchCoverageManager {
             }
 
             try {
-                Files.copy(Path.of(srcDir.getPath(), entity), Path.of(targetDir.getPath(), entity));
+                TraceStore.forApp(appDir.toPath())
+                        .copy(Path.of(srcDir.getPath(), entity), Path.of(targetDir.getPath(), entity));
             } catch (IOException e) {
                 final var errorMsg = "Chromosome copy failed: entity " + entity + " could not be copied from "
                         + srcDir + " to " + targetDir;
@@ -217,12 +213,8 @@ public final class BranchCoverageManager {
 
         // second argument refers to traces.txt file(s)
         for (File tracesFile : tracesFiles) {
-            InputStream tracesInputStream = new FileInputStream(tracesFile);
-            BufferedReader tracesReader = new BufferedReader(new InputStreamReader(tracesInputStream));
-
             // read the traces
-            String trace;
-            while ((trace = tracesReader.readLine()) != null) {
+            for (String trace : TraceStore.forTraceFile(tracesFile).readTraces(tracesFile)) {
 
                 // each trace consists of className->methodName->branchID
                 String[] triple = trace.split("->");
@@ -245,7 +237,6 @@ public final class BranchCoverageManager {
                     visitedBranches.get(clazz).merge(method, 1, Integer::sum);
                 }
             }
-            tracesReader.close();
         }
 
         double overallCoveredBranches = 0.0;
@@ -315,38 +306,15 @@ public final class BranchCoverageManager {
             Log.println("TracesFile: " + tracesFile + "[" + tracesFile.exists() + "]");
         }
 
-        if (numberOfBranches == null) {
-            numberOfBranches = (int) Files.lines(branchesFile.toPath()).count();
-        }
+        // the branches.txt file is only re-read if it has changed
+        final int numberOfBranches = AppTargetsCache.get(branchesFile).size();
 
         // the number of branches
         Log.println("Number of branches: " + numberOfBranches);
 
-        Set<String> coveredTraces = new HashSet<>();
-
-        // second argument refers to traces.txt file(s)
-        for (File tracesFile : tracesFiles) {
-            try (var tracesReader = new BufferedReader(new InputStreamReader(new FileInputStream(tracesFile)))) {
-
-                // read the traces
-                String trace;
-                while ((trace = tracesReader.readLine()) != null) {
-
-                    // each trace consists of className->methodName->branchID
-                    String[] triple = trace.split("->");
-
-                    if (triple.length != 3 || trace.contains(":")
-                            || trace.endsWith("->exit") || trace.endsWith("->entry")) {
-                        // ignore traces related to if statements or branch distance or virtual entry/exit vertices
-                        continue;
-                    }
-
-                    coveredTraces.add(trace);
-                }
-            }
-        }
-
-        int numberOfCoveredBranches = coveredTraces.size();
+        // the union of the (pre-computed) coverage of the traces files
+        int numberOfCoveredBranches = TraceStore.forApp(branchesFile.getParentFile())
+                .readCoverage(tracesFiles, branchesFile).cardinality();
         double branchCoverage = (double) numberOfCoveredBranches / numberOfBranches * 100;
         Log.println("We have a total branch coverage of " + branchCoverage + "%.");
 
@@ -362,26 +330,13 @@ public final class BranchCoverageManager {
      */
     private static List<File> getTraceFiles(File tracesDir, String chromosomes) {
 
-        // collect the relevant traces files
-        List<File> tracesFiles = new ArrayList<>(FileUtils.listFiles(tracesDir, null, true));
-
-        if (chromosomes != null) {
-
-            // only consider the traces files described by the chromosome ids
-            tracesFiles = new ArrayList<>();
-
-            for (String chromosome : chromosomes.split("\\+")) {
-                try {
-                    tracesFiles.addAll(
-                            Files.walk(tracesDir.toPath().resolve(chromosome))
-                                    .filter(Files::isRegularFile)
-                                    .map(Path::toFile)
-                                    .collect(Collectors.toList()));
-                } catch (IOException e) {
-                    Log.printError("Couldn't retrieve traces files!");
-                    throw new IllegalArgumentException(e);
-                }
-            }
+        // the traces files are served from the index of the app, the file system is only scanned once
+        final List<File> tracesFiles;
+        try {
+            tracesFiles = TraceStore.forApp(tracesDir.getParentFile()).getTraceFiles(chromosomes);
+        } catch (UncheckedIOException e) {
+            Log.printError("Couldn't retrieve traces files!");
+            throw new IllegalArgumentException(e);
         }
 
         Log.println("Number of considered traces files: " + tracesFiles.size());
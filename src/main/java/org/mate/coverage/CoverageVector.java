@@ -2,43 +2,53 @@ package org.mate.coverage;
 
 import org.mate.util.Log;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import java.util.BitSet;
 
 /**
  * Represents a coverage vector, i.e. a vector that maps a target (objective) to 0 (not covered) or 1 (covered).
+ * Targets and traces are referred to by their ids in the {@link org.mate.traces.TraceDictionary} of the app.
  */
 public class CoverageVector {
 
     /**
-     * Maps a target to the value 0 (not covered) or 1 (covered).
+     * The i-th bit is set if the i-th target is covered, the bits are packed into words of 64 targets.
      */
-    private final Map<CharSequence, Integer> vector;
+    private final long[] words;
+
+    /**
+     * The number of targets, i.e. the dimension of the vector.
+     */
+    private final int size;
+
+    /**
+     * The number of covered targets, i.e. the squared norm of the vector.
+     */
+    private final int covered;
 
     /**
      * Initializes a new coverage vector.
      *
-     * @param targets The set of targets (keys).
-     * @param traces The set of traces.
+     * @param targets The ids of the targets (keys).
+     * @param traces The ids of the traces.
      */
-    public CoverageVector(Set<String> targets, Set<String> traces) {
-        vector = new HashMap<>();
-
-        // initially, we assume that the targets are not covered
-        for (String target : targets) {
-            vector.put(target, 0);
-        }
+    public CoverageVector(int[] targets, BitSet traces) {
+        size = targets.length;
+        words = new long[(size + Long.SIZE - 1) / Long.SIZE];
 
         // check which target is covered by the traces
-        for (String trace : traces) {
-            if (vector.containsKey(trace)) {
-                vector.put(trace, 1);
-            } else {
-                Log.printWarning("The trace " + trace + " refers not to a target!");
+        int covered = 0;
+        for (int i = 0; i < targets.length; i++) {
+            if (traces.get(targets[i])) {
+                words[i / Long.SIZE] |= 1L << i;
+                covered++;
             }
         }
+        this.covered = covered;
+
+        int unknownTraces = traces.cardinality() - covered;
+        if (unknownTraces > 0) {
+            Log.printWarning(unknownTraces + " traces refer not to a target!");
+        }
     }
 
     /**
@@ -47,16 +57,36 @@ public class CoverageVector {
      * @return Returns {@code true} if the given vector represents the 0-vector, otherwise {@code false} is returned.
      */
     public boolean isZeroVector() {
-        return vector.values().stream().allMatch(val -> val == 0);
+        return covered == 0;
     }
 
     /**
-     * Returns the vector.
+     * Computes the cosine similarity between this and the given vector. Since both vectors are binary, the dot product
+     * is the number of targets covered by both vectors and the norm of a vector is the square root of the number of
+     * covered targets. The number of covered targets is known upfront, thus only the popcount of the intersection is
+     * computed word by word without allocating an intermediate bit set.
      *
-     * @return Returns the internal vector.
+     * @param other The other vector.
+     * @return Returns the cosine similarity bounded in [0,1].
+     * @throws IllegalArgumentException If the vectors refer to a different number of targets.
      */
-    public Map<CharSequence, Integer> getVector() {
-        return Collections.unmodifiableMap(vector);
+    public double cosineSimilarity(CoverageVector other) {
+
+        if (size != other.size) {
+            throw new IllegalArgumentException("Coverage vectors have different dimensions!");
+        }
+
+        if (covered == 0 || other.covered == 0) {
+            // the similarity to the 0-vector is defined as 0
+            return 0.0;
+        }
+
+        final long[] otherWords = other.words;
+        int intersection = 0;
+        for (int i = 0; i < words.length; i++) {
+            intersection += Long.bitCount(words[i] & otherWords[i]);
+        }
+        return intersection / Math.sqrt((double) covered * other.covered);
     }
 
     /**
@@ -66,8 +96,13 @@ public class CoverageVector {
      */
     @Override
     public String toString() {
-        return "CoverageVector{" +
-                "vector=" + vector.values() +
-                '}';
+        StringBuilder builder = new StringBuilder("CoverageVector{vector=[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append((words[i / Long.SIZE] >>> i) & 1L);
+        }
+        return builder.append("]}").toString();
     }
 }
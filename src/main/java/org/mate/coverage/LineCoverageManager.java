@@ -4,6 +4,7 @@ import org.jacoco.core.analysis.*;
 import org.jacoco.core.data.ExecutionData;
 import org.jacoco.core.data.ExecutionDataStore;
 import org.jacoco.core.tools.ExecFileLoader;
+import org.mate.io.BlobStore;
 import org.mate.io.ProcessRunner;
 import org.mate.network.message.Message;
 import org.mate.network.message.Messages;
@@ -458,7 +459,7 @@ public class LineCoverageManager {
             }
 
             try {
-                Files.copy(srcDir.resolve(entity), targetDir.resolve(entity));
+                BlobStore.forApp(appsDir.resolve(packageName)).copy(srcDir.resolve(entity), targetDir.resolve(entity));
             } catch (IOException e) {
                 final var errorMsg = "Chromosome copy failed: entity " + entity + " could not be copied from "
                         + srcDir + " to " + targetDir;
@@ -1,10 +1,11 @@
 package org.mate.coverage;
 
 import com.google.common.collect.Lists;
-import org.apache.commons.io.FileUtils;
 import org.mate.io.Device;
 import org.mate.network.message.Message;
 import org.mate.network.message.Messages;
+import org.mate.traces.AppTargetsCache;
+import org.mate.traces.TraceStore;
 import org.mate.util.AndroidEnvironment;
 import org.mate.util.Log;
 
@@ -12,7 +13,6 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Handles requests related to method coverage.
@@ -29,11 +29,6 @@ public class MethodCoverageManager {
      */
     private static final String TRACES_DIR = "traces";
 
-    /**
-     * The total number of methods.
-     */
-    private static Integer numberOfMethods = null;
-
     /**
      * Copies the coverage data, i.e. traces of test cases, specified through the list of entities
      * from the source chromosome (test suite) to the target chromosome (test suite).
@@ -67,7 +62,8 @@ public class MethodCoverageManager {
             }
 
             try {
-                Files.copy(Path.of(srcDir.getPath(), entity), Path.of(targetDir.getPath(), entity));
+                TraceStore.forApp(appDir.toPath())
+                        .copy(Path.of(srcDir.getPath(), entity), Path.of(targetDir.getPath(), entity));
             } catch (IOException e) {
                 final var errorMsg = "Chromosome copy failed: entity " + entity + " could not be copied from "
                         + srcDir + " to " + targetDir;
@@ -207,12 +203,8 @@ public class MethodCoverageManager {
 
         // second argument refers to traces.txt file(s)
         for (File tracesFile : tracesFiles) {
-            InputStream tracesInputStream = new FileInputStream(tracesFile);
-            BufferedReader tracesReader = new BufferedReader(new InputStreamReader(tracesInputStream));
-
             // read the traces
-            String trace;
-            while ((trace = tracesReader.readLine()) != null) {
+            for (String trace : TraceStore.forTraceFile(tracesFile).readTraces(tracesFile)) {
 
                 // each trace consists of className->methodName
                 String[] tuple = trace.split("->");
@@ -230,7 +222,6 @@ public class MethodCoverageManager {
                     }
                 }
             }
-            tracesReader.close();
         }
 
         double overallCoveredMethods = 0.0;
@@ -276,30 +267,12 @@ public class MethodCoverageManager {
             Log.println("TracesFile: " + tracesFile + "[" + tracesFile.exists() + "]");
         }
 
-        if (numberOfMethods == null) {
-            // we only need to read the methods.txt file once
-            numberOfMethods = (int) Files.lines(methodsFile.toPath()).count();
-        }
-
-        Set<String> coveredMethods = new HashSet<>();
-        int numberOfCoveredMethods = 0;
-
-        for (var traceFile : tracesFiles) {
-            try (var tracesReader = new BufferedReader(new InputStreamReader(new FileInputStream(traceFile)))) {
-
-                // a trace looks as follows: class name -> method name
-                String trace;
-                while ((trace = tracesReader.readLine()) != null) {
-                    final String[] tuple = trace.split("->");
-                    if (tuple.length == 2) { // prevent malformed traces
-                        coveredMethods.add(trace);
-                    }
-                }
-            }
-        }
+        // the methods.txt file is only re-read if it has changed
+        final int numberOfMethods = AppTargetsCache.get(methodsFile).size();
 
-        numberOfCoveredMethods = coveredMethods.size();
-        coveredMethods.clear();
+        // the union of the (pre-computed) coverage of the traces files
+        int numberOfCoveredMethods = TraceStore.forApp(methodsFile.getParentFile())
+                .readCoverage(tracesFiles, methodsFile).cardinality();
 
         // total method coverage
         double methodCoverage = (double) numberOfCoveredMethods / numberOfMethods * 100;
@@ -316,26 +289,13 @@ public class MethodCoverageManager {
      */
     private static List<File> getTraceFiles(File tracesDir, String chromosomes) {
 
-        // collect the relevant traces files
-        List<File> tracesFiles = new ArrayList<>(FileUtils.listFiles(tracesDir, null, true));
-
-        if (chromosomes != null) {
-
-            // only consider the traces files described by the chromosome ids
-            tracesFiles = new ArrayList<>();
-
-            for (String chromosome : chromosomes.split("\\+")) {
-                try {
-                    tracesFiles.addAll(
-                            Files.walk(tracesDir.toPath().resolve(chromosome))
-                                    .filter(Files::isRegularFile)
-                                    .map(Path::toFile)
-                                    .collect(Collectors.toList()));
-                } catch (IOException e) {
-                    Log.printError("Couldn't retrieve traces files!");
-                    throw new IllegalArgumentException(e);
-                }
-            }
+        // the traces files are served from the index of the app, the file system is only scanned once
+        final List<File> tracesFiles;
+        try {
+            tracesFiles = TraceStore.forApp(tracesDir.getParentFile()).getTraceFiles(chromosomes);
+        } catch (UncheckedIOException e) {
+            Log.printError("Couldn't retrieve traces files!");
+            throw new IllegalArgumentException(e);
         }
 
         Log.println("Number of considered traces files: " + tracesFiles.size());
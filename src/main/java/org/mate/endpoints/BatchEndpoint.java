@@ -0,0 +1,149 @@
+package org.mate.endpoints;
+
+import org.mate.network.Endpoint;
+import org.mate.network.message.Message;
+import org.mate.network.message.Messages;
+import org.mate.network.message.serialization.Lexer;
+import org.mate.network.message.serialization.MessageDecoder;
+import org.mate.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Handles batch requests, which bundle several independent requests in a single message, e.g. the fitness vectors of
+ * all chromosomes of a population. A batch request looks as follows:
+ *
+ * <pre>
+ * /batch;requests:n;request_0:&lt;serialized request&gt;;...;request_(n-1):&lt;serialized request&gt;~
+ * </pre>
+ *
+ * The sub requests are evaluated in parallel and the response contains the responses to the sub requests in the
+ * same order. The response to the i-th sub request is embedded unescaped, i.e. its subject is stored under the key
+ * {@code response_i} and each of its parameters under the key {@code response_i.<key>}:
+ *
+ * <pre>
+ * /batch;requests:n;response_0:&lt;subject&gt;;response_0.&lt;key&gt;:&lt;value&gt;;...;response_(n-1):&lt;subject&gt;;...~
+ * </pre>
+ *
+ * The metadata of the batch request, e.g. the supported vector encodings, applies to all sub requests that don't
+ * specify it on their own. Only the batch response is compressed, i.e. the sub responses are never compressed.
+ */
+public class BatchEndpoint implements Endpoint {
+
+    /**
+     * Handles a single sub request, including its metadata.
+     */
+    private final Endpoint dispatcher;
+
+    /**
+     * The pool on which the sub requests are evaluated.
+     */
+    private final ExecutorService executor;
+
+    public BatchEndpoint(Endpoint dispatcher, ExecutorService executor) {
+        this.dispatcher = dispatcher;
+        this.executor = executor;
+    }
+
+    @Override
+    public Message handle(Message request) {
+        if (request.getSubject().startsWith("/batch")) {
+            return handleBatch(request);
+        }
+        throw new IllegalArgumentException("Message request with subject: "
+                + request.getSubject() + " can't be handled by BatchEndpoint!");
+    }
+
+    /**
+     * Evaluates the sub requests of the given batch request in parallel.
+     *
+     * @param request The batch request.
+     * @return Returns a message containing the responses to the sub requests.
+     */
+    private Message handleBatch(Message request) {
+
+        int numberOfRequests = Integer.parseInt(request.getParameter("requests"));
+        Log.println("Number of batched requests: " + numberOfRequests);
+
+        List<Future<Message>> responses = new ArrayList<>(numberOfRequests);
+
+        for (int i = 0; i < numberOfRequests; i++) {
+            String serializedRequest = request.getParameter("request_" + i);
+            if (serializedRequest == null) {
+                throw new IllegalArgumentException("Batch request is missing the sub request " + i + "!");
+            }
+
+            Message subRequest = deserialize(serializedRequest);
+            if (subRequest.getSubject().startsWith("/batch")) {
+                throw new IllegalArgumentException("Batch requests can't be nested!");
+            }
+
+            Messages.inheritMetadata(request, subRequest);
+            try {
+                responses.add(executor.submit(() -> dispatcher.handle(subRequest)));
+            } catch (RejectedExecutionException e) {
+                // only a bounded number of sub requests is executed concurrently on virtual threads
+                responses.add(CompletableFuture.completedFuture(Messages.busyMessage(subRequest.getSubject(), 1)));
+            }
+        }
+
+        Message response = new Message("/batch");
+        response.addParameter("requests", String.valueOf(numberOfRequests));
+
+        for (int i = 0; i < numberOfRequests; i++) {
+            Message subResponse;
+            try {
+                subResponse = responses.get(i).get();
+            } catch (ExecutionException e) {
+                Log.println("Unexpected exception during handling batched request: " + e.getCause());
+                subResponse = Messages.errorMessage(String.valueOf(e.getCause().getMessage()));
+            } catch (InterruptedException e) {
+                responses.forEach(future -> future.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for batched requests", e);
+            }
+            embed(response, "response_" + i, subResponse);
+        }
+
+        return response;
+    }
+
+    /**
+     * Embeds the given sub response into the batch response. Copying the subject and the parameters avoids escaping
+     * the sub response twice, i.e. once when serializing the sub response and once more as part of the batch
+     * response.
+     *
+     * @param response The batch response.
+     * @param key The key of the sub response.
+     * @param subResponse The sub response.
+     */
+    private static void embed(Message response, String key, Message subResponse) {
+        response.addParameter(key, subResponse.getSubject());
+        for (Map.Entry<String, String> parameter : subResponse.getParameters().entrySet()) {
+            response.addParameter(key + "." + parameter.getKey(), parameter.getValue());
+        }
+    }
+
+    /**
+     * Deserializes a single sub request.
+     *
+     * @param serializedRequest The serialized sub request.
+     * @return Returns the deserialized sub request.
+     */
+    private Message deserialize(String serializedRequest) {
+        ByteBuffer buffer = ByteBuffer.wrap(serializedRequest.getBytes(Lexer.CHARSET));
+        Message subRequest = new MessageDecoder().decode(buffer);
+        if (subRequest == null || buffer.hasRemaining()) {
+            throw new IllegalArgumentException("Malformed sub request: " + serializedRequest);
+        }
+        return subRequest;
+    }
+}
@@ -3,8 +3,8 @@ package org.mate.endpoints;
 import org.mate.network.Endpoint;
 import org.mate.network.message.Message;
 
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The end point responsible for handling 'close' requests. Whenever such request comes in the client socket should be
@@ -13,9 +13,9 @@ import java.util.Set;
 public class CloseEndpoint implements Endpoint {
 
     /**
-     * Maintains a set of closed threads/sockets.
+     * Maintains a set of closed threads/sockets. Requests of different connections are handled concurrently.
      */
-    private final Set<Long> closedThreadIds = new HashSet<>();
+    private final Set<Long> closedThreadIds = ConcurrentHashMap.newKeySet();
 
     /**
      * Checks whether the client socket has been closed.
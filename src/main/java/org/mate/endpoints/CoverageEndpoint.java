@@ -6,36 +6,39 @@ import org.mate.network.message.Message;
 import org.mate.util.AndroidEnvironment;
 
 import java.nio.file.Path;
+import java.util.Map;
 
 public class CoverageEndpoint implements Endpoint {
     private final AndroidEnvironment androidEnvironment;
     private final Path appsDir;
+    private final Map<String, Endpoint> routes;
 
     public CoverageEndpoint(AndroidEnvironment androidEnvironment, Path appsDir) {
         this.androidEnvironment = androidEnvironment;
         this.appsDir = appsDir;
+        this.routes = Map.of(
+                "/coverage/store", this::storeCoverageData,
+                "/coverage/combined", this::getCombinedCoverage,
+                "/coverage/lineCoveredPercentages", this::getLineCoveredPercentages,
+                "/coverage/copy", this::copyCoverageData,
+                "/coverage/getSourceLines", this::getSourceLines,
+                "/coverage/getNumberOfSourceLines", this::getNumberOfSourceLines,
+                "/coverage/get", this::getCoverage);
     }
 
     @Override
     public Message handle(Message request) {
-
-        if (request.getSubject().startsWith("/coverage/store")) {
-            return storeCoverageData(request);
-        } else if (request.getSubject().startsWith("/coverage/combined")) {
-            return getCombinedCoverage(request);
-        } else if (request.getSubject().startsWith("/coverage/lineCoveredPercentages")) {
-            return getLineCoveredPercentages(request);
-        } else if (request.getSubject().startsWith("/coverage/copy")) {
-            return copyCoverageData(request);
-        } else if (request.getSubject().startsWith("/coverage/getSourceLines")) {
-            return getSourceLines(request);
-        } else if (request.getSubject().startsWith("/coverage/getNumberOfSourceLines")) {
-            return getNumberOfSourceLines(request);
-        } else if (request.getSubject().startsWith("/coverage/get")) {
-            return getCoverage(request);
+        final Endpoint handler = Endpoint.resolve(routes, request.getSubject());
+        if (handler == null) {
+            throw new IllegalArgumentException("Message request with subject: "
+                    + request.getSubject() + " can't be handled by CoverageEndPoint!");
         }
-        throw new IllegalArgumentException("Message request with subject: "
-                + request.getSubject() + " can't be handled by CoverageEndPoint!");
+        return handler.handle(request);
+    }
+
+    @Override
+    public Map<String, Endpoint> routes() {
+        return routes;
     }
 
     /**
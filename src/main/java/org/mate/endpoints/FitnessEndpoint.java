@@ -1,14 +1,17 @@
 package org.mate.endpoints;
 
 import com.google.common.collect.Lists;
-import org.apache.commons.io.FileUtils;
 import org.mate.coverage.CoverageVector;
+import org.mate.io.BlobStore;
 import org.mate.io.Device;
 import org.mate.io.ProcessRunner;
 import org.mate.network.Endpoint;
 import org.mate.network.message.Message;
 import org.mate.network.message.Messages;
+import org.mate.network.message.VectorEncoding;
 import org.mate.novelty.NoveltyMetric;
+import org.mate.traces.AppTargetsCache;
+import org.mate.traces.TraceStore;
 import org.mate.util.AndroidEnvironment;
 import org.mate.util.FitnessFunction;
 import org.mate.util.Log;
@@ -33,37 +36,37 @@ public class FitnessEndpoint implements Endpoint {
     private static final String BRANCHES_FILE = "branches.txt";
     private static final String METHODS_FILE = "methods.txt";
 
+    private final Map<String, Endpoint> routes;
+
     public FitnessEndpoint(AndroidEnvironment androidEnvironment, Path appsDir) {
         this.androidEnvironment = androidEnvironment;
         this.appsDir = appsDir;
+        this.routes = Map.of(
+                "/fitness/store_fitness_data", this::storeFitnessData,
+                "/fitness/copy_fitness_data", this::copyFitnessData,
+                "/fitness/get_branches", this::getBranches,
+                "/fitness/get_number_of_branches", this::getNumberOfBranches,
+                "/fitness/get_basic_blocks", this::getBasicBlocks,
+                "/fitness/get_number_of_basic_blocks", this::getNumberOfBasicBlocks,
+                "/fitness/get_basic_block_fitness_vector", this::getBasicBlockFitnessVector,
+                "/fitness/get_branch_fitness_vector", this::getBranchFitnessVector,
+                "/fitness/get_novelty_vector", this::getNoveltyVector,
+                "/fitness/get_novelty", this::getNovelty);
     }
 
     @Override
     public Message handle(Message request) {
-
-        if (request.getSubject().startsWith("/fitness/store_fitness_data")) {
-            return storeFitnessData(request);
-        } else if (request.getSubject().startsWith("/fitness/copy_fitness_data")) {
-            return copyFitnessData(request);
-        } else if (request.getSubject().startsWith("/fitness/get_branches")) {
-            return getBranches(request);
-        } else if (request.getSubject().startsWith("/fitness/get_number_of_branches")) {
-            return getNumberOfBranches(request);
-        } else if (request.getSubject().startsWith("/fitness/get_basic_blocks")) {
-            return getBasicBlocks(request);
-        } else if (request.getSubject().startsWith("/fitness/get_number_of_basic_blocks")) {
-            return getNumberOfBasicBlocks(request);
-        } else if (request.getSubject().startsWith("/fitness/get_basic_block_fitness_vector")) {
-            return getBasicBlockFitnessVector(request);
-        } else if (request.getSubject().startsWith("/fitness/get_branch_fitness_vector")) {
-            return getBranchFitnessVector(request);
-        } else if (request.getSubject().startsWith("/fitness/get_novelty_vector")) {
-            return getNoveltyVector(request);
-        } else if (request.getSubject().startsWith("/fitness/get_novelty")) {
-            return getNovelty(request);
+        final Endpoint handler = Endpoint.resolve(routes, request.getSubject());
+        if (handler == null) {
+            throw new IllegalArgumentException("Message request with subject: "
+                    + request.getSubject() + " can't be handled by FitnessEndpoint!");
         }
-        throw new IllegalArgumentException("Message request with subject: "
-                + request.getSubject() + " can't be handled by FitnessEndpoint!");
+        return handler.handle(request);
+    }
+
+    @Override
+    public Map<String, Endpoint> routes() {
+        return routes;
     }
 
     /**
@@ -89,29 +92,21 @@ public class FitnessEndpoint implements Endpoint {
         Path tracesDir = appDir.resolve("traces");
         File targetsFile = appDir.resolve(mapObjectivesToFile(objectives)).toFile();
 
-        // a linked hashset maintains insertion order and contains is in O(1)
-        Set<String> targets = new LinkedHashSet<>();
-
         // extract the targets, e.g. the methods that can be covered
-        try (Stream<String> stream = Files.lines(targetsFile.toPath(), StandardCharsets.UTF_8)) {
-            targets.addAll(stream.filter(line -> line.length() > 0).collect(Collectors.toList()));
-        } catch (IOException e) {
-            Log.printError("Reading " + targetsFile.getPath() + " failed!");
-            throw new IllegalStateException(e);
-        }
+        int[] targets = getTargets(targetsFile).getTraceIds();
 
         // derive the coverage vector for the chromosome
         CoverageVector chromosomeCoverageVector = new CoverageVector(targets,
-                readTraces(getTraceFiles(tracesDir.toFile(), chromosome)));
+                readTraceIds(appDir, getTraceFiles(tracesDir.toFile(), chromosome)));
         Log.println("Coverage vector of chromosome " + chromosome + ": " + chromosomeCoverageVector);
 
         population.addAll(archive);
 
         // derive the coverage vectors for every chromosome in the (combined) population
-        // TODO: cache traces to avoid re-reading traces for duplicate chromosome
+        // the traces of duplicate (or unchanged) chromosomes are served from the trace cache
         List<CoverageVector> coverageVectors = population.stream().map(member -> {
             List<File> tracesFiles = getTraceFiles(tracesDir.toFile(), member);
-            Set<String> traces = readTraces(tracesFiles);
+            BitSet traces = readTraceIds(appDir, tracesFiles);
             CoverageVector coverageVector = new CoverageVector(targets, traces);
             Log.println("Coverage vector of population chromosome " + member + ": " + coverageVector);
             return coverageVector;
@@ -144,35 +139,27 @@ public class FitnessEndpoint implements Endpoint {
         Path tracesDir = appDir.resolve("traces");
         File targetsFile = appDir.resolve(mapObjectivesToFile(objectives)).toFile();
 
-        // a linked hashset maintains insertion order and contains is in O(1)
-        Set<String> targets = new LinkedHashSet<>();
-
         // extract the targets, e.g. the methods that can be covered
-        try (Stream<String> stream = Files.lines(targetsFile.toPath(), StandardCharsets.UTF_8)) {
-            targets.addAll(stream.filter(line -> line.length() > 0).collect(Collectors.toList()));
-        } catch (IOException e) {
-            Log.printError("Reading " + targetsFile.getPath() + " failed!");
-            throw new IllegalStateException(e);
-        }
+        int[] targets = getTargets(targetsFile).getTraceIds();
 
         /*
          * We need to construct for each chromosome a vector that describes which targets it covers.
          */
         List<CoverageVector> coverageVectors = new ArrayList<>();
 
-        // TODO: cache traces to avoid re-reading traces for duplicate chromosome
+        // the traces of duplicate (or unchanged) chromosomes are served from the trace cache
         for (String chromosome : chromosomes) {
             List<File> tracesFiles = getTraceFiles(tracesDir.toFile(), chromosome);
-            Set<String> traces = readTraces(tracesFiles);
+            BitSet traces = readTraceIds(appDir, tracesFiles);
             coverageVectors.add(new CoverageVector(targets, traces));
         }
 
-        List<String> noveltyVector = NoveltyMetric.evaluate(coverageVectors, nearestNeighbours)
-                .stream().map(Object::toString).collect(Collectors.toList());
+        double[] noveltyVector = NoveltyMetric.evaluate(coverageVectors, nearestNeighbours)
+                .stream().mapToDouble(Double::doubleValue).toArray();
 
-        return new Message.MessageBuilder("/fitness/get_novelty_vector")
-                .withParameter("novelty_vector", String.join("+", noveltyVector))
-                .build();
+        Message response = new Message("/fitness/get_novelty_vector");
+        VectorEncoding.addNumberVector(request, response, "novelty_vector", noveltyVector);
+        return response;
     }
 
     /**
@@ -236,18 +223,7 @@ public class FitnessEndpoint implements Endpoint {
     private List<String> getBranches(Path appDir) {
 
         File branchesFile = appDir.resolve(BRANCHES_FILE).toFile();
-
-        List<String> branches = new ArrayList<>();
-
-        try (Stream<String> stream = Files.lines(branchesFile.toPath(), StandardCharsets.UTF_8)) {
-            // hopefully this preserves the order (remove blank line at end)
-            branches.addAll(stream.filter(line -> line.length() > 0).collect(Collectors.toList()));
-        } catch (IOException e) {
-            Log.printError("Reading branches.txt failed!");
-            throw new IllegalStateException(e);
-        }
-
-        return branches;
+        return getTargets(branchesFile).getLines();
     }
 
     /**
@@ -297,24 +273,17 @@ public class FitnessEndpoint implements Endpoint {
 
         List<String> basicBlocks = new ArrayList<>();
 
-        try (var blocksReader = new BufferedReader(new InputStreamReader(new FileInputStream(basicBlocksFile)))) {
-
-            // an entry looks as follows: class name -> method name -> block id -> block size -> isBranch
-            // where the entries are ordered per method based on the block id
-            String line;
-            while ((line = blocksReader.readLine()) != null) {
+        // an entry looks as follows: class name -> method name -> block id -> block size -> isBranch
+        // where the entries are ordered per method based on the block id
+        for (String line : getTargets(basicBlocksFile).getLines()) {
 
-                final String[] tokens = line.split("->");
-                final String clazz = tokens[0];
-                final String method = tokens[1];
-                final String basicBlockID = tokens[2];
+            final String[] tokens = line.split("->");
+            final String clazz = tokens[0];
+            final String method = tokens[1];
+            final String basicBlockID = tokens[2];
 
-                final String basicBlock = clazz + "->" + method + "->" + basicBlockID;
-                basicBlocks.add(basicBlock);
-            }
-        } catch (IOException e) {
-            Log.printError("Can't read from basic blocks file!");
-            throw new IllegalArgumentException(e);
+            final String basicBlock = clazz + "->" + method + "->" + basicBlockID;
+            basicBlocks.add(basicBlock);
         }
 
         return basicBlocks;
@@ -328,39 +297,26 @@ public class FitnessEndpoint implements Endpoint {
         Path appDir = appsDir.resolve(packageName);
         File branchesFile = appDir.resolve(BRANCHES_FILE).toFile();
 
-        // a linked hashset maintains insertion order and contains is in O(1)
-        Set<String> branches = new LinkedHashSet<>();
-
-        try (Stream<String> stream = Files.lines(branchesFile.toPath(), StandardCharsets.UTF_8)) {
-            // hopefully this preserves the order
-            branches.addAll(stream.filter(line -> line.length() > 0).collect(Collectors.toList()));
-        } catch (IOException e) {
-            Log.printError("Reading branches.txt failed!");
-            throw new IllegalStateException(e);
-        }
+        // the branches in the order of the branches.txt file
+        int[] branches = getTargets(branchesFile).getTraceIds();
 
         // collect the traces files described by the chromosome
         Path tracesDir = appDir.resolve("traces");
         List<File> tracesFiles = getTraceFiles(tracesDir.toFile(), chromosome);
 
-        Set<String> traces = readTraces(tracesFiles);
-        List<String> branchesFitnessVector = new ArrayList<>(branches.size());
+        BitSet traces = readTraceIds(appDir, tracesFiles);
+        boolean[] branchesFitnessVector = new boolean[branches.length];
 
-        for (String branch : branches) {
-            if (traces.contains(branch)) {
-                // covered branch
-                branchesFitnessVector.add(String.valueOf(1));
-            } else {
-                // uncovered branch
-                branchesFitnessVector.add(String.valueOf(0));
-            }
+        for (int index = 0; index < branches.length; index++) {
+            // a branch is either covered (1) or uncovered (0)
+            branchesFitnessVector[index] = traces.get(branches[index]);
         }
 
-        Log.println("Branch Fitness Vector: " + branchesFitnessVector);
+        Log.println("Branch Fitness Vector: " + Arrays.toString(branchesFitnessVector));
 
-        return new Message.MessageBuilder("/fitness/get_branch_fitness_vector")
-                .withParameter("branch_fitness_vector", String.join("+", branchesFitnessVector))
-                .build();
+        Message response = new Message("/fitness/get_branch_fitness_vector");
+        VectorEncoding.addBitVector(request, response, "branch_fitness_vector", branchesFitnessVector);
+        return response;
     }
 
     private Message getBasicBlockFitnessVector(Message request) {
@@ -371,67 +327,68 @@ public class FitnessEndpoint implements Endpoint {
         Path appDir = appsDir.resolve(packageName);
         File basicBlocksFile = appDir.resolve(BLOCKS_FILE).toFile();
 
-        // a linked hashset maintains insertion order and contains is in O(1)
-        Set<String> basicBlocks = new LinkedHashSet<>();
-
-        try (Stream<String> stream = Files.lines(basicBlocksFile.toPath(), StandardCharsets.UTF_8)) {
-            // hopefully this preserves the order
-            basicBlocks.addAll(stream.collect(Collectors.toList()));
-        } catch (IOException e) {
-            Log.printError("Reading blocks.txt failed!");
-            throw new IllegalStateException(e);
-        }
+        // the basic blocks in the order of the blocks.txt file
+        int[] basicBlocks = getTargets(basicBlocksFile).getTraceIds();
 
         // collect the traces files described by the chromosome
         Path tracesDir = appDir.resolve("traces");
         List<File> tracesFiles = getTraceFiles(tracesDir.toFile(), chromosome);
 
-        Set<String> traces = readTraces(tracesFiles);
-        List<String> basicBlockFitnessVector = new ArrayList<>(basicBlocks.size());
+        BitSet traces = readTraceIds(appDir, tracesFiles);
+        boolean[] basicBlockFitnessVector = new boolean[basicBlocks.length];
 
-        for (String basicBlock : basicBlocks) {
-            if (traces.contains(basicBlock)) {
-                // covered basic block
-                basicBlockFitnessVector.add(String.valueOf(1));
-            } else {
-                // uncovered basic block
-                basicBlockFitnessVector.add(String.valueOf(0));
-            }
+        for (int index = 0; index < basicBlocks.length; index++) {
+            // a basic block is either covered (1) or uncovered (0)
+            basicBlockFitnessVector[index] = traces.get(basicBlocks[index]);
         }
 
-        Log.println("Basic Block Fitness Vector: " + basicBlockFitnessVector);
+        Log.println("Basic Block Fitness Vector: " + Arrays.toString(basicBlockFitnessVector));
 
-        return new Message.MessageBuilder("/fitness/get_basic_block_fitness_vector")
-                .withParameter("basic_block_fitness_vector", String.join("+", basicBlockFitnessVector))
-                .build();
+        Message response = new Message("/fitness/get_basic_block_fitness_vector");
+        VectorEncoding.addBitVector(request, response, "basic_block_fitness_vector", basicBlockFitnessVector);
+        return response;
     }
 
     /**
-     * Reads the traces from the given list of traces files.
+     * Retrieves the targets, e.g. the branches, described by the given file from the {@link AppTargetsCache}.
      *
+     * @param targetsFile The file describing the targets, e.g. branches.txt.
+     * @return Returns the targets in the order of the targets file.
+     */
+    private AppTargetsCache.Targets getTargets(File targetsFile) {
+        try {
+            return AppTargetsCache.get(targetsFile);
+        } catch (UncheckedIOException e) {
+            Log.printError("Reading " + targetsFile.getPath() + " failed!");
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads the ids of the traces from the given list of traces files.
+     *
+     * @param appDir The app dir of the AUT.
      * @param tracesFiles A list of traces files.
-     * @return Returns the unique traces contained in the given traces files.
+     * @return Returns the ids of the unique traces contained in the given traces files.
      */
-    private Set<String> readTraces(List<File> tracesFiles) {
+    private BitSet readTraceIds(Path appDir, List<File> tracesFiles) {
 
         // read traces from trace file(s)
         long start = System.currentTimeMillis();
 
-        Set<String> traces = new HashSet<>();
+        BitSet traces;
 
-        for (File traceFile : tracesFiles) {
-            try (Stream<String> stream = Files.lines(traceFile.toPath(), StandardCharsets.UTF_8)) {
-                traces.addAll(stream.collect(Collectors.toList()));
-            } catch (IOException e) {
-                Log.println("Reading traces.txt failed!");
-                throw new IllegalStateException(e);
-            }
+        try {
+            traces = TraceStore.forApp(appDir).readIdSet(tracesFiles);
+        } catch (UncheckedIOException e) {
+            Log.println("Reading traces.txt failed!");
+            throw new IllegalStateException(e);
         }
 
         long end = System.currentTimeMillis();
         Log.println("Reading traces from file(s) took: " + (end - start) + " seconds");
 
-        Log.println("Number of collected traces: " + traces.size());
+        Log.println("Number of collected traces: " + traces.cardinality());
         return traces;
     }
 
@@ -444,26 +401,13 @@ public class FitnessEndpoint implements Endpoint {
      */
     private List<File> getTraceFiles(File tracesDir, String chromosomes) {
 
-        // collect the relevant traces files
-        List<File> tracesFiles = new ArrayList<>(FileUtils.listFiles(tracesDir, null, true));
-
-        if (chromosomes != null) {
-
-            // only consider the traces files described by the chromosome ids
-            tracesFiles = new ArrayList<>();
-
-            for (String chromosome : chromosomes.split("\\+")) {
-                try {
-                    tracesFiles.addAll(
-                            Files.walk(tracesDir.toPath().resolve(chromosome))
-                                    .filter(Files::isRegularFile)
-                                    .map(Path::toFile)
-                                    .collect(Collectors.toList()));
-                } catch (IOException e) {
-                    Log.printError("Couldn't retrieve traces files!");
-                    throw new IllegalArgumentException(e);
-                }
-            }
+        // the traces files are served from the index of the app, the file system is only scanned once
+        final List<File> tracesFiles;
+        try {
+            tracesFiles = TraceStore.forApp(tracesDir.getParentFile()).getTraceFiles(chromosomes);
+        } catch (UncheckedIOException e) {
+            Log.printError("Couldn't retrieve traces files!");
+            throw new IllegalArgumentException(e);
         }
 
         Log.println("Number of considered traces files: " + tracesFiles.size());
@@ -538,7 +482,8 @@ public class FitnessEndpoint implements Endpoint {
             }
 
             try {
-                Files.copy(Path.of(srcDir.getPath(), entity), Path.of(targetDir.getPath(), entity));
+                TraceStore.forApp(appDir.toPath())
+                        .copy(Path.of(srcDir.getPath(), entity), Path.of(targetDir.getPath(), entity));
             } catch (IOException e) {
                 final var errorMsg = "Chromosome copy failed: entity " + entity + " could not be copied from "
                         + srcDir + " to " + targetDir;
@@ -582,7 +527,8 @@ public class FitnessEndpoint implements Endpoint {
             }
 
             try {
-                Files.copy(Path.of(srcDir.getPath(), entity), Path.of(targetDir.getPath(), entity));
+                TraceStore.forApp(appDir.toPath())
+                        .copy(Path.of(srcDir.getPath(), entity), Path.of(targetDir.getPath(), entity));
             } catch (IOException e) {
                 final var errorMsg = "Chromosome copy failed: entity " + entity + " could not be copied from "
                         + srcDir + " to " + targetDir;
@@ -626,7 +572,8 @@ public class FitnessEndpoint implements Endpoint {
             }
 
             try {
-                Files.copy(Path.of(srcDir.getPath(), entity), Path.of(targetDir.getPath(), entity));
+                TraceStore.forApp(appDir.toPath())
+                        .copy(Path.of(srcDir.getPath(), entity), Path.of(targetDir.getPath(), entity));
             } catch (IOException e) {
                 final var errorMsg = "Chromosome copy failed: entity " + entity + " could not be copied from "
                         + srcDir + " to " + targetDir;
@@ -670,7 +617,8 @@ public class FitnessEndpoint implements Endpoint {
             }
 
             try {
-                Files.copy(Path.of(srcDir.getPath(), entity), Path.of(targetDir.getPath(), entity));
+                TraceStore.forApp(appDir.toPath())
+                        .copy(Path.of(srcDir.getPath(), entity), Path.of(targetDir.getPath(), entity));
             } catch (IOException e) {
                 final var errorMsg = "Chromosome copy failed: entity " + entity + " could not be copied from "
                         + srcDir + " to " + targetDir;
@@ -710,7 +658,7 @@ public class FitnessEndpoint implements Endpoint {
             }
 
             try {
-                Files.copy(srcDir.resolve(entity), targetDir.resolve(entity));
+                BlobStore.forApp(appsDir.resolve(packageName)).copy(srcDir.resolve(entity), targetDir.resolve(entity));
             } catch (IOException e) {
                 final var errorMsg = "Chromosome copy failed: entity " + entity + " could not be copied from "
                         + srcDir + " to " + targetDir;
@@ -8,12 +8,14 @@ import de.uni_passau.fim.auermich.android_graphs.core.statements.BasicStatement;
 import de.uni_passau.fim.auermich.android_graphs.core.statements.BlockStatement;
 import de.uni_passau.fim.auermich.android_graphs.core.statements.Statement;
 import de.uni_passau.fim.auermich.android_graphs.core.utility.Tuple;
-import org.apache.commons.io.FileUtils;
 import org.jf.dexlib2.analysis.AnalyzedInstruction;
 import org.mate.crash_reproduction.*;
 import org.mate.graphs.*;
 import org.mate.network.Endpoint;
 import org.mate.network.message.Message;
+import org.mate.network.message.VectorEncoding;
+import org.mate.traces.TraceDictionary;
+import org.mate.traces.TraceStore;
 import org.mate.util.AndroidEnvironment;
 import org.mate.util.Log;
 
@@ -25,6 +27,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -49,6 +52,12 @@ public class GraphEndpoint implements Endpoint {
      */
     private Graph graph = null;
 
+    /**
+     * Caches the vertices a trace maps to, indexed by the id of the trace in the {@link TraceDictionary} of the AUT.
+     * Needs to be reset whenever a new graph is constructed.
+     */
+    private volatile AtomicReferenceArray<Vertex[]> traceIdToVertices = new AtomicReferenceArray<>(0);
+
     /**
      * The path to the apps directory.
      */
@@ -133,6 +142,12 @@ public class GraphEndpoint implements Endpoint {
      */
     private static short generation = Short.MAX_VALUE;
 
+    /**
+     * Guards the branch distance cache ({@link #branchDistances} and {@link #generation}), which is overwritten per
+     * chromosome, against concurrent (pipelined) requests.
+     */
+    private static final Object BRANCH_DISTANCE_LOCK = new Object();
+
     /**
      * The list of target vertices, e.g. all branches.
      */
@@ -153,33 +168,38 @@ public class GraphEndpoint implements Endpoint {
      */
     private CrashReproductionUtil crashReproductionUtil;
 
+    /**
+     * The handlers keyed by the request subject.
+     */
+    private final Map<String, Endpoint> routes;
+
     public GraphEndpoint(AndroidEnvironment androidEnvironment, Path appsDir) {
         this.androidEnvironment = androidEnvironment;
         this.appsDir = appsDir;
+        this.routes = Map.of(
+                "/graph/init", this::initGraph,
+                "/graph/get_branch_distance_vector", this::getBranchDistanceVector,
+                "/graph/get_branch_distance", this::getBranchDistance,
+                "/graph/get_crash_distance", this::getCrashDistance,
+                "/graph/draw", this::drawGraph,
+                "/graph/stack_trace_tokens", this::getStackTraceTokens,
+                "/graph/stack_trace_user_tokens", this::getStackTraceUserTokens,
+                "/graph/stack_trace", this::getStackTrace);
     }
 
     @Override
     public Message handle(Message request) {
-        if (request.getSubject().startsWith("/graph/init")) {
-            return initGraph(request);
-        } else if (request.getSubject().startsWith("/graph/get_branch_distance_vector")) {
-            return getBranchDistanceVector(request);
-        } else if (request.getSubject().startsWith("/graph/get_branch_distance")) {
-            return getBranchDistance(request);
-        } else if (request.getSubject().startsWith("/graph/get_crash_distance")) {
-            return getCrashDistance(request);
-        } else if (request.getSubject().startsWith("/graph/draw")) {
-            return drawGraph(request);
-        } else if (request.getSubject().startsWith("/graph/stack_trace_tokens")) {
-            return getStackTraceTokens(request);
-        } else if(request.getSubject().startsWith("/graph/stack_trace_user_tokens")) {
-            return getStackTraceUserTokens(request);
-        } else if (request.getSubject().startsWith("/graph/stack_trace")) {
-            return getStackTrace(request);
-        } else {
+        final Endpoint handler = Endpoint.resolve(routes, request.getSubject());
+        if (handler == null) {
             throw new IllegalArgumentException("Message request with subject: "
                     + request.getSubject() + " can't be handled by GraphEndpoint!");
         }
+        return handler.handle(request);
+    }
+
+    @Override
+    public Map<String, Endpoint> routes() {
+        return routes;
     }
 
     /**
@@ -253,7 +273,7 @@ public class GraphEndpoint implements Endpoint {
      * @param branchVertex The given branch vertex (target).
      * @return Returns the combined approach level + branch distance for the given branch vertex.
      */
-    private String computeApproachLevelAndBranchDistance(final List<Vertex> visitedVertices, final CFGVertex branchVertex) {
+    private float computeApproachLevelAndBranchDistance(final List<Vertex> visitedVertices, final CFGVertex branchVertex) {
 
         /*
          * TODO: There can be multiple vertices with the same minimal distance (approach level) to the given target branch.
@@ -303,7 +323,7 @@ public class GraphEndpoint implements Endpoint {
          * could be covered; and otherwise we combine the approach level to the closest if or switch statement with the
          * branch distance.
          */
-        return minDistanceVertex == null ? "1" : minDistance == 0 ? "0"
+        return minDistanceVertex == null ? 1 : minDistance == 0 ? 0
                 : combineApproachLevelAndBranchDistance(minDistance , minDistanceVertex, branchVertex);
     }
 
@@ -367,14 +387,19 @@ public class GraphEndpoint implements Endpoint {
             throw new IllegalStateException("Graph hasn't been initialised!");
         }
 
+        final var dictionary = TraceStore.forApp(appsDir.resolve(packageName)).getDictionary();
         final var traces = getTraces(packageName, chromosome);
-        final var visitedVertices = mapTracesToVertices(traces);
-        precomputeBranchDistances(traces);
-        final var branchDistance = computeApproachLevelAndBranchDistance(visitedVertices,
-                // there is only a single target
-                (CFGVertex) targetVertices.get(0));
+        final var distanceTraces = getDistanceTraces(packageName, chromosome);
+        final var visitedVertices = mapTracesToVertices(dictionary, traces);
+        final float branchDistance;
+        synchronized (BRANCH_DISTANCE_LOCK) {
+            precomputeBranchDistances(dictionary, traces, distanceTraces);
+            branchDistance = computeApproachLevelAndBranchDistance(visitedVertices,
+                    // there is only a single target
+                    (CFGVertex) targetVertices.get(0));
+        }
         return new Message.MessageBuilder("/graph/get_branch_distance")
-                .withParameter("branch_distance", branchDistance)
+                .withParameter("branch_distance", String.valueOf(branchDistance))
                 .build();
     }
 
@@ -395,20 +420,25 @@ public class GraphEndpoint implements Endpoint {
         }
 
         long start = System.currentTimeMillis();
+        final var dictionary = TraceStore.forApp(appsDir.resolve(packageName)).getDictionary();
         final var traces = getTraces(packageName, chromosome);
-        final var visitedVertices = mapTracesToVertices(traces);
+        final var distanceTraces = getDistanceTraces(packageName, chromosome);
+        final var visitedVertices = mapTracesToVertices(dictionary, traces);
         final var branchVertices =  ((CFG) graph).getBranchVertices();
-        long start1 = System.currentTimeMillis();
-        precomputeBranchDistances(traces);
-        long end1 = System.currentTimeMillis();
-        Log.println("Pre-Computing branch distances took: " + (end1 - start1) + "ms");
-        final List<String> branchDistanceVector = computeBranchDistanceVector(visitedVertices, branchVertices);
+        final float[] branchDistanceVector;
+        synchronized (BRANCH_DISTANCE_LOCK) {
+            long start1 = System.currentTimeMillis();
+            precomputeBranchDistances(dictionary, traces, distanceTraces);
+            long end1 = System.currentTimeMillis();
+            Log.println("Pre-Computing branch distances took: " + (end1 - start1) + "ms");
+            branchDistanceVector = computeBranchDistanceVector(visitedVertices, branchVertices);
+        }
         long end = System.currentTimeMillis();
         Log.println("Computing branch distance vector took: " + (end - start) + "ms");
 
-        return new Message.MessageBuilder("/graph/get_branch_distance_vector")
-                .withParameter("branch_distance_vector", String.join("+", branchDistanceVector))
-                .build();
+        final Message response = new Message("/graph/get_branch_distance_vector");
+        VectorEncoding.addNumberVector(request, response, "branch_distance_vector", branchDistanceVector);
+        return response;
     }
 
     /**
@@ -418,19 +448,16 @@ public class GraphEndpoint implements Endpoint {
      * @param branchVertices The branch vertices (targets).
      * @return Returns the branch distance vector.
      */
-    private List<String> computeBranchDistanceVector(final List<Vertex> visitedVertices, final List<CFGVertex> branchVertices) {
+    private float[] computeBranchDistanceVector(final List<Vertex> visitedVertices, final List<CFGVertex> branchVertices) {
 
-        final var vector = new String[branchVertices.size()];
+        final var vector = new float[branchVertices.size()];
         IntStream.range(0, branchVertices.size())
                 .parallel()
                 .forEach(index -> {
                     final var vertex = branchVertices.get(index);
-                    final var distance = computeApproachLevelAndBranchDistance(visitedVertices, vertex);
-                    vector[index] = distance;
+                    vector[index] = computeApproachLevelAndBranchDistance(visitedVertices, vertex);
                 });
-
-        final var branchDistanceVector = Arrays.asList(vector);
-        return Collections.unmodifiableList(branchDistanceVector);
+        return vector;
     }
 
     /**
@@ -578,82 +605,100 @@ public class GraphEndpoint implements Endpoint {
     /**
      * Pre-computes / updates the branch distances for the given traces.
      *
-     * @param traces The list of traces.
+     * @param dictionary The trace dictionary of the AUT.
+     * @param traces The ids of the traces.
+     * @param distanceTraces The branch distance traces, which are not part of the dictionary.
      */
-    private static void precomputeBranchDistances(final List<String> traces) {
+    private static void precomputeBranchDistances(final TraceDictionary dictionary, final int[] traces,
+                                                  final Collection<String> distanceTraces) {
 
         final short g = generation--;
 
-        for (final String trace : traces) {
-
-            final int arrow = trace.lastIndexOf('>');
-            final int colon = trace.indexOf(':', arrow);
-
-            if (colon != -1) {
+        // traces files of a previous server version refer to the distance traces by id
+        for (final int traceId : traces) {
+            precomputeBranchDistance(dictionary.traceOf(traceId), g);
+        }
 
-                final short distance = (short) Integer.parseUnsignedInt(trace, colon + 1, trace.length(), 10);
+        for (final String trace : distanceTraces) {
+            precomputeBranchDistance(trace, g);
+        }
+    }
 
-                /*
-                 * We don't need to store a branch distance of 0 for neither if or switch statements, because we would
-                 * have taken that branch or case statement (approach level of 0), thus never requesting the branch
-                 * distance values at all.
-                 */
-                if (distance == 0) {
-                    continue;
-                }
+    /**
+     * Updates the branch distance described by the given trace if it is a branch distance trace.
+     *
+     * @param trace The trace.
+     * @param g The current generation number.
+     */
+    private static void precomputeBranchDistance(final String trace, final short g) {
 
-                final String switchStr = "->switch->";
-                final boolean isSwitchTrace = trace.regionMatches(arrow + 1 - switchStr.length(), switchStr,
-                        0, switchStr.length());
+        final int arrow = trace.lastIndexOf('>');
+        final int colon = trace.indexOf(':', arrow);
 
-                final String method = trace.substring(0, isSwitchTrace ? arrow + 1 - switchStr.length() : arrow - 1);
-                final int instruction = Integer.parseUnsignedInt(trace, arrow + 1, colon, 10);
+        if (colon != -1) {
 
-                final int rowIndex = methodNameIndex.get(method);
-                final int size = branchDistances[rowIndex]; // the number of IPs is stored at the row index
+            final short distance = (short) Integer.parseUnsignedInt(trace, colon + 1, trace.length(), 10);
 
-                if (size >= 0) { // regular case
+            /*
+             * We don't need to store a branch distance of 0 for neither if or switch statements, because we would
+             * have taken that branch or case statement (approach level of 0), thus never requesting the branch
+             * distance values at all.
+             */
+            if (distance == 0) {
+                return;
+            }
 
-                    final int instructionBaseAddress = rowIndex + 1; // the instruction index of the first IP
-                    final int branchDistanceBaseAddress = instructionBaseAddress + size; // the index of the first BD value
-                    final int generation = branchDistanceBaseAddress + 2 * size; // the index of the generation number
+            final String switchStr = "->switch->";
+            final boolean isSwitchTrace = trace.regionMatches(arrow + 1 - switchStr.length(), switchStr,
+                    0, switchStr.length());
 
-                    if (branchDistances[generation] > g) { // reset the branch distance values upon new generation
-                        Arrays.fill(branchDistances, branchDistanceBaseAddress, generation, Short.MAX_VALUE);
-                        branchDistances[generation] = g; // update the generation number
-                    }
+            final String method = trace.substring(0, isSwitchTrace ? arrow + 1 - switchStr.length() : arrow - 1);
+            final int instruction = Integer.parseUnsignedInt(trace, arrow + 1, colon, 10);
 
-                    // find the instruction index of the IP described by the trace
-                    final int instructionIndex = Arrays.binarySearch(
-                            branchDistances, instructionBaseAddress, branchDistanceBaseAddress, (short) instruction);
+            final int rowIndex = methodNameIndex.get(method);
+            final int size = branchDistances[rowIndex]; // the number of IPs is stored at the row index
 
-                    if (instructionIndex >= 0) {
-                        // the index of the branch distance value is located at a fixed offset from the index of the IP
-                        final int branchDistanceIndex = instructionIndex + size * (isSwitchTrace ? 2 : 1);
+            if (size >= 0) { // regular case
 
-                        // update branch distance if better than previous one
-                        final short oldDistance = branchDistances[branchDistanceIndex];
-                        branchDistances[branchDistanceIndex] = distance < oldDistance ? distance : oldDistance;
-                    } else {
-                        Log.println("Instruction index not found in branch distance array for trace: " + trace);
-                    }
-                } else { // optimized variant for exactly three IPs
-                    final int generation = rowIndex + 7; // the index of the generation number
+                final int instructionBaseAddress = rowIndex + 1; // the instruction index of the first IP
+                final int branchDistanceBaseAddress = instructionBaseAddress + size; // the index of the first BD value
+                final int generation = branchDistanceBaseAddress + 2 * size; // the index of the generation number
 
-                    if (branchDistances[generation] > g) { // reset the branch distance values upon new generation
-                        Arrays.fill(branchDistances, rowIndex + 1, generation, Short.MAX_VALUE);
-                        branchDistances[generation] = g; // update the generation number
-                    }
+                if (branchDistances[generation] > g) { // reset the branch distance values upon new generation
+                    Arrays.fill(branchDistances, branchDistanceBaseAddress, generation, Short.MAX_VALUE);
+                    branchDistances[generation] = g; // update the generation number
+                }
 
-                    final int midInstruction = -size; // the negated value refers to the index of the middle instruction
+                // find the instruction index of the IP described by the trace
+                final int instructionIndex = Arrays.binarySearch(
+                        branchDistances, instructionBaseAddress, branchDistanceBaseAddress, (short) instruction);
 
-                    final int branchDistanceIndex =
-                            rowIndex + 2 + Integer.signum(instruction - midInstruction) + (isSwitchTrace ? 3 : 0);
+                if (instructionIndex >= 0) {
+                    // the index of the branch distance value is located at a fixed offset from the index of the IP
+                    final int branchDistanceIndex = instructionIndex + size * (isSwitchTrace ? 2 : 1);
 
                     // update branch distance if better than previous one
                     final short oldDistance = branchDistances[branchDistanceIndex];
                     branchDistances[branchDistanceIndex] = distance < oldDistance ? distance : oldDistance;
+                } else {
+                    Log.println("Instruction index not found in branch distance array for trace: " + trace);
                 }
+            } else { // optimized variant for exactly three IPs
+                final int generation = rowIndex + 7; // the index of the generation number
+
+                if (branchDistances[generation] > g) { // reset the branch distance values upon new generation
+                    Arrays.fill(branchDistances, rowIndex + 1, generation, Short.MAX_VALUE);
+                    branchDistances[generation] = g; // update the generation number
+                }
+
+                final int midInstruction = -size; // the negated value refers to the index of the middle instruction
+
+                final int branchDistanceIndex =
+                        rowIndex + 2 + Integer.signum(instruction - midInstruction) + (isSwitchTrace ? 3 : 0);
+
+                // update branch distance if better than previous one
+                final short oldDistance = branchDistances[branchDistanceIndex];
+                branchDistances[branchDistanceIndex] = distance < oldDistance ? distance : oldDistance;
             }
         }
     }
@@ -666,7 +711,7 @@ public class GraphEndpoint implements Endpoint {
      * @param branchVertex The given branch vertex (target).
      * @return Returns the normalised approach level + branch distance fitness value.
      */
-    private String combineApproachLevelAndBranchDistance(final int approachLevel, final CFGVertex minDistanceVertex,
+    private float combineApproachLevelAndBranchDistance(final int approachLevel, final CFGVertex minDistanceVertex,
                                                          final CFGVertex branchVertex) {
 
         final int minBranchDistance;
@@ -762,8 +807,7 @@ public class GraphEndpoint implements Endpoint {
         // combine and normalise approach level + branch distance
         final float normalisedBranchDistance = (float) minBranchDistance / (minBranchDistance + 1);
         final float combined = approachLevel + normalisedBranchDistance;
-        final float combinedNormalized = combined / (combined + 1);
-        return String.valueOf(combinedNormalized);
+        return combined / (combined + 1);
     }
 
     /**
@@ -822,7 +866,8 @@ public class GraphEndpoint implements Endpoint {
      * @return Returns the traces for a single chromosome or all if unspecified.
      */
     private Set<String> getTraces(Message request) {
-        return new HashSet<>(readTraces(getTraceFiles(request)));
+        final Path appDir = appsDir.resolve(request.getParameter("packageName"));
+        return new HashSet<>(readTraces(appDir.toFile(), getTraceFiles(request)));
     }
 
     /**
@@ -832,8 +877,9 @@ public class GraphEndpoint implements Endpoint {
      * @return Returns the traces per file / action.
      */
     private List<Set<String>> getTracesPerFile(Message request) {
+        final TraceStore traceStore = TraceStore.forApp(appsDir.resolve(request.getParameter("packageName")));
         return getTraceFiles(request).stream()
-                .map(f -> new HashSet<>(readTraces(List.of(f))))
+                .map(f -> new HashSet<>(traceStore.readTraces(f)))
                 .collect(Collectors.toList());
     }
 
@@ -1299,9 +1345,9 @@ public class GraphEndpoint implements Endpoint {
         final List<File> tracesFiles = getTraceFiles(tracesDir, chromosomes);
 
         // read traces from trace file(s)
-        final List<String> traces = readTraces(tracesFiles);
+        final int[] traces = readTraceIds(appDir, tracesFiles);
 
-        return mapTracesToVertices(traces);
+        return mapTracesToVertices(TraceStore.forApp(appDir).getDictionary(), traces);
     }
 
     /**
@@ -1492,7 +1538,9 @@ public class GraphEndpoint implements Endpoint {
 
                 // TODO: Make this dependent on fitness function, only required for approach level + branch distance.
                 long start = System.currentTimeMillis();
-                initBranchDistanceCache(getInstrumentationPoints(packageName));
+                synchronized (BRANCH_DISTANCE_LOCK) {
+                    initBranchDistanceCache(getInstrumentationPoints(packageName));
+                }
                 initApproachLevelCache((List<CFGVertex>) targetVertices);
                 long end = System.currentTimeMillis();
                 Log.println("Pre-Computing approach levels and branch distances took: " + (end - start) + "ms");
@@ -1525,6 +1573,7 @@ public class GraphEndpoint implements Endpoint {
     private void initIntraCFG(final File apkPath, final String methodName, final boolean useBasicBlocks,
                                  final String packageName, final String target) {
         graph = new IntraCFG(apkPath, methodName, useBasicBlocks, appsDir, packageName);
+        traceIdToVertices = new AtomicReferenceArray<>(0);
         targetVertices = selectTargetVertices(target, packageName, apkPath, null);
     }
 
@@ -1541,6 +1590,7 @@ public class GraphEndpoint implements Endpoint {
     private void initInterCFG(File apkPath, boolean useBasicBlocks, boolean excludeARTClasses,
                                  boolean resolveOnlyAUTClasses, String packageName, String target) {
         graph = new InterCFG(apkPath, useBasicBlocks, excludeARTClasses, resolveOnlyAUTClasses, appsDir, packageName);
+        traceIdToVertices = new AtomicReferenceArray<>(0);
         targetVertices = selectTargetVertices(target, packageName, apkPath, null);
     }
 
@@ -1557,6 +1607,7 @@ public class GraphEndpoint implements Endpoint {
     private void initCallTree(File apkPath, boolean excludeARTClasses, boolean resolveOnlyAUTClasses,
                               String packageName, String target, String stackTracePath) {
         graph = new CallTree(apkPath, excludeARTClasses, resolveOnlyAUTClasses, appsDir, packageName);
+        traceIdToVertices = new AtomicReferenceArray<>(0);
         targetVertices = selectTargetVertices(target, packageName, apkPath, stackTracePath);
     }
 
@@ -1565,13 +1616,31 @@ public class GraphEndpoint implements Endpoint {
      *
      * @param packageName The package name of the AUT.
      * @param chromosome The chromosome for which the traces should be retrieved.
-     * @return Returns the traces for the given chromosome.
+     * @return Returns the ids of the traces for the given chromosome.
      */
-    private List<String> getTraces(final String packageName, final String chromosome) {
+    private int[] getTraces(final String packageName, final String chromosome) {
         final Path appDir = appsDir.resolve(packageName);
         final File tracesDir = appDir.resolve("traces").toFile();
         final List<File> tracesFiles = getTraceFiles(tracesDir, chromosome);
-        return readTraces(tracesFiles);
+        return readTraceIds(appDir.toFile(), tracesFiles);
+    }
+
+    /**
+     * Retrieves the branch distance traces for the given chromosome.
+     *
+     * @param packageName The package name of the AUT.
+     * @param chromosome The chromosome for which the traces should be retrieved.
+     * @return Returns the branch distance traces for the given chromosome.
+     */
+    private Set<String> getDistanceTraces(final String packageName, final String chromosome) {
+        final Path appDir = appsDir.resolve(packageName);
+        final List<File> tracesFiles = getTraceFiles(appDir.resolve("traces").toFile(), chromosome);
+        try {
+            return TraceStore.forApp(appDir).readDistanceTraces(tracesFiles);
+        } catch (UncheckedIOException e) {
+            Log.println("Reading traces.txt failed!");
+            throw new IllegalStateException(e);
+        }
     }
 
     /**
@@ -1583,26 +1652,13 @@ public class GraphEndpoint implements Endpoint {
      */
     private List<File> getTraceFiles(File tracesDir, String chromosomes) {
 
-        // collect the relevant traces files
-        List<File> tracesFiles = new ArrayList<>(FileUtils.listFiles(tracesDir, null, true));
-
-        if (chromosomes != null) {
-
-            // only consider the traces files described by the chromosome ids
-            tracesFiles = new ArrayList<>();
-
-            for (String chromosome : chromosomes.split("\\+")) {
-                try {
-                    tracesFiles.addAll(
-                            Files.walk(tracesDir.toPath().resolve(chromosome))
-                                    .filter(Files::isRegularFile)
-                                    .map(Path::toFile)
-                                    .collect(Collectors.toList()));
-                } catch (IOException e) {
-                    Log.printError("Couldn't retrieve traces files!");
-                    throw new IllegalArgumentException(e);
-                }
-            }
+        // the traces files are served from the index of the app, the file system is only scanned once
+        final List<File> tracesFiles;
+        try {
+            tracesFiles = TraceStore.forApp(tracesDir.getParentFile()).getTraceFiles(chromosomes);
+        } catch (UncheckedIOException e) {
+            Log.printError("Couldn't retrieve traces files!");
+            throw new IllegalArgumentException(e);
         }
 
         Log.println("Number of considered traces files: " + tracesFiles.size());
@@ -1612,23 +1668,22 @@ public class GraphEndpoint implements Endpoint {
     /**
      * Reads the traces from the given list of traces files.
      *
+     * @param appDir The app directory.
      * @param tracesFiles A list of traces files.
      * @return Returns the unique traces contained in the given traces files.
      */
-    private List<String> readTraces(List<File> tracesFiles) {
+    private List<String> readTraces(File appDir, List<File> tracesFiles) {
 
         // read traces from trace file(s)
         long start = System.currentTimeMillis();
 
-        Set<String> traces = new LinkedHashSet<>();
+        Set<String> traces;
 
-        for (File traceFile : tracesFiles) {
-            try (Stream<String> stream = Files.lines(traceFile.toPath(), StandardCharsets.UTF_8)) {
-                traces.addAll(stream.collect(Collectors.toList()));
-            } catch (IOException e) {
-                Log.println("Reading traces.txt failed!");
-                throw new IllegalStateException(e);
-            }
+        try {
+            traces = TraceStore.forApp(appDir).readTraces(tracesFiles);
+        } catch (UncheckedIOException e) {
+            Log.println("Reading traces.txt failed!");
+            throw new IllegalStateException(e);
         }
 
         long end = System.currentTimeMillis();
@@ -1639,12 +1694,42 @@ public class GraphEndpoint implements Endpoint {
     }
 
     /**
-     * Maps the given set of traces to vertices in the graph.
+     * Reads the trace ids from the given list of traces files.
+     *
+     * @param appDir The app directory.
+     * @param tracesFiles A list of traces files.
+     * @return Returns the ids of the unique traces contained in the given traces files.
+     */
+    private int[] readTraceIds(File appDir, List<File> tracesFiles) {
+
+        // read traces from trace file(s)
+        long start = System.currentTimeMillis();
+
+        int[] traces;
+
+        try {
+            traces = TraceStore.forApp(appDir).readIdSet(tracesFiles).stream().toArray();
+        } catch (UncheckedIOException e) {
+            Log.println("Reading traces.txt failed!");
+            throw new IllegalStateException(e);
+        }
+
+        long end = System.currentTimeMillis();
+        Log.println("Reading traces from file(s) took: " + (end - start) + " ms.");
+
+        Log.println("Number of collected traces: " + traces.length);
+        return traces;
+    }
+
+    /**
+     * Maps the given set of traces to vertices in the graph. The vertices of a trace are looked up only once per graph,
+     * afterwards they are retrieved by the id of the trace, see {@link #traceIdToVertices}.
      *
-     * @param traces The set of traces that should be mapped to vertices.
+     * @param dictionary The trace dictionary of the AUT.
+     * @param traces The ids of the traces that should be mapped to vertices.
      * @return Returns the vertices described by the given set of traces.
      */
-    private List<Vertex> mapTracesToVertices(List<String> traces) {
+    private List<Vertex> mapTracesToVertices(final TraceDictionary dictionary, final int[] traces) {
 
         // read traces from trace file(s)
         long start = System.currentTimeMillis();
@@ -1652,56 +1737,102 @@ public class GraphEndpoint implements Endpoint {
         // we need to mark vertices we visited
         Set<Vertex> visitedVertices = Collections.newSetFromMap(new ConcurrentHashMap<Vertex, Boolean>());
 
+        final AtomicReferenceArray<Vertex[]> cache = getTraceIdToVertices(dictionary.size());
+
         // map trace to vertex
-        traces.parallelStream().forEach(trace -> {
+        Arrays.stream(traces).parallel().forEach(traceId -> {
 
-            if (trace.contains(":")) {
-                // skip branch distance trace
-                return;
+            Vertex[] vertices = cache.get(traceId);
+
+            if (vertices == null) {
+                vertices = lookupVertices(dictionary.traceOf(traceId));
+                cache.set(traceId, vertices);
             }
 
-            // mark virtual entry
-            final String entryMarker = "->entry";
-            final int entryIndex = trace.indexOf(entryMarker);
-            if (entryIndex != -1) {
-                final String entryTrace = trace.substring(0, entryIndex + entryMarker.length());
-                final Vertex visitedEntry = graph.lookupVertex(entryTrace);
+            Collections.addAll(visitedVertices, vertices);
+        });
 
-                if (visitedEntry != null) {
-                    visitedVertices.add(visitedEntry);
-                } else {
-                    Log.printWarning("Couldn't derive vertex for entry trace: " + entryTrace);
-                }
+        long end = System.currentTimeMillis();
+        Log.println("Mapping traces to vertices took: " + (end - start) + " ms.");
+
+        Log.println("Number of visited vertices: " + visitedVertices.size());
+        return new ArrayList<>(visitedVertices);
+    }
+
+    /**
+     * Returns the cache mapping trace ids to vertices, growing it if necessary.
+     *
+     * @param size The number of trace ids the cache needs to hold.
+     * @return Returns the cache mapping trace ids to vertices.
+     */
+    private synchronized AtomicReferenceArray<Vertex[]> getTraceIdToVertices(final int size) {
+
+        AtomicReferenceArray<Vertex[]> cache = traceIdToVertices;
+
+        if (cache.length() < size) {
+            final AtomicReferenceArray<Vertex[]> grown
+                    = new AtomicReferenceArray<>(Math.max(size, 2 * cache.length()));
+            for (int i = 0; i < cache.length(); i++) {
+                grown.set(i, cache.get(i));
             }
+            traceIdToVertices = cache = grown;
+        }
+        return cache;
+    }
 
-            // mark virtual exit
-            final String exitMarker = "->exit";
-            final int exitIndex = trace.indexOf(exitMarker);
-            if (exitIndex != -1) {
-                final String exitTrace = trace.substring(0, exitIndex + exitMarker.length());
-                final Vertex visitedExit = graph.lookupVertex(exitTrace);
+    /**
+     * Looks up the vertices described by the given trace, i.e. the vertex corresponding to the trace and the virtual
+     * entry or exit vertex if the trace refers to one.
+     *
+     * @param trace The trace that should be mapped to vertices.
+     * @return Returns the vertices described by the trace, possibly none.
+     */
+    private Vertex[] lookupVertices(final String trace) {
 
-                if (visitedExit != null) {
-                    visitedVertices.add(visitedExit);
-                } else {
-                    Log.printWarning("Couldn't derive vertex for exit trace: " + exitTrace);
-                }
+        if (trace.contains(":")) {
+            // skip branch distance trace
+            return new Vertex[0];
+        }
+
+        final List<Vertex> vertices = new ArrayList<>(3);
+
+        // mark virtual entry
+        final String entryMarker = "->entry";
+        final int entryIndex = trace.indexOf(entryMarker);
+        if (entryIndex != -1) {
+            final String entryTrace = trace.substring(0, entryIndex + entryMarker.length());
+            final Vertex visitedEntry = graph.lookupVertex(entryTrace);
+
+            if (visitedEntry != null) {
+                vertices.add(visitedEntry);
+            } else {
+                Log.printWarning("Couldn't derive vertex for entry trace: " + entryTrace);
             }
+        }
 
-            // mark actual vertex corresponding to trace
-            Vertex visitedVertex = graph.lookupVertex(trace);
+        // mark virtual exit
+        final String exitMarker = "->exit";
+        final int exitIndex = trace.indexOf(exitMarker);
+        if (exitIndex != -1) {
+            final String exitTrace = trace.substring(0, exitIndex + exitMarker.length());
+            final Vertex visitedExit = graph.lookupVertex(exitTrace);
 
-            if (visitedVertex == null) {
-                Log.printWarning("Couldn't derive vertex for trace: " + trace);
+            if (visitedExit != null) {
+                vertices.add(visitedExit);
             } else {
-                visitedVertices.add(visitedVertex);
+                Log.printWarning("Couldn't derive vertex for exit trace: " + exitTrace);
             }
-        });
+        }
 
-        long end = System.currentTimeMillis();
-        Log.println("Mapping traces to vertices took: " + (end - start) + " ms.");
+        // mark actual vertex corresponding to trace
+        Vertex visitedVertex = graph.lookupVertex(trace);
 
-        Log.println("Number of visited vertices: " + visitedVertices.size());
-        return new ArrayList<>(visitedVertices);
+        if (visitedVertex == null) {
+            Log.printWarning("Couldn't derive vertex for trace: " + trace);
+        } else {
+            vertices.add(visitedVertex);
+        }
+
+        return vertices.toArray(new Vertex[0]);
     }
 }
@@ -0,0 +1,44 @@
+package org.mate.endpoints;
+
+import org.mate.network.Endpoint;
+import org.mate.network.message.Message;
+import org.mate.network.metrics.RequestMetrics;
+
+import java.util.Map;
+
+/**
+ * Exposes the statistics of the handled requests. The response to a '/metrics/get' request contains a parameter per
+ * subject describing the number of requests, the number of failed requests, the latency percentiles (in
+ * microseconds) and the number of received and sent bytes, e.g.
+ * {@code /fitness/get_novelty:count=3,errors=0,p50_us=1151,p90_us=1215,p99_us=1215,max_us=1215,bytes_in=1024,...}.
+ */
+public class MetricsEndpoint implements Endpoint {
+
+    private final RequestMetrics metrics;
+
+    public MetricsEndpoint(RequestMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Message handle(Message request) {
+        if (request.getSubject().startsWith("/metrics/get")) {
+            return getMetrics();
+        }
+        throw new IllegalArgumentException("Message request with subject: "
+                + request.getSubject() + " can't be handled by MetricsEndpoint!");
+    }
+
+    /**
+     * Returns a snapshot of the collected statistics.
+     *
+     * @return Returns a message containing the statistics keyed by subject.
+     */
+    private Message getMetrics() {
+        Message response = new Message("/metrics/get");
+        for (Map.Entry<String, String> subject : metrics.snapshot().entrySet()) {
+            response.addParameter(subject.getKey(), subject.getValue());
+        }
+        return response;
+    }
+}
@@ -0,0 +1,72 @@
+package org.mate.endpoints;
+
+import org.mate.network.Endpoint;
+import org.mate.network.message.Message;
+import org.mate.traces.TraceCollector;
+import org.mate.traces.TraceStore;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Manages the retention of the traces of an app. The client declares the live chromosomes, e.g. the current
+ * population and archive, via a '/traces/retain' request, the traces and line coverage data of all other chromosomes
+ * are removed by the {@link TraceCollector}, either periodically or explicitly via a '/traces/collect' request.
+ */
+public class TracesEndpoint implements Endpoint {
+
+    private final TraceCollector traceCollector;
+
+    public TracesEndpoint(TraceCollector traceCollector) {
+        this.traceCollector = traceCollector;
+    }
+
+    @Override
+    public Message handle(Message request) {
+        if (request.getSubject().startsWith("/traces/retain")) {
+            return retain(request);
+        } else if (request.getSubject().startsWith("/traces/collect")) {
+            return collect(request);
+        }
+        throw new IllegalArgumentException("Message request with subject: "
+                + request.getSubject() + " can't be handled by TracesEndpoint!");
+    }
+
+    /**
+     * Flushes the trace dictionaries of the apps, such that the traces added since the last flush aren't lost.
+     */
+    @Override
+    public void drain() {
+        TraceStore.flushAll();
+    }
+
+    /**
+     * Declares the live chromosomes of an app, the traces of all other chromosomes may be removed.
+     *
+     * @param request The request message containing the package name and the live chromosomes separated by '+'.
+     * @return Returns an empty response message.
+     */
+    private Message retain(Message request) {
+
+        String packageName = request.getParameter("packageName");
+        String chromosomes = request.getParameter("chromosomes");
+
+        traceCollector.retain(packageName, chromosomes == null || chromosomes.isEmpty()
+                ? Set.of() : Set.copyOf(Arrays.asList(chromosomes.split("\\+"))));
+        return new Message("/traces/retain");
+    }
+
+    /**
+     * Removes the traces of the dead chromosomes of an app immediately.
+     *
+     * @param request The request message containing the package name.
+     * @return Returns a response message containing the number of removed chromosomes.
+     */
+    private Message collect(Message request) {
+        String packageName = request.getParameter("packageName");
+        int removed = traceCollector.collect(packageName);
+        return new Message.MessageBuilder("/traces/collect")
+                .withParameter("removed", String.valueOf(removed))
+                .build();
+    }
+}
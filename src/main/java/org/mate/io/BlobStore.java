@@ -0,0 +1,188 @@
+package org.mate.io;
+
+import org.mate.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A content-addressed store of the files of an app that are shared among chromosomes, e.g. the traces file of a test
+ * case that is copied from one test suite to another. Each distinct content is stored once as blob in the
+ * {@link #BLOBS_DIR} directory of the app, named by its SHA-256 hash, and the chromosome directories hold hard links
+ * to the blobs. Thus, copying a test case is a metadata operation that neither reads nor writes the content.
+ *
+ * Since the links share the content, a stored file must never be modified in place, but replaced, e.g. by moving a
+ * new file over it. If the file system doesn't support hard links, files are copied as usual.
+ */
+public final class BlobStore {
+
+    /**
+     * The name of the directory in the app directory that contains the blobs.
+     */
+    public static final String BLOBS_DIR = "blobs";
+
+    /**
+     * The blob stores keyed by the (normalized) app directory.
+     */
+    private static final Map<Path, BlobStore> STORES = new ConcurrentHashMap<>();
+
+    private final Path blobsDir;
+
+    /**
+     * Maps a file to the blob it has been linked to.
+     */
+    private final Map<Path, Path> blobs = new HashMap<>();
+
+    /**
+     * Whether the file system supports hard links.
+     */
+    private boolean linksSupported = true;
+
+    private BlobStore(Path appDir) {
+        blobsDir = appDir.resolve(BLOBS_DIR);
+    }
+
+    /**
+     * Returns the blob store of the given app.
+     *
+     * @param appDir The app directory, e.g. apps/com.zola.bmi.
+     * @return Returns the blob store of the app.
+     */
+    public static BlobStore forApp(Path appDir) {
+        return STORES.computeIfAbsent(appDir.toAbsolutePath().normalize(), BlobStore::new);
+    }
+
+    /**
+     * Copies the given file such that the source and the target file share their content. The source file is added
+     * to the store if it isn't stored yet, afterwards the target file is linked to the blob.
+     *
+     * @param source The file to be copied, e.g. traces/chromosome/entity.
+     * @param target The target file, which must not exist yet.
+     * @throws IOException If the file can't be copied.
+     */
+    public synchronized void copy(Path source, Path target) throws IOException {
+
+        if (!linksSupported) {
+            Files.copy(source, target);
+            return;
+        }
+
+        final Path blob;
+        try {
+            blob = store(source.toAbsolutePath().normalize());
+            Files.createLink(target, blob);
+        } catch (UnsupportedOperationException e) {
+            Log.printWarning("Hard links are not supported, copying files instead: " + e.getMessage());
+            linksSupported = false;
+            Files.copy(source, target);
+            return;
+        }
+
+        blobs.put(target.toAbsolutePath().normalize(), blob);
+    }
+
+    /**
+     * Deletes the blobs that are no longer referenced by any file of the app, i.e. blobs with a single link. Requires
+     * a file system that reports the number of links of a file, otherwise no blob is deleted.
+     *
+     * @return Returns the number of deleted blobs.
+     * @throws IOException If the blobs can't be listed or deleted.
+     */
+    public synchronized int collect() throws IOException {
+
+        blobs.keySet().removeIf(file -> !Files.exists(file));
+
+        if (!Files.isDirectory(blobsDir)) {
+            return 0;
+        }
+
+        final List<Path> unreferenced = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(blobsDir)) {
+            for (Path blob : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                if ((int) Files.getAttribute(blob, "unix:nlink") == 1) {
+                    unreferenced.add(blob);
+                }
+            }
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            Log.printWarning("Can't determine the references of the blobs: " + e.getMessage());
+            return 0;
+        }
+
+        for (Path blob : unreferenced) {
+            Files.deleteIfExists(blob);
+        }
+        return unreferenced.size();
+    }
+
+    /**
+     * Adds the given file to the store unless it refers to a blob already.
+     *
+     * @param file The file to be stored.
+     * @return Returns the blob the file refers to.
+     * @throws IOException If the file can't be stored.
+     */
+    private Path store(Path file) throws IOException {
+
+        Path blob = blobs.get(file);
+        if (blob != null && Files.exists(blob) && Files.isSameFile(file, blob)) {
+            return blob;
+        }
+
+        final String hash = hash(file);
+        blob = blobsDir.resolve(hash.substring(0, 2)).resolve(hash);
+
+        if (!Files.exists(blob)) {
+            // the file becomes the blob itself
+            Files.createDirectories(blob.getParent());
+            Files.createLink(blob, file);
+        } else if (!Files.isSameFile(file, blob)) {
+            // the content is stored already, thus the file is replaced by a link to the blob
+            Path link = blobsDir.resolve(hash + ".link");
+            Files.deleteIfExists(link);
+            Files.createLink(link, blob);
+            Files.move(link, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        blobs.put(file, blob);
+        return blob;
+    }
+
+    /**
+     * Computes the SHA-256 hash of the given file.
+     *
+     * @param file The file.
+     * @return Returns the hash as hex string.
+     * @throws IOException If the file can't be read.
+     */
+    private static String hash(Path file) throws IOException {
+
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported!", e);
+        }
+
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
@@ -1,6 +1,7 @@
 package org.mate.io;
 
 import org.mate.pdf.Report;
+import org.mate.traces.TraceStore;
 import org.mate.util.AndroidEnvironment;
 import org.mate.util.Log;
 import org.mate.util.Result;
@@ -43,6 +44,14 @@ public class Device {
     // defines where the apps, in particular the APKs are located
     public static Path appsDir;
 
+    // whether the raw traces streamed from the emulator are archived as text files
+    public static boolean archiveTraces;
+
+    /**
+     * The directory in the app directory that contains the archived raw traces.
+     */
+    private static final String TRACES_ARCHIVE_DIR = "traces-archive";
+
     /**
      * The files that can be generated by the tracer.
      */
@@ -660,7 +669,8 @@ public class Device {
     }
 
     /**
-     * Pulls the traces.txt file from the external storage (sd card) if present.
+     * Pulls the traces.txt file from the external storage (sd card) if present. The traces are streamed into the trace
+     * store of the app and the raw traces.txt file is only kept if {@link #archiveTraces} is set.
      *
      * @param chromosome Identifies either a test case or test suite.
      * @param entity If chromosome identifies a test suite, entity identifies the test case, otherwise {@code null}.
@@ -734,17 +744,16 @@ public class Device {
 
         Log.println("Traces File: " + tracesFile);
 
-        var pullOperation = ProcessRunner.runProcess(androidEnvironment.getAdbExecutable(),
-                "-s", deviceID, "pull", EXTERNAL_STORAGE + "/traces.txt", String.valueOf(tracesFile));
+        // the raw traces are only kept if requested, e.g. apps/com.zola.bmi/traces-archive/chromosome/entity
+        final Path archiveFile = archiveTraces ? appDir.toPath().resolve(TRACES_ARCHIVE_DIR)
+                .resolve(baseTracesDir.toPath().relativize(tracesFile.toPath())) : null;
 
-        var pullError = pullOperation.isErr()
-                || (pullOperation.getOk().stream().anyMatch(s -> s.contains("adb"))
-                && pullOperation.getOk().stream().anyMatch(s -> s.contains("error")));
+        var streamOperation = streamTraceFile(appDir, tracesFile, archiveFile);
 
-        if (pullError) {
+        if (streamOperation.isErr()) {
 
-            Log.println("Couldn't pull traces.txt from emulator: " + pullOperation);
-            Log.println("Re-try pulling traces.txt from emulator...");
+            Log.println("Couldn't stream traces.txt from emulator: " + streamOperation.getErr());
+            Log.println("Re-try streaming traces.txt from emulator...");
             Util.sleep(3);
 
             Log.println("Old Files: " + files);
@@ -755,36 +764,27 @@ public class Device {
 
             Log.println("New Files: " + files);
 
-            pullOperation = ProcessRunner.runProcess(androidEnvironment.getAdbExecutable(),
-                    "-s", deviceID, "pull", EXTERNAL_STORAGE + "/traces.txt", String.valueOf(tracesFile));
+            streamOperation = streamTraceFile(appDir, tracesFile, archiveFile);
 
-            pullError = pullOperation.isErr()
-                    || (pullOperation.getOk().stream().anyMatch(s -> s.contains("adb"))
-                    && pullOperation.getOk().stream().anyMatch(s -> s.contains("error")));
-
-            if (pullError) {
-                throw new IllegalStateException("Couldn't pull traces.txt from emulator: " + pullOperation);
-            } else {
-                Log.println("Pull Operation: " + pullOperation.getOk());
+            if (streamOperation.isErr()) {
+                throw new IllegalStateException("Couldn't stream traces.txt from emulator: "
+                        + streamOperation.getErr());
             }
-        } else {
-            Log.println("Pull Operation: " + pullOperation.getOk());
         }
 
         // We successfully pulled the traces, no need to pull them again if the same request is sent again.
         coveredTestCases.add(testCase);
+        TraceStore.forApp(appDir).register(tracesFile.toPath());
 
         // check whether there is a mismatch between info.txt and traces.txt
-        try {
-            long numberOfLines = Files.lines(tracesFile.toPath()).count();
-            Log.println("Number of traces according to traces.txt: " + numberOfLines);
+        int numberOfLines = streamOperation.getOk();
+        Log.println("Number of traces according to traces.txt: " + numberOfLines);
 
+        try {
             if (!content.getOk().isEmpty()) {
                 int numberOfTraces = Integer.parseInt(content.getOk().get(0).trim());
                 Log.println("Number of traces according to info.txt: " + numberOfTraces);
             }
-        } catch (IOException e) {
-            Log.println("Couldn't count lines in traces.txt:", e);
         } catch (NumberFormatException e) {
             // in very rare cases, the info.txt seems to be corrupted
             Log.println("Couldn't read number of traces from info.txt:", e);
@@ -821,6 +821,70 @@ public class Device {
         }
     }
 
+    /**
+     * Streams the traces.txt file from the external storage (sd card) directly into the trace store of the app, i.e.
+     * the traces are converted into the binary format while they are received without writing them to a text file
+     * first. Since 'adb exec-out' neither reports the exit code of the command nor separates its error output, e.g.
+     * 'Permission denied', the number of received bytes is compared with the size of the traces.txt file reported by
+     * 'stat'. The traces file is only written if the traces have been received completely, otherwise the archived raw
+     * traces are removed again.
+     *
+     * @param appDir The app directory.
+     * @param tracesFile The traces file to be written.
+     * @param archiveFile The file the raw traces are archived to or {@code null} if they shouldn't be archived.
+     * @return Returns the number of received traces or the error message if streaming failed.
+     */
+    private Result<Integer, String> streamTraceFile(File appDir, File tracesFile, Path archiveFile) {
+
+        final String remoteFile = EXTERNAL_STORAGE + "/traces.txt";
+
+        var sizeOperation = ProcessRunner.runProcess(androidEnvironment.getAdbExecutable(), "-s", deviceID,
+                "shell", "stat", "-c", "%s", remoteFile);
+
+        if (sizeOperation.isErr()) {
+            return Result.errOf("Couldn't determine size of traces.txt: " + sizeOperation.getErr());
+        }
+
+        final long expectedBytes;
+        try {
+            expectedBytes = Long.parseLong(sizeOperation.getOk().get(0).trim());
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            return Result.errOf("Couldn't determine size of traces.txt: " + sizeOperation.getOk());
+        }
+
+        var streamOperation = ProcessRunner.streamProcess(
+                in -> TraceStore.forApp(appDir).receive(in, archiveFile),
+                androidEnvironment.getAdbExecutable(), "-s", deviceID, "exec-out", "cat", remoteFile);
+
+        Result<Integer, String> result;
+
+        if (streamOperation.isErr()) {
+            result = Result.errOf(streamOperation.getErr());
+        } else if (streamOperation.getOk().getBytes() != expectedBytes) {
+            result = Result.errOf("Received " + streamOperation.getOk().getBytes() + " bytes, but traces.txt has "
+                    + expectedBytes + " bytes!");
+        } else {
+            try {
+                streamOperation.getOk().store(tracesFile.toPath());
+                result = Result.okOf(streamOperation.getOk().getLines());
+            } catch (UncheckedIOException e) {
+                result = Result.errOf(e.getMessage());
+            }
+        }
+
+        if (result.isErr()) {
+            try {
+                Files.deleteIfExists(tracesFile.toPath());
+                if (archiveFile != null) {
+                    Files.deleteIfExists(archiveFile);
+                }
+            } catch (IOException e) {
+                Log.printWarning("Couldn't remove incomplete traces file " + tracesFile + ": " + e.getMessage());
+            }
+        }
+        return result;
+    }
+
     /**
      * Returns the name of the currently visible activity or
      * 'unknown' if the activity name couldn't be extracted.
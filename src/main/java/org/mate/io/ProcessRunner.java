@@ -5,9 +5,11 @@ import org.mate.util.Result;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class ProcessRunner {
@@ -59,6 +61,8 @@ public class ProcessRunner {
             }
             List<String> output = null;
             if (outputFile != null) {
+                // replace rather than overwrite the file, it might share its content with other files (BlobStore)
+                Files.deleteIfExists(outputFile);
                 FileOutputStream fileOutputStream = new FileOutputStream(outputFile.toFile());
                 p.getInputStream().transferTo(fileOutputStream);
                 fileOutputStream.close();
@@ -93,4 +97,47 @@ public class ProcessRunner {
     public static Result<List<String>, String> runProcess(Path outputFile, String input, String... cmd) {
         return runProcess(outputFile, input, List.of(cmd));
     }
+
+    /**
+     * Executes cmd and passes its output as stream to the given consumer, e.g. to process a large output without
+     * buffering it in memory or writing it to a file first. In contrast to the other variants, the error output of the
+     * cmd is not mixed into the output.
+     * @param consumer consumes the output of the cmd, may throw an unchecked exception to signal a failure
+     * @param cmd cmd to be executed
+     * @return If successful an Ok result holding the value returned by the consumer. Err result with the error message
+     * (including the error output of the cmd) as a single String in case of an error or a non-zero exit code.
+     */
+    public static <T> Result<T, String> streamProcess(Function<InputStream, T> consumer, String... cmd) {
+        ProcessBuilder pb = new ProcessBuilder(cmd);
+        Process p = null;
+        try {
+            p = pb.start();
+            T result;
+            try (InputStream output = p.getInputStream()) {
+                result = consumer.apply(output);
+            }
+            // the error output is expected to be small, thus it is read after the output has been consumed
+            String error = new String(p.getErrorStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+            if (!p.waitFor(PROCESS_TIMEOUT, TimeUnit.SECONDS)) {
+                var errMsg = "execution timeout for cmd " + List.of(cmd) + " reached (" + PROCESS_TIMEOUT + " seconds)";
+                Log.printError(errMsg);
+                return Result.errOf(errMsg);
+            }
+            if (p.exitValue() != 0) {
+                var errMsg = "cmd " + List.of(cmd) + " exited with code " + p.exitValue() + ": " + error;
+                Log.printError(errMsg);
+                return Result.errOf(errMsg);
+            }
+            return Result.okOf(result);
+        } catch (Exception e) {
+            var errMsg = "unable to execute cmd " + List.of(cmd) + " or consume its output: " + e.getMessage()
+                    + "\n" + e.fillInStackTrace();
+            Log.printError(errMsg);
+            return Result.errOf(errMsg);
+        } finally {
+            if (p != null && p.isAlive()) {
+                p.destroyForcibly();
+            }
+        }
+    }
 }
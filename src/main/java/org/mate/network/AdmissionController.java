@@ -0,0 +1,215 @@
+package org.mate.network;
+
+import org.mate.network.message.Message;
+import org.mate.network.message.Messages;
+import org.mate.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Limits the number of expensive requests that are executed concurrently, e.g. the construction of a graph or the
+ * evaluation of JaCoCo coverage. The requests are grouped into admission classes by their subject. Each class admits
+ * a limited number of concurrent requests, while further requests wait in a bounded queue for a limited time. If the
+ * queue is full or the waiting time elapsed, the request is rejected with a 'busy' error message telling the client
+ * when to retry, see {@link Messages#busyMessage(String, long)}.
+ *
+ * The admission classes are configured in the mate-server.properties file as follows:
+ *
+ * <pre>
+ * admission.&lt;class&gt;.enabled=&lt;true or false&gt;
+ * admission.&lt;class&gt;.subjects=&lt;comma separated subjects&gt;
+ * admission.&lt;class&gt;.concurrency=&lt;max concurrent requests&gt;
+ * admission.&lt;class&gt;.queue=&lt;max waiting requests&gt;
+ * admission.&lt;class&gt;.timeout=&lt;max waiting time in seconds&gt;
+ * admission.&lt;class&gt;.retry_after=&lt;suggested retry delay in seconds&gt;
+ * </pre>
+ *
+ * Admission control is disabled by default, since existing clients treat a 'busy' error message as fatal. A class
+ * is only enabled if at least one of its properties is specified, e.g. {@code admission.graph.enabled=true} enables
+ * a predefined class with its defaults. Properties that are not specified fall back to the defaults of the respective
+ * class, see {@link #DEFAULTS}. A subject matches the requests with that subject and its sub-paths, e.g. '/graph' matches '/graph/init', but
+ * '/coverage/get' doesn't match '/coverage/getSourceLines'.
+ */
+public class AdmissionController {
+
+    private static final String PROPERTY_PREFIX = "admission.";
+
+    /**
+     * The defaults of the predefined admission classes, which only apply once a class is enabled.
+     */
+    private static final Map<String, Map<String, String>> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("graph", Map.of("subjects", "/graph/init",
+                "concurrency", "1", "queue", "4", "timeout", "600", "retry_after", "30"));
+        DEFAULTS.put("coverage", Map.of("subjects", "/coverage/get,/coverage/combined,/coverage/lineCoveredPercentages",
+                "concurrency", String.valueOf(Runtime.getRuntime().availableProcessors()),
+                "queue", "64", "timeout", "300", "retry_after", "5"));
+        DEFAULTS.put("flickering", Map.of("subjects", "/accessibility/check_flickering",
+                "concurrency", "2", "queue", "8", "timeout", "120", "retry_after", "10"));
+    }
+
+    /**
+     * The admission classes, the first class with a matching subject applies.
+     */
+    private final List<AdmissionClass> classes;
+
+    private AdmissionController(List<AdmissionClass> classes) {
+        this.classes = Collections.unmodifiableList(classes);
+    }
+
+    /**
+     * Creates the admission controller from the given properties. Only the classes for which properties are specified
+     * are enabled, the unspecified properties of the predefined classes fall back to their defaults.
+     *
+     * @param properties The server properties.
+     * @return Returns the configured admission controller.
+     */
+    public static AdmissionController fromProperties(Properties properties) {
+
+        Map<String, Map<String, String>> configuration = new LinkedHashMap<>();
+
+        for (String property : properties.stringPropertyNames()) {
+            if (property.startsWith(PROPERTY_PREFIX)) {
+                String[] tokens = property.substring(PROPERTY_PREFIX.length()).split("\\.", 2);
+                if (tokens.length != 2) {
+                    throw new IllegalArgumentException("Malformed admission property: " + property);
+                }
+                configuration.computeIfAbsent(tokens[0],
+                                name -> new LinkedHashMap<>(DEFAULTS.getOrDefault(name, Map.of())))
+                        .put(tokens[1], properties.getProperty(property));
+            }
+        }
+
+        List<AdmissionClass> classes = new ArrayList<>();
+        configuration.forEach((name, settings) -> {
+            if (Boolean.parseBoolean(settings.getOrDefault("enabled", "true"))) {
+                classes.add(new AdmissionClass(name, settings));
+            }
+        });
+        return new AdmissionController(classes);
+    }
+
+    /**
+     * Executes the given handler once the request with the given subject is admitted.
+     *
+     * @param subject The subject of the request.
+     * @param handler Handles the request.
+     * @return Returns the response of the handler or a 'busy' error message if the request has been rejected.
+     */
+    public Message admit(String subject, Supplier<Message> handler) {
+
+        AdmissionClass admissionClass = resolve(subject);
+        if (admissionClass == null) {
+            return handler.get();
+        }
+
+        if (!admissionClass.acquire()) {
+            Log.printWarning("Rejecting request " + subject + ", admission class '" + admissionClass.name
+                    + "' is saturated!");
+            return Messages.busyMessage(subject, admissionClass.retryAfter);
+        }
+
+        try {
+            return handler.get();
+        } finally {
+            admissionClass.permits.release();
+        }
+    }
+
+    /**
+     * Resolves the admission class of the given subject.
+     *
+     * @param subject The subject of the request.
+     * @return Returns the admission class or {@code null} if the subject is not restricted.
+     */
+    private AdmissionClass resolve(String subject) {
+        for (AdmissionClass admissionClass : classes) {
+            for (String restricted : admissionClass.subjects) {
+                if (matches(subject, restricted)) {
+                    return admissionClass;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether the given subject is the restricted subject or one of its sub-paths.
+     *
+     * @param subject The subject of the request.
+     * @param restricted The subject of an admission class.
+     * @return Returns {@code true} if the subject matches, otherwise {@code false}.
+     */
+    private static boolean matches(String subject, String restricted) {
+        return subject.startsWith(restricted) && (subject.length() == restricted.length()
+                || restricted.endsWith("/") || subject.charAt(restricted.length()) == '/');
+    }
+
+    /**
+     * A group of requests sharing a concurrency limit.
+     */
+    private static final class AdmissionClass {
+
+        private final String name;
+        private final List<String> subjects = new ArrayList<>();
+        private final Semaphore permits;
+        private final int queue;
+        private final long timeout;
+        private final long retryAfter;
+
+        /**
+         * The number of requests waiting for a permit.
+         */
+        private final AtomicInteger waiting = new AtomicInteger(0);
+
+        private AdmissionClass(String name, Map<String, String> settings) {
+            this.name = name;
+            for (String subject : Optional.ofNullable(settings.get("subjects")).orElse("").split(",")) {
+                if (!subject.isBlank()) {
+                    subjects.add(subject.trim());
+                }
+            }
+            permits = new Semaphore(Integer.parseInt(settings.getOrDefault("concurrency", "1")), true);
+            queue = Integer.parseInt(settings.getOrDefault("queue", "0"));
+            timeout = Long.parseLong(settings.getOrDefault("timeout", "60"));
+            retryAfter = Long.parseLong(settings.getOrDefault("retry_after", "10"));
+        }
+
+        /**
+         * Tries to acquire a permit, waiting in the queue if necessary.
+         *
+         * @return Returns {@code true} if a permit has been acquired, otherwise {@code false}.
+         */
+        private boolean acquire() {
+
+            if (permits.tryAcquire()) {
+                return true;
+            }
+
+            if (waiting.incrementAndGet() > queue) {
+                waiting.decrementAndGet();
+                return false;
+            }
+
+            try {
+                return permits.tryAcquire(timeout, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                waiting.decrementAndGet();
+            }
+        }
+    }
+}
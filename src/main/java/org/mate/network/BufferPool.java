@@ -0,0 +1,78 @@
+package org.mate.network;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of direct byte buffers used for reading from and writing to the connections. Allocating direct buffers is
+ * expensive, thus the buffers are recycled once a connection is closed.
+ */
+public final class BufferPool {
+
+    /**
+     * The capacity of a single buffer.
+     */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The maximal number of idle buffers kept in the pool.
+     */
+    private static final int MAX_POOLED_BUFFERS = 64;
+
+    /**
+     * The idle buffers.
+     */
+    private static final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The number of idle buffers, tracked separately since {@link ConcurrentLinkedQueue#size()} is not constant-time.
+     */
+    private static final AtomicInteger pooledBuffers = new AtomicInteger(0);
+
+    private BufferPool() {
+        throw new UnsupportedOperationException("Cannot instantiate utility class!");
+    }
+
+    /**
+     * Retrieves a cleared buffer from the pool or allocates a new one if the pool is empty.
+     *
+     * @return Returns a cleared direct buffer of size {@link #BUFFER_SIZE}.
+     */
+    public static ByteBuffer acquire() {
+        final ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        pooledBuffers.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns the number of idle buffers in the pool.
+     *
+     * @return Returns the number of idle buffers.
+     */
+    public static int pooledBuffers() {
+        return pooledBuffers.get();
+    }
+
+    /**
+     * Returns the given buffer to the pool. The buffer must not be used by the caller afterwards.
+     *
+     * @param buffer The buffer that is no longer needed.
+     */
+    public static void release(final ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || buffer.capacity() != BUFFER_SIZE) {
+            return;
+        }
+        if (pooledBuffers.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+            buffers.add(buffer);
+        } else {
+            // the pool is full, let the garbage collector free the buffer
+            pooledBuffers.decrementAndGet();
+        }
+    }
+}
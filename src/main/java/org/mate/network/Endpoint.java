@@ -2,6 +2,49 @@ package org.mate.network;
 
 import org.mate.network.message.Message;
 
+import java.util.Collections;
+import java.util.Map;
+
 public interface Endpoint {
     Message handle(Message request);
+
+    /**
+     * Returns the handlers of this endpoint keyed by the full subject they are responsible for. The {@link Router}
+     * dispatches a request whose subject matches one of these routes directly to the respective handler, otherwise the
+     * request is passed to {@link #handle(Message)}.
+     *
+     * @return Returns the handlers keyed by subject.
+     */
+    default Map<String, Endpoint> routes() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Invoked once the server has been drained, i.e. no request is handled anymore, before the process exits. Endpoints
+     * holding state that should survive a restart of the server, e.g. caches, persist it here.
+     */
+    default void drain() {
+    }
+
+    /**
+     * Resolves the handler for the given subject among the given routes. If no route matches the subject exactly, the
+     * longest route being a prefix of the subject is chosen.
+     *
+     * @param routes The handlers keyed by subject.
+     * @param subject The subject of the request.
+     * @return Returns the matching handler or {@code null} if none matches.
+     */
+    static Endpoint resolve(Map<String, Endpoint> routes, String subject) {
+        Endpoint handler = routes.get(subject);
+        if (handler == null) {
+            String longestMatch = null;
+            for (String route : routes.keySet()) {
+                if (subject.startsWith(route) && (longestMatch == null || route.length() > longestMatch.length())) {
+                    longestMatch = route;
+                }
+            }
+            handler = longestMatch == null ? null : routes.get(longestMatch);
+        }
+        return handler;
+    }
 }
@@ -1,31 +1,116 @@
 package org.mate.network;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
+/**
+ * Maps the subject of a request to the responsible endpoint. Subjects that are registered as a route of an endpoint,
+ * see {@link Endpoint#routes()}, are resolved by a single hash lookup. Any other subject is resolved to the endpoint
+ * registered for the longest matching path prefix, where paths are compared segment-wise (separated by '/') in a trie.
+ */
 public class Router {
-    private final TreeMap<String, Endpoint> routes;
+
+    private static final char SEPARATOR = '/';
+
+    /**
+     * The handlers keyed by the full subject.
+     */
+    private final Map<String, Endpoint> handlers;
+
+    /**
+     * The root of the trie over the path segments of the registered endpoints.
+     */
+    private final Node root;
+
+    /**
+     * The registered endpoints in order of registration.
+     */
+    private final List<Endpoint> endpoints;
 
     public Router() {
-        routes = new TreeMap<>((s1, s2) -> {
-            int compare = Integer.compare(s2.length(), s1.length());
-            if (compare == 0) {
-                return s1.compareTo(s2);
-            }
-            return compare;
-        });
+        handlers = new HashMap<>();
+        root = new Node();
+        endpoints = new ArrayList<>();
     }
 
+    /**
+     * Registers the given endpoint for all subjects starting with the given path as well as for its routes.
+     *
+     * @param path The path of the endpoint, e.g. '/graph'.
+     * @param endpoint The endpoint.
+     */
     public void add(String path, Endpoint endpoint) {
-        routes.put(path, endpoint);
+        Node node = root;
+        int start = 0;
+        while (start < path.length()) {
+            int end = nextSeparator(path, start);
+            String segment = path.substring(start, end);
+            node = node.children.computeIfAbsent(segment, s -> new Node());
+            start = end + 1;
+        }
+        node.endpoint = endpoint;
+        handlers.putAll(endpoint.routes());
+        endpoints.add(endpoint);
+    }
+
+    /**
+     * Returns the registered endpoints.
+     *
+     * @return Returns the registered endpoints in order of registration.
+     */
+    public List<Endpoint> getEndpoints() {
+        return Collections.unmodifiableList(endpoints);
     }
 
+    /**
+     * Resolves the handler responsible for the given subject.
+     *
+     * @param path The subject of the request.
+     * @return Returns the responsible handler or {@code null} if no endpoint is registered for the subject.
+     */
     public Endpoint resolve(String path) {
-        for (Map.Entry<String, Endpoint> route : routes.entrySet()) {
-            if (path.startsWith(route.getKey())) {
-                return route.getValue();
+        Endpoint handler = handlers.get(path);
+        if (handler != null) {
+            return handler;
+        }
+
+        Node node = root;
+        Endpoint match = root.endpoint;
+        int start = 0;
+        while (start < path.length()) {
+            int end = nextSeparator(path, start);
+            node = node.children.get(path.substring(start, end));
+            if (node == null) {
+                break;
             }
+            if (node.endpoint != null) {
+                match = node.endpoint;
+            }
+            start = end + 1;
         }
-        return null;
+        return match;
+    }
+
+    /**
+     * Finds the end of the segment starting at the given index.
+     *
+     * @param path The path.
+     * @param start The start index of the segment.
+     * @return Returns the index of the next separator or the length of the path.
+     */
+    private static int nextSeparator(String path, int start) {
+        int end = path.indexOf(SEPARATOR, start);
+        return end == -1 ? path.length() : end;
+    }
+
+    /**
+     * A node in the trie of path segments.
+     */
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private Endpoint endpoint;
     }
 }
@@ -0,0 +1,651 @@
+package org.mate.network;
+
+import org.mate.network.message.Message;
+import org.mate.network.message.Messages;
+import org.mate.network.message.serialization.MessageDecoder;
+import org.mate.network.message.serialization.MessageWriter;
+import org.mate.network.metrics.RequestMetrics;
+import org.mate.util.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A non-blocking connection engine that serves all clients from a single selector thread. Incoming bytes are decoded
+ * into complete messages, which in turn are handed to a bounded executor of workers. In contrast to the blocking
+ * mode of the {@link org.mate.Server}, an idle client doesn't occupy a thread.
+ *
+ * Requests of a single connection without a correlation id are processed strictly in order, i.e. such a request is
+ * only dispatched once the responses to all previous requests have been queued for writing. Pipelined requests, see
+ * {@link Messages#isPipelined(Message)}, are dispatched immediately and answered in order of completion.
+ */
+public class SelectorServer implements Closeable {
+
+    /**
+     * The maximal number of chunks of a connection that may wait for being written to the socket. A worker streaming
+     * a response blocks once this limit is reached, thus the memory occupied by a response is bounded independent of
+     * its size.
+     */
+    private static final int MAX_PENDING_CHUNKS = 4;
+
+    /**
+     * The port to listen on, {@code 0} assigns a random port.
+     */
+    private final int port;
+
+    /**
+     * The path of the unix domain socket to listen on additionally, {@code null} if disabled.
+     */
+    private final Path unixSocketPath;
+
+    /**
+     * Handles a single (complete) request and produces the response.
+     */
+    private final Endpoint dispatcher;
+
+    /**
+     * Checks whether the request that has been just handled on the current thread asked for closing the connection.
+     */
+    private final BooleanSupplier closeRequested;
+
+    /**
+     * Records the number of received and sent bytes per subject.
+     */
+    private final RequestMetrics metrics;
+
+    /**
+     * The bounded executor of the requests, which rejects requests once it is saturated.
+     */
+    private final ExecutorService workers;
+
+    /**
+     * Operations that need to be executed on the selector thread, e.g. queueing a response written by a worker.
+     */
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private ServerSocketChannel unixChannel;
+
+    /**
+     * The number of open client connections, guarded by the lock {@link #connectionsLock}.
+     */
+    private int openConnections = 0;
+    private final Object connectionsLock = new Object();
+
+    /**
+     * Creates a new selector based connection engine.
+     *
+     * @param port The port to listen on, {@code 0} assigns a random port.
+     * @param unixSocketPath The path of the unix domain socket to listen on additionally, {@code null} if disabled.
+     * @param workers The bounded executor of the requests, see {@link org.mate.util.Threads#newWorkerExecutor(String,
+     *         int, int, boolean)}.
+     * @param dispatcher Handles a single request and produces the response.
+     * @param closeRequested Checks on the worker thread whether the handled request asked for closing the connection.
+     * @param metrics Records the number of received and sent bytes per subject.
+     */
+    public SelectorServer(final int port, final Path unixSocketPath, final ExecutorService workers,
+                          final Endpoint dispatcher, final BooleanSupplier closeRequested,
+                          final RequestMetrics metrics) {
+        this.port = port;
+        this.unixSocketPath = unixSocketPath;
+        this.metrics = metrics;
+        this.dispatcher = dispatcher;
+        this.closeRequested = closeRequested;
+        this.workers = workers;
+    }
+
+    /**
+     * Opens the server socket channels and the selector.
+     *
+     * @return Returns the local port the server is listening on.
+     * @throws IOException If the port or the unix domain socket can't be bound.
+     */
+    public int bind() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        // allows a restarted server to bind the port while connections of the previous server are in TIME_WAIT
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        if (unixSocketPath != null) {
+            // a stale socket file of a previous run prevents binding
+            Files.deleteIfExists(unixSocketPath);
+            unixChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            unixChannel.bind(UnixDomainSocketAddress.of(unixSocketPath));
+            unixChannel.configureBlocking(false);
+            unixChannel.register(selector, SelectionKey.OP_ACCEPT);
+            Log.println("listening on unix domain socket " + unixSocketPath);
+        }
+
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Runs the selector loop until the server is closed.
+     *
+     * @throws IOException If the selector fails.
+     */
+    public void serve() throws IOException {
+
+        Log.println("waiting for connection");
+
+        while (selector.isOpen()) {
+
+            selector.select();
+
+            Runnable task;
+            while ((task = selectorTasks.poll()) != null) {
+                task.run();
+            }
+
+            if (!selector.isOpen()) {
+                break;
+            }
+
+            final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                final SelectionKey key = keys.next();
+                keys.remove();
+
+                if (!key.isValid()) {
+                    continue;
+                }
+
+                try {
+                    if (key.isAcceptable()) {
+                        accept((ServerSocketChannel) key.channel());
+                    } else {
+                        final Connection connection = (Connection) key.attachment();
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.write();
+                        }
+                    }
+                } catch (IOException | CancelledKeyException e) {
+                    /*
+                     * If we encounter an IOException the socket is broken. We close the connection, which in turn
+                     * should lead to an IOException/EOF on MATE's side and the request is sent again on a new socket.
+                     */
+                    Log.println("IOException during handling request:" + e);
+                    if (key.attachment() != null) {
+                        ((Connection) key.attachment()).close();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Accepts a new client connection and registers it for reading.
+     *
+     * @param server The server socket channel, either the TCP or the unix domain socket.
+     * @throws IOException If accepting the connection fails.
+     */
+    private void accept(final ServerSocketChannel server) throws IOException {
+        final SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        Log.println("accepted connection");
+        channel.configureBlocking(false);
+        final SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(channel, key));
+        synchronized (connectionsLock) {
+            openConnections++;
+        }
+    }
+
+    /**
+     * Stops accepting new connections and closes the open connections as soon as their pending responses have been
+     * written. Requests that have been received but not yet dispatched are dropped, the client re-sends them on a new
+     * connection.
+     */
+    public void drain() {
+        runOnSelector(() -> {
+            try {
+                serverChannel.close();
+                if (unixChannel != null) {
+                    unixChannel.close();
+                    Files.deleteIfExists(unixSocketPath);
+                }
+            } catch (IOException e) {
+                Log.println("Closing the server socket failed: " + e);
+            }
+            for (final SelectionKey key : selector.keys()) {
+                if (key.attachment() != null) {
+                    ((Connection) key.attachment()).drain();
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits until all client connections have been closed, e.g. after {@link #drain()} has been invoked.
+     *
+     * @param timeout The maximal time to wait.
+     * @param unit The unit of the timeout.
+     * @return Returns {@code true} if all connections have been closed, otherwise {@code false}.
+     * @throws InterruptedException If the current thread has been interrupted while waiting.
+     */
+    public boolean awaitConnectionsClosed(final long timeout, final TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (connectionsLock) {
+            while (openConnections > 0) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(connectionsLock, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Executes the given operation on the selector thread and wakes up the selector.
+     *
+     * @param task The operation to be executed.
+     */
+    private void runOnSelector(final Runnable task) {
+        selectorTasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Closes the server socket and the selector and stops the worker threads.
+     */
+    @Override
+    public void close() {
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+            if (unixChannel != null) {
+                unixChannel.close();
+                Files.deleteIfExists(unixSocketPath);
+            }
+            if (selector != null && selector.isOpen()) {
+                for (final SelectionKey key : selector.keys()) {
+                    key.channel().close();
+                }
+                selector.close();
+            }
+        } catch (IOException e) {
+            Log.println("Closing the selector server failed: " + e);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * The state of a single client connection. Apart from {@link #dispatch(Message)} and {@link #stream(Message,
+     * boolean)}, which run on a worker thread, all methods are only invoked on the selector thread.
+     */
+    private final class Connection {
+
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ByteBuffer readBuffer = BufferPool.acquire();
+        private final MessageDecoder decoder = new MessageDecoder();
+
+        /**
+         * Completely received requests that wait for the previous request of this connection to finish.
+         */
+        private final Deque<Message> pendingRequests = new ArrayDeque<>();
+
+        /**
+         * The chunks of the serialized responses that still need to be written to the socket. The chunks are taken
+         * from the {@link BufferPool} and returned once they have been written.
+         */
+        private final Deque<ByteBuffer> pendingResponses = new ArrayDeque<>();
+
+        /**
+         * The number of chunks that have been handed to the selector thread but not yet written, guarded by the lock
+         * {@link #chunksLock}. Bounded by {@link #MAX_PENDING_CHUNKS} for streamed responses.
+         */
+        private int queuedChunks = 0;
+        private final Object chunksLock = new Object();
+
+        /**
+         * Ensures that the chunks of concurrently completed (pipelined) responses are not interleaved, i.e. only a
+         * single worker streams a response at a time.
+         */
+        private final ReentrantLock streamLock = new ReentrantLock();
+
+        /**
+         * Whether a worker is currently streaming a response.
+         */
+        private boolean streaming = false;
+
+        /**
+         * Responses produced on the selector thread while a response is streamed, which are queued once the streamed
+         * response is complete.
+         */
+        private final List<ByteBuffer> deferredResponses = new ArrayList<>();
+
+        /**
+         * Whether the connection has been closed, which aborts a streamed response.
+         */
+        private volatile boolean closed = false;
+
+        /**
+         * The number of requests of this connection that are currently processed by a worker.
+         */
+        private int inFlight = 0;
+
+        /**
+         * Whether a request without a correlation id is currently processed, which blocks all subsequent requests.
+         */
+        private boolean sequentialInFlight = false;
+
+        /**
+         * Whether the connection should be closed once all pending responses have been written.
+         */
+        private boolean closeAfterWrite = false;
+
+        private Connection(final SocketChannel channel, final SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        /**
+         * Reads the available bytes and dispatches the next complete request if possible.
+         *
+         * @throws IOException If reading from the socket fails.
+         */
+        private void read() throws IOException {
+            final int read = channel.read(readBuffer);
+            if (read == -1) {
+                if (decoder.hasPartialMessage()) {
+                    Log.println("Lexing value failed: unexpected EOF");
+                }
+                close();
+                return;
+            }
+            readBuffer.flip();
+            try {
+                Message request;
+                while ((request = decoder.decode(readBuffer)) != null) {
+                    metrics.recordBytesIn(request.getSubject(), decoder.getLastMessageSize());
+                    pendingRequests.add(request);
+                }
+            } catch (IllegalStateException e) {
+                Log.println("Parsing request failed: " + e.getMessage());
+                close();
+                return;
+            } finally {
+                readBuffer.clear();
+            }
+            dispatchNext();
+        }
+
+        /**
+         * Hands the pending requests to the workers as far as the ordering constraints allow.
+         */
+        private void dispatchNext() {
+            while (!sequentialInFlight && !closeAfterWrite && !pendingRequests.isEmpty()) {
+
+                final boolean pipelined = Messages.isPipelined(pendingRequests.peek());
+                if (!pipelined && inFlight > 0) {
+                    // wait for the pipelined requests to complete
+                    return;
+                }
+
+                final Message request = pendingRequests.poll();
+
+                try {
+                    workers.execute(() -> dispatch(request));
+                    inFlight++;
+                    sequentialInFlight = !pipelined;
+                } catch (RejectedExecutionException e) {
+                    Log.printWarning("Worker queue is full, rejecting request!");
+                    final Message response = Messages.errorMessage("MATE-Server is overloaded, all workers are busy.");
+                    Messages.correlate(request, response);
+                    Messages.addMetadata(response);
+                    if (streaming) {
+                        deferredResponses.addAll(serialize(response));
+                    } else {
+                        enqueueUnbounded(serialize(response));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Handles the given request on a worker thread.
+         *
+         * @param request The decoded request.
+         */
+        private void dispatch(final Message request) {
+            try {
+                final Message response = dispatcher.handle(request);
+                final boolean close = closeRequested.getAsBoolean();
+                metrics.recordBytesOut(request.getSubject(), stream(response, close));
+            } catch (final Throwable e) {
+                Log.println("Unexpected exception: " + e);
+                runOnSelector(this::close);
+            }
+        }
+
+        /**
+         * Streams the given response to the selector thread chunk by chunk while it is serialized. Once
+         * {@link #MAX_PENDING_CHUNKS} chunks wait for being written, the worker blocks until the socket accepts more
+         * bytes. Thus, a large response is never held in memory entirely.
+         *
+         * @param response The response to be written.
+         * @param close Whether the connection should be closed after writing the response.
+         * @return Returns the size of the serialized response in bytes.
+         * @throws IOException If the connection has been closed or the worker has been interrupted while waiting.
+         */
+        private long stream(final Message response, final boolean close) throws IOException {
+            streamLock.lock();
+            try {
+                runOnSelector(() -> streaming = true);
+                final long size;
+                try (final MessageWriter writer = new MessageWriter(filled -> {
+                    awaitChunkCapacity(filled);
+                    runOnSelector(() -> enqueue(List.of(filled)));
+                    return BufferPool.acquire();
+                })) {
+                    size = writer.write(response);
+                }
+                runOnSelector(() -> complete(close));
+                return size;
+            } finally {
+                streamLock.unlock();
+            }
+        }
+
+        /**
+         * Waits until fewer than {@link #MAX_PENDING_CHUNKS} chunks wait for being written and reserves a slot for the
+         * given chunk.
+         *
+         * @param chunk The chunk to be queued, which is returned to the pool if the connection has been closed.
+         * @throws IOException If the connection has been closed or the worker has been interrupted while waiting.
+         */
+        private void awaitChunkCapacity(final ByteBuffer chunk) throws IOException {
+            synchronized (chunksLock) {
+                try {
+                    while (queuedChunks >= MAX_PENDING_CHUNKS && !closed) {
+                        chunksLock.wait();
+                    }
+                } catch (InterruptedException e) {
+                    BufferPool.release(chunk);
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while streaming response");
+                }
+                if (closed) {
+                    BufferPool.release(chunk);
+                    throw new IOException("Connection has been closed while streaming response");
+                }
+                queuedChunks++;
+            }
+        }
+
+        /**
+         * Serializes the given response into a sequence of pooled buffers. Only used for the small responses produced
+         * on the selector thread, which must not block.
+         *
+         * @param response The response to be serialized.
+         * @return Returns the chunks of the serialized response, each ready for reading.
+         */
+        private List<ByteBuffer> serialize(final Message response) {
+            final List<ByteBuffer> chunks = new ArrayList<>();
+            try (final MessageWriter writer = new MessageWriter(filled -> {
+                chunks.add(filled);
+                return BufferPool.acquire();
+            })) {
+                writer.write(response);
+            } catch (IOException e) {
+                // collecting the chunks never fails
+                throw new IllegalStateException("Serializing response failed", e);
+            }
+            return chunks;
+        }
+
+        /**
+         * Completes a processed request, whose response has been streamed entirely, and continues with the next
+         * requests.
+         *
+         * @param close Whether the connection should be closed after writing the response.
+         */
+        private void complete(final boolean close) {
+            inFlight--;
+            sequentialInFlight = false;
+            streaming = false;
+            closeAfterWrite |= close;
+            if (!deferredResponses.isEmpty()) {
+                enqueueUnbounded(deferredResponses);
+                deferredResponses.clear();
+            }
+            // the last chunk may have been already written before this request has been completed
+            if (closeAfterWrite && inFlight == 0 && pendingResponses.isEmpty()) {
+                close();
+                return;
+            }
+            dispatchNext();
+        }
+
+        /**
+         * Queues the given chunks produced on the selector thread for writing. Since the selector thread must not
+         * block, these chunks may exceed {@link #MAX_PENDING_CHUNKS}, which is fine for the small error responses.
+         *
+         * @param response The chunks of the serialized response.
+         */
+        private void enqueueUnbounded(final List<ByteBuffer> response) {
+            synchronized (chunksLock) {
+                queuedChunks += response.size();
+            }
+            enqueue(response);
+        }
+
+        /**
+         * Queues the given chunks for writing.
+         *
+         * @param response The chunks of the serialized response.
+         */
+        private void enqueue(final List<ByteBuffer> response) {
+            if (!channel.isOpen()) {
+                response.forEach(BufferPool::release);
+                return;
+            }
+            pendingResponses.addAll(response);
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+
+        /**
+         * Writes as much of the pending responses as the socket accepts.
+         *
+         * @throws IOException If writing to the socket fails.
+         */
+        private void write() throws IOException {
+            while (!pendingResponses.isEmpty()) {
+                final ByteBuffer response = pendingResponses.peek();
+                channel.write(response);
+                if (response.hasRemaining()) {
+                    return; // socket buffer is full, wait for the next write event
+                }
+                BufferPool.release(pendingResponses.poll());
+                synchronized (chunksLock) {
+                    queuedChunks--;
+                    chunksLock.notifyAll();
+                }
+            }
+
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+
+            // pipelined requests that are still processed are answered before closing the connection
+            if (closeAfterWrite && inFlight == 0) {
+                close();
+            }
+        }
+
+        /**
+         * Stops reading further requests and closes the connection once the pending responses have been written.
+         */
+        private void drain() {
+            if (!channel.isOpen()) {
+                return;
+            }
+            closeAfterWrite = true;
+            pendingRequests.clear();
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            if (inFlight == 0 && pendingResponses.isEmpty()) {
+                close();
+            }
+        }
+
+        /**
+         * Closes the connection.
+         */
+        private void close() {
+            if (!channel.isOpen()) {
+                return;
+            }
+            synchronized (connectionsLock) {
+                openConnections--;
+                connectionsLock.notifyAll();
+            }
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                Log.println("Closing connection failed: " + e);
+            }
+            BufferPool.release(readBuffer);
+            pendingResponses.forEach(BufferPool::release);
+            pendingResponses.clear();
+            deferredResponses.forEach(BufferPool::release);
+            deferredResponses.clear();
+            synchronized (chunksLock) {
+                // aborts a worker waiting for streaming further chunks
+                closed = true;
+                chunksLock.notifyAll();
+            }
+            Log.println("connection closed");
+        }
+    }
+}
@@ -1,19 +1,22 @@
 package org.mate.network.message;
 
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Objects;
 
 public class Message {
     private final String subject;
-    private final Map<String, String> parameters;
+    private final ParameterMap parameters;
+
+    // allocated once the first metadata is attached, most nested and internal messages don't carry any
+    private Map<String, String> metadata;
 
     public Message(String subject) {
         if (subject == null) {
             throw new IllegalArgumentException("Subject cannot be null");
         }
         this.subject = subject;
-        this.parameters = new HashMap<>();
+        this.parameters = new ParameterMap();
     }
 
     public void addParameter(String key, String value) {
@@ -31,6 +34,73 @@ public class Message {
         return parameters;
     }
 
+    /**
+     * Returns the number of parameters, which together with {@link #getParameterKey(int)} and
+     * {@link #getParameterValue(int)} allows iterating over the parameters without allocating entries.
+     *
+     * @return Returns the number of parameters.
+     */
+    public int getParameterCount() {
+        return parameters.size();
+    }
+
+    /**
+     * Returns the key of the parameter at the given position.
+     *
+     * @param position The position of the parameter in insertion order.
+     * @return Returns the key of the parameter.
+     */
+    public String getParameterKey(int position) {
+        return parameters.keyAt(position);
+    }
+
+    /**
+     * Returns the value of the parameter at the given position.
+     *
+     * @param position The position of the parameter in insertion order.
+     * @return Returns the value of the parameter.
+     */
+    public String getParameterValue(int position) {
+        return parameters.valueAt(position);
+    }
+
+    /**
+     * Attaches protocol metadata to the message, which is transmitted as a parameter with the metadata prefix by
+     * {@link Messages#addMetadata(Message)}.
+     *
+     * @param key The metadata key without the metadata prefix.
+     * @param value The metadata value.
+     */
+    public void addMetadata(String key, String value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Metadata key and value must not be null");
+        }
+        if (metadata == null) {
+            metadata = new ParameterMap();
+        }
+        metadata.put(key, value);
+    }
+
+    /**
+     * Retrieves the protocol metadata for the given key. The metadata of a request is only available after
+     * {@link Messages#stripMetadata(Message)} has been invoked.
+     *
+     * @param key The metadata key without the metadata prefix.
+     * @return Returns the metadata value or {@code null} if not present.
+     */
+    public String getMetadata(String key) {
+        return metadata != null ? metadata.get(key) : null;
+    }
+
+    /**
+     * Returns the protocol metadata of the message.
+     *
+     * @return Returns the metadata or an unmodifiable empty map if no metadata has been attached.
+     */
+    public Map<String, String> getMetadata() {
+        return metadata != null ? metadata : Collections.emptyMap();
+    }
+
     public String getSubject() {
         return subject;
     }
@@ -2,21 +2,42 @@ package org.mate.network.message;
 
 import org.mate.util.Log;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Iterator;
 import java.util.Map;
 
 public class Messages {
     private static final String METADATA_PREFIX = "__meta__";
     private static final String MESSAGE_PROTOCOL_VERSION = "3.4";
     private static final String MESSAGE_PROTOCOL_VERSION_KEY = "version";
+    private static final String CORRELATION_ID_KEY = "id";
+    private static final String ERROR_SUBJECT = "/error";
 
     //util class
     private Messages() {
     }
 
     public static Message errorMessage(String info) {
-        return new Message.MessageBuilder("/error").withParameter("info", info).build();
+        return new Message.MessageBuilder(ERROR_SUBJECT).withParameter("info", info).build();
+    }
+
+    /**
+     * Builds the error message that is sent back if a request has been rejected because the server is saturated.
+     *
+     * @param subject The subject of the rejected request.
+     * @param retryAfter The number of seconds after which the request should be re-sent.
+     * @return Returns the 'busy' error message.
+     */
+    public static Message busyMessage(String subject, long retryAfter) {
+        return new Message.MessageBuilder(ERROR_SUBJECT)
+                .withParameter("info", "MATE-Server is busy, request with subject \"" + subject
+                        + "\" has been rejected.")
+                .withParameter("busy", "true")
+                .withParameter("retry_after", String.valueOf(retryAfter))
+                .build();
+    }
+
+    public static boolean isErrorMessage(Message message) {
+        return message.getSubject().equals(ERROR_SUBJECT);
     }
 
     public static Message buildResponse(final Message request, final boolean success) {
@@ -25,26 +46,139 @@ public class Messages {
     }
 
     public static void addMetadata(Message message) {
+        for (Map.Entry<String, String> metadata : message.getMetadata().entrySet()) {
+            message.addParameter(toParameterKey(metadata.getKey()), metadata.getValue());
+        }
         message.addParameter(
                 METADATA_PREFIX + MESSAGE_PROTOCOL_VERSION_KEY, MESSAGE_PROTOCOL_VERSION);
     }
 
+    /**
+     * Removes the metadata parameters from the given message and makes them accessible via
+     * {@link Message#getMetadata(String)} instead.
+     *
+     * @param message The message containing metadata parameters.
+     */
     public static void stripMetadata(Message message) {
-        List<String> metadataKeys = new ArrayList<>();
-        Map<String, String> parameters = message.getParameters();
-        for (String parameterKey: parameters.keySet()) {
-            if (parameterKey.startsWith(METADATA_PREFIX)) {
-                metadataKeys.add(parameterKey);
+        Iterator<Map.Entry<String, String>> parameters = message.getParameters().entrySet().iterator();
+        while (parameters.hasNext()) {
+            Map.Entry<String, String> parameter = parameters.next();
+            if (parameter.getKey().startsWith(METADATA_PREFIX)) {
+                message.addMetadata(toMetadataKey(parameter.getKey()), parameter.getValue());
+                parameters.remove();
             }
         }
-        for (String metadataKey : metadataKeys) {
-            parameters.remove(metadataKey);
+    }
+
+    /**
+     * Strips the metadata prefix from the given parameter key. The well-known keys are mapped to constants instead
+     * of allocating a new string for every request.
+     *
+     * @param parameterKey The parameter key including the metadata prefix.
+     * @return Returns the metadata key.
+     */
+    private static String toMetadataKey(String parameterKey) {
+        switch (parameterKey) {
+            case METADATA_PREFIX + MESSAGE_PROTOCOL_VERSION_KEY:
+                return MESSAGE_PROTOCOL_VERSION_KEY;
+            case METADATA_PREFIX + CORRELATION_ID_KEY:
+                return CORRELATION_ID_KEY;
+            case METADATA_PREFIX + VectorEncoding.ENCODINGS_KEY:
+                return VectorEncoding.ENCODINGS_KEY;
+            case METADATA_PREFIX + PayloadCompression.COMPRESSIONS_KEY:
+                return PayloadCompression.COMPRESSIONS_KEY;
+            default:
+                return parameterKey.substring(METADATA_PREFIX.length());
+        }
+    }
+
+    /**
+     * Prepends the metadata prefix to the given metadata key, the inverse of {@link #toMetadataKey(String)}.
+     *
+     * @param metadataKey The metadata key.
+     * @return Returns the parameter key including the metadata prefix.
+     */
+    private static String toParameterKey(String metadataKey) {
+        switch (metadataKey) {
+            case MESSAGE_PROTOCOL_VERSION_KEY:
+                return METADATA_PREFIX + MESSAGE_PROTOCOL_VERSION_KEY;
+            case CORRELATION_ID_KEY:
+                return METADATA_PREFIX + CORRELATION_ID_KEY;
+            case VectorEncoding.ENCODINGS_KEY:
+                return METADATA_PREFIX + VectorEncoding.ENCODINGS_KEY;
+            case PayloadCompression.COMPRESSIONS_KEY:
+                return METADATA_PREFIX + PayloadCompression.COMPRESSIONS_KEY;
+            default:
+                return METADATA_PREFIX + metadataKey;
+        }
+    }
+
+    /**
+     * Retrieves the correlation id of the given request. A client attaches a correlation id ({@code __meta__id}) to
+     * pipeline requests on a single connection. Such requests may be executed concurrently and their responses are
+     * written in order of completion, carrying the same correlation id.
+     *
+     * @param request The request, either before or after {@link #stripMetadata(Message)} has been invoked.
+     * @return Returns the correlation id or {@code null} if the request is not pipelined.
+     */
+    public static String getCorrelationId(Message request) {
+        String id = request.getMetadata(CORRELATION_ID_KEY);
+        return id != null ? id : request.getParameter(METADATA_PREFIX + CORRELATION_ID_KEY);
+    }
+
+    /**
+     * Checks whether the given request has been pipelined, i.e. whether it carries a correlation id.
+     *
+     * @param request The request message.
+     * @return Returns {@code true} if the request carries a correlation id, otherwise {@code false}.
+     */
+    public static boolean isPipelined(Message request) {
+        return getCorrelationId(request) != null;
+    }
+
+    /**
+     * Echoes the correlation id of the request, if any, in the response.
+     *
+     * @param request The request message.
+     * @param response The response to the given request.
+     */
+    public static void correlate(Message request, Message response) {
+        String id = getCorrelationId(request);
+        if (id != null) {
+            response.addMetadata(CORRELATION_ID_KEY, id);
+        }
+    }
+
+    /**
+     * Passes the metadata of an enclosing request, e.g. a batch request, on to a nested request that hasn't been
+     * stripped yet. The protocol version and the correlation id are not inherited, as well as metadata the nested
+     * request specifies on its own. The supported compressions are neither inherited nor kept, since the response to
+     * the enclosing request is compressed as a whole, see {@link PayloadCompression}.
+     *
+     * @param enclosing The enclosing request, after {@link #stripMetadata(Message)} has been invoked.
+     * @param nested The nested request, before {@link #stripMetadata(Message)} has been invoked.
+     */
+    public static void inheritMetadata(Message enclosing, Message nested) {
+        nested.getParameters().remove(METADATA_PREFIX + PayloadCompression.COMPRESSIONS_KEY);
+        for (Map.Entry<String, String> metadata : enclosing.getMetadata().entrySet()) {
+            String key = metadata.getKey();
+            if (!key.equals(MESSAGE_PROTOCOL_VERSION_KEY) && !key.equals(CORRELATION_ID_KEY)
+                    && !key.equals(PayloadCompression.COMPRESSIONS_KEY)) {
+                String parameterKey = toParameterKey(key);
+                if (nested.getParameter(parameterKey) == null) {
+                    nested.addParameter(parameterKey, metadata.getValue());
+                }
+            }
         }
     }
 
     public static void verifyMetadata(Message message) {
         String protocolVersion = message.getParameter(
                 METADATA_PREFIX + MESSAGE_PROTOCOL_VERSION_KEY);
+        if (protocolVersion == null) {
+            // nested requests, e.g. within a batch request, don't need to specify the protocol version
+            return;
+        }
         if (!protocolVersion.equals(MESSAGE_PROTOCOL_VERSION)) {
             Log.printWarning(
                     "Message protocol version used by MATE-Server ("
@@ -0,0 +1,242 @@
+package org.mate.network.message;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A compact map for the parameters and the metadata of a {@link Message}. A message carries only a handful of
+ * parameters, thus the keys and values are stored in two parallel arrays in insertion order and looked up by a linear
+ * scan, which avoids the hash table and the entry objects of a {@link java.util.HashMap}. Since the well-known keys
+ * are interned by the {@link org.mate.network.message.serialization.MessageDecoder}, a lookup with a string literal
+ * usually succeeds on the identity check. Messages with many parameters, e.g. batch responses, are looked up via a
+ * hash index over the keys once they exceed {@link #INDEX_THRESHOLD} parameters.
+ */
+final class ParameterMap extends AbstractMap<String, String> {
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    /**
+     * The number of keys beyond which the keys are looked up via a hash index instead of a linear scan.
+     */
+    static final int INDEX_THRESHOLD = 16;
+
+    private String[] keys;
+    private String[] values;
+    private int size = 0;
+
+    /**
+     * Maps the keys to their indices, {@code null} as long as the map is small or after an entry has been removed,
+     * in which case the index is rebuilt by the next lookup.
+     */
+    private Map<Object, Integer> keyIndex;
+
+    /**
+     * Counts the structural modifications for detecting concurrent modifications during iteration.
+     */
+    private int modifications = 0;
+
+    ParameterMap() {
+        keys = new String[DEFAULT_CAPACITY];
+        values = new String[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Looks up the index of the given key.
+     *
+     * @param key The key to look up.
+     * @return Returns the index of the key or {@code -1} if not present.
+     */
+    private int indexOf(final Object key) {
+        if (size > INDEX_THRESHOLD) {
+            if (keyIndex == null) {
+                keyIndex = new HashMap<>(size * 2);
+                for (int i = 0; i < size; i++) {
+                    keyIndex.put(keys[i], i);
+                }
+            }
+            return keyIndex.getOrDefault(key, -1);
+        }
+        for (int i = 0; i < size; i++) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        if (key != null) {
+            for (int i = 0; i < size; i++) {
+                if (key.equals(keys[i])) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public String get(final Object key) {
+        final int index = indexOf(key);
+        return index >= 0 ? values[index] : null;
+    }
+
+    @Override
+    public String put(final String key, final String value) {
+        final int index = indexOf(key);
+        if (index >= 0) {
+            final String previous = values[index];
+            values[index] = value;
+            return previous;
+        }
+
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        keys[size] = key;
+        values[size] = value;
+        if (keyIndex != null) {
+            keyIndex.put(key, size);
+        }
+        size++;
+        modifications++;
+        return null;
+    }
+
+    /**
+     * Returns the key at the given position, which allows iterating over the map without allocating entries.
+     *
+     * @param position The position in insertion order, less than {@link #size()}.
+     * @return Returns the key at the given position.
+     */
+    String keyAt(final int position) {
+        return keys[position];
+    }
+
+    /**
+     * Returns the value at the given position, which allows iterating over the map without allocating entries.
+     *
+     * @param position The position in insertion order, less than {@link #size()}.
+     * @return Returns the value at the given position.
+     */
+    String valueAt(final int position) {
+        return values[position];
+    }
+
+    @Override
+    public String remove(final Object key) {
+        final int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        final String previous = values[index];
+        removeAt(index);
+        return previous;
+    }
+
+    /**
+     * Removes the entry at the given index while preserving the insertion order of the remaining entries.
+     *
+     * @param index The index of the entry to be removed.
+     */
+    private void removeAt(final int index) {
+        final int moved = size - index - 1;
+        System.arraycopy(keys, index + 1, keys, index, moved);
+        System.arraycopy(values, index + 1, values, index, moved);
+        size--;
+        keys[size] = null;
+        values[size] = null;
+        // the indices of the subsequent entries have been shifted
+        keyIndex = null;
+        modifications++;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+        keyIndex = null;
+        modifications++;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Iterates over the entries in insertion order. The returned entries are views that write through to the map.
+     */
+    private final class EntryIterator implements Iterator<Entry<String, String>> {
+
+        private int next = 0;
+        private int last = -1;
+        private int expectedModifications = modifications;
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public Entry<String, String> next() {
+            if (expectedModifications != modifications) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            final int index = last;
+            return new SimpleEntry<>(keys[index], values[index]) {
+                @Override
+                public String setValue(final String value) {
+                    if (value == null) {
+                        throw new IllegalArgumentException("Parameter value must not be null");
+                    }
+                    values[index] = value;
+                    return super.setValue(value);
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            if (expectedModifications != modifications) {
+                throw new ConcurrentModificationException();
+            }
+            removeAt(last);
+            next = last;
+            last = -1;
+            expectedModifications = modifications;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package org.mate.network.message;
+
+import org.mate.network.message.serialization.Lexer;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The compressions that can be applied to large parameter values, e.g. the source lines of the classes or the line
+ * coverage percentages. A client can advertise the compressions it understands via the metadata key
+ * {@link #COMPRESSIONS_KEY}, e.g. {@code __meta__compressions:deflate}. Parameter values that exceed
+ * {@link #MIN_SIZE} characters are then transmitted compressed if this saves space. A compressed parameter is marked
+ * with the metadata {@code __meta__compression.<parameter>} naming the used compression. The same applies to the
+ * parameters of a request sent by the client.
+ *
+ * A compressed value is the Base64 representation of the compressed UTF-8 bytes of the original value:
+ * <ul>
+ *     <li>{@link #DEFLATE}: the zlib format (RFC 1950), as produced by {@link Deflater} and read by
+ *     {@link Inflater}.</li>
+ * </ul>
+ *
+ * Compression is applied after the vector encodings, see {@link VectorEncoding}, thus a client needs to decompress a
+ * parameter before decoding it. The decompressed parameters of a request must not exceed {@link #setMaxSize(long)}
+ * bytes in total, which protects the server against compression bombs.
+ */
+public enum PayloadCompression {
+
+    DEFLATE("deflate");
+
+    /**
+     * The metadata key under which the client advertises the supported compressions (comma separated).
+     */
+    public static final String COMPRESSIONS_KEY = "compressions";
+
+    /**
+     * The minimal length of a parameter value that is considered for compression.
+     */
+    public static final int MIN_SIZE = 1024;
+
+    /**
+     * The default maximal number of bytes of the decompressed parameters of a request.
+     */
+    public static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * The prefix of the metadata key that marks a compressed parameter.
+     */
+    private static final String COMPRESSION_KEY_PREFIX = "compression.";
+
+    /**
+     * The maximal number of bytes of the decompressed parameters of a request.
+     */
+    private static volatile long maxSize = DEFAULT_MAX_SIZE;
+
+    private final String name;
+
+    PayloadCompression(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the name of the compression as used in the metadata.
+     *
+     * @return Returns the compression name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Sets the maximal number of bytes the compressed parameters of a request may occupy once decompressed.
+     *
+     * @param maxSize The maximal size in bytes.
+     */
+    public static void setMaxSize(long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("The maximal decompressed size must be positive!");
+        }
+        PayloadCompression.maxSize = maxSize;
+    }
+
+    /**
+     * Determines the compression to apply to the response of the given request, i.e. the first compression
+     * advertised by the sender of the request that is supported.
+     *
+     * @param request The request message.
+     * @return Returns the compression or {@code null} if the sender doesn't support any compression.
+     */
+    public static PayloadCompression negotiate(Message request) {
+
+        String advertised = request.getMetadata(COMPRESSIONS_KEY);
+
+        if (advertised != null) {
+            for (String name : advertised.split(",")) {
+                for (PayloadCompression compression : values()) {
+                    if (compression.name.equals(name.trim())) {
+                        return compression;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compresses the large parameter values of the response if supported by the sender of the request.
+     *
+     * @param request The request message.
+     * @param response The response message.
+     */
+    public static void compress(Message request, Message response) {
+
+        PayloadCompression compression = negotiate(request);
+        if (compression == null) {
+            return;
+        }
+
+        for (Map.Entry<String, String> parameter : response.getParameters().entrySet()) {
+            String value = parameter.getValue();
+            if (value.length() >= MIN_SIZE) {
+                String compressed = compression.compress(value);
+                if (compressed.length() < value.length()) {
+                    parameter.setValue(compressed);
+                    response.addMetadata(COMPRESSION_KEY_PREFIX + parameter.getKey(), compression.name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Decompresses the parameter values of the given request that have been compressed by the client.
+     *
+     * @param request The request, after {@link Messages#stripMetadata(Message)} has been invoked.
+     * @throws IllegalArgumentException If a parameter is malformed or the decompressed parameters exceed the maximal
+     *         size.
+     */
+    public static void decompress(Message request) {
+
+        List<String> compressedKeys = new ArrayList<>();
+        for (String metadataKey : request.getMetadata().keySet()) {
+            if (metadataKey.startsWith(COMPRESSION_KEY_PREFIX)) {
+                compressedKeys.add(metadataKey);
+            }
+        }
+
+        long remaining = maxSize;
+        for (String metadataKey : compressedKeys) {
+            String key = metadataKey.substring(COMPRESSION_KEY_PREFIX.length());
+            String name = request.getMetadata().remove(metadataKey);
+            String value = request.getParameter(key);
+            if (value == null) {
+                throw new IllegalArgumentException("Compressed parameter " + key + " is missing!");
+            }
+            byte[] decompressed = byName(name).decompress(value, remaining);
+            remaining -= decompressed.length;
+            request.addParameter(key, new String(decompressed, Lexer.CHARSET));
+        }
+    }
+
+    /**
+     * Looks up the compression with the given name.
+     *
+     * @param name The name of the compression.
+     * @return Returns the compression with the given name.
+     */
+    private static PayloadCompression byName(String name) {
+        for (PayloadCompression compression : values()) {
+            if (compression.name.equals(name)) {
+                return compression;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported compression: " + name);
+    }
+
+    /**
+     * Compresses the given value.
+     *
+     * @param value The value to compress.
+     * @return Returns the Base64 representation of the compressed value.
+     */
+    private String compress(String value) {
+
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(value.getBytes(Lexer.CHARSET));
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(value.length() / 4);
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return Base64.getEncoder().encodeToString(out.toByteArray());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decompresses the given value.
+     *
+     * @param value The Base64 representation of the compressed value.
+     * @param limit The maximal number of decompressed bytes.
+     * @return Returns the decompressed UTF-8 bytes.
+     * @throws IllegalArgumentException If the value is malformed or exceeds the limit once decompressed.
+     */
+    private byte[] decompress(String value, long limit) {
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(Base64.getDecoder().decode(value));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(limit, value.length() * 4L));
+            byte[] chunk = new byte[8192];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(chunk);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated " + name + " compressed parameter!");
+                }
+                if (out.size() + (long) inflated > limit) {
+                    throw new IllegalArgumentException("Decompressed parameters exceed the maximal size of "
+                            + maxSize + " bytes!");
+                }
+                out.write(chunk, 0, inflated);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Malformed " + name + " compressed parameter: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package org.mate.network.message;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The binary encodings that can be used for transmitting numeric vectors, e.g. fitness or distance vectors. By default,
+ * vectors are transmitted as decimal strings separated by '+'. A client can advertise the binary encodings it
+ * understands via the metadata key {@link #ENCODINGS_KEY}, e.g. {@code __meta__encodings:bitset,float32}. If a vector
+ * is transmitted in a binary encoding, the response carries the metadata {@code __meta__encoding.<parameter>}
+ * naming the used encoding.
+ *
+ * A binary encoded vector is the Base64 representation of a four byte (big-endian) element count followed by the
+ * packed elements:
+ * <ul>
+ *     <li>{@link #BITSET}: one bit per element, where element {@code i} is stored in bit {@code i % 8} (least
+ *     significant bit first) of byte {@code i / 8}.</li>
+ *     <li>{@link #FLOAT32}: one big-endian IEEE 754 single precision value per element.</li>
+ *     <li>{@link #FLOAT64}: one big-endian IEEE 754 double precision value per element.</li>
+ * </ul>
+ */
+public enum VectorEncoding {
+
+    BITSET("bitset"),
+    FLOAT32("float32"),
+    FLOAT64("float64");
+
+    /**
+     * The metadata key under which the client advertises the supported encodings (comma separated).
+     */
+    public static final String ENCODINGS_KEY = "encodings";
+
+    /**
+     * The prefix of the metadata key that marks a binary encoded parameter.
+     */
+    private static final String ENCODING_KEY_PREFIX = "encoding.";
+
+    /**
+     * The delimiter of the textual vector representation.
+     */
+    private static final String TEXT_DELIMITER = "+";
+
+    private final String name;
+
+    VectorEncoding(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the name of the encoding as used in the metadata.
+     *
+     * @return Returns the encoding name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Determines the encodings supported by the sender of the given request.
+     *
+     * @param request The request message.
+     * @return Returns the supported encodings.
+     */
+    public static Set<VectorEncoding> supportedBy(Message request) {
+
+        Set<VectorEncoding> encodings = EnumSet.noneOf(VectorEncoding.class);
+        String advertised = request.getMetadata(ENCODINGS_KEY);
+
+        if (advertised != null) {
+            for (String name : advertised.split(",")) {
+                for (VectorEncoding encoding : values()) {
+                    if (encoding.name.equals(name.trim())) {
+                        encodings.add(encoding);
+                    }
+                }
+            }
+        }
+        return encodings;
+    }
+
+    /**
+     * Adds the given 0/1 vector to the response, either as a {@link #BITSET} if supported by the sender of the request
+     * or as '+' separated string.
+     *
+     * @param request The request message.
+     * @param response The response message.
+     * @param key The parameter key of the vector.
+     * @param bits The vector.
+     */
+    public static void addBitVector(Message request, Message response, String key, boolean[] bits) {
+
+        if (supportedBy(request).contains(BITSET)) {
+            ByteBuffer buffer = allocate(bits.length, (bits.length + 7) / 8);
+            int offset = buffer.position();
+            for (int i = 0; i < bits.length; i++) {
+                if (bits[i]) {
+                    int index = offset + i / 8;
+                    buffer.put(index, (byte) (buffer.get(index) | (1 << (i % 8))));
+                }
+            }
+            addEncoded(response, key, BITSET, buffer);
+        } else {
+            StringBuilder vector = new StringBuilder(bits.length * 2);
+            for (int i = 0; i < bits.length; i++) {
+                if (i > 0) {
+                    vector.append(TEXT_DELIMITER);
+                }
+                vector.append(bits[i] ? '1' : '0');
+            }
+            response.addParameter(key, vector.toString());
+        }
+    }
+
+    /**
+     * Adds the given numeric vector to the response, either as {@link #FLOAT32} if supported by the sender of the
+     * request or as '+' separated string.
+     *
+     * @param request The request message.
+     * @param response The response message.
+     * @param key The parameter key of the vector.
+     * @param values The vector.
+     */
+    public static void addNumberVector(Message request, Message response, String key, float[] values) {
+
+        if (supportedBy(request).contains(FLOAT32)) {
+            ByteBuffer buffer = allocate(values.length, values.length * Float.BYTES);
+            for (float value : values) {
+                buffer.putFloat(value);
+            }
+            addEncoded(response, key, FLOAT32, buffer);
+        } else {
+            StringBuilder vector = new StringBuilder(values.length * 8);
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    vector.append(TEXT_DELIMITER);
+                }
+                vector.append(values[i]);
+            }
+            response.addParameter(key, vector.toString());
+        }
+    }
+
+    /**
+     * Adds the given numeric vector to the response, either as {@link #FLOAT64} if supported by the sender of the
+     * request or as '+' separated string.
+     *
+     * @param request The request message.
+     * @param response The response message.
+     * @param key The parameter key of the vector.
+     * @param values The vector.
+     */
+    public static void addNumberVector(Message request, Message response, String key, double[] values) {
+
+        if (supportedBy(request).contains(FLOAT64)) {
+            ByteBuffer buffer = allocate(values.length, values.length * Double.BYTES);
+            for (double value : values) {
+                buffer.putDouble(value);
+            }
+            addEncoded(response, key, FLOAT64, buffer);
+        } else {
+            StringBuilder vector = new StringBuilder(values.length * 8);
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    vector.append(TEXT_DELIMITER);
+                }
+                vector.append(values[i]);
+            }
+            response.addParameter(key, vector.toString());
+        }
+    }
+
+    /**
+     * Allocates a buffer for an encoded vector and writes the element count.
+     *
+     * @param elements The number of elements.
+     * @param size The size of the packed elements in bytes.
+     * @return Returns the buffer positioned after the element count.
+     */
+    private static ByteBuffer allocate(int elements, int size) {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + size);
+        buffer.putInt(elements);
+        return buffer;
+    }
+
+    /**
+     * Adds the given encoded vector to the response and marks the parameter with the used encoding.
+     *
+     * @param response The response message.
+     * @param key The parameter key of the vector.
+     * @param encoding The used encoding.
+     * @param buffer The buffer holding the element count and the packed elements.
+     */
+    private static void addEncoded(Message response, String key, VectorEncoding encoding, ByteBuffer buffer) {
+        response.addParameter(key, Base64.getEncoder().encodeToString(buffer.array()));
+        response.addMetadata(ENCODING_KEY_PREFIX + key, encoding.name);
+    }
+}
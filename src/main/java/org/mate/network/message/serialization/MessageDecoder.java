@@ -0,0 +1,271 @@
+package org.mate.network.message.serialization;
+
+import org.mate.network.message.Message;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.mate.network.message.serialization.Lexer.*;
+
+/**
+ * An incremental decoder for the MATE message protocol that operates directly on the received bytes. In contrast to
+ * the {@link Lexer}, the decoder doesn't produce intermediate tokens but builds the {@link Message} in a single pass.
+ * Unescaped runs of bytes are copied in bulk and only the completed subject, keys and values are decoded as UTF-8.
+ * Since the special characters of the protocol are all ASCII characters, they can never occur within a multi-byte
+ * UTF-8 sequence, hence the escape rules of {@link Serializer#escapeParameterValue(String)} can be applied on the
+ * byte level.
+ *
+ * The decoder keeps the state of a partially received message between calls, thus it can be fed with arbitrary chunks
+ * of bytes. A decoder instance must not be shared between connections.
+ */
+public class MessageDecoder {
+
+    /**
+     * The element of the message that is currently decoded.
+     */
+    private enum State {
+        SUBJECT, PARAM_KEY, VALUE
+    }
+
+    /**
+     * The keys sent with (almost) every request, which are returned as interned constants instead of allocating a new
+     * string for every request. This includes the metadata keys, see {@link org.mate.network.message.Messages}.
+     */
+    private static final String[] WELL_KNOWN_KEYS = {
+            "packageName", "deviceId", "chromosome", "chromosomes", "chromosome_src", "chromosome_target",
+            "entity", "entities", "testSuiteId", "testCaseId", "stateId", "type", "coverage_type",
+            "__meta__version", "__meta__id", "__meta__encodings", "__meta__compressions"
+    };
+
+    /**
+     * The UTF-8 representations of the {@link #WELL_KNOWN_KEYS}.
+     */
+    private static final byte[][] WELL_KNOWN_KEY_BYTES = new byte[WELL_KNOWN_KEYS.length][];
+
+    static {
+        for (int i = 0; i < WELL_KNOWN_KEYS.length; i++) {
+            WELL_KNOWN_KEY_BYTES[i] = WELL_KNOWN_KEYS[i].getBytes(CHARSET);
+        }
+    }
+
+    private State state = State.SUBJECT;
+
+    /**
+     * Whether the last consumed byte was an (unescaped) escape character.
+     */
+    private boolean escaped = false;
+
+    /**
+     * The unescaped bytes of the subject, key or value that is currently decoded.
+     */
+    private byte[] value = new byte[256];
+
+    /**
+     * The number of valid bytes in {@link #value}.
+     */
+    private int length = 0;
+
+    /**
+     * The message that is currently decoded.
+     */
+    private Message message;
+
+    /**
+     * The key of the parameter that is currently decoded.
+     */
+    private String key;
+
+    /**
+     * The number of bytes of the message that is currently decoded consumed so far.
+     */
+    private long messageSize = 0;
+
+    /**
+     * The size in bytes of the last completed message.
+     */
+    private long lastMessageSize = 0;
+
+    /**
+     * Consumes bytes from the given buffer until a message is completed or the buffer is exhausted. In the former case,
+     * the position of the buffer points to the first byte after the message.
+     *
+     * @param buffer The buffer containing the received bytes.
+     * @return Returns the completed message or {@code null} if more bytes are required.
+     * @throws IllegalStateException If the received bytes violate the protocol.
+     */
+    public Message decode(final ByteBuffer buffer) {
+
+        final int start = buffer.position();
+        int runStart = start;
+        final int limit = buffer.limit();
+
+        for (int i = runStart; i < limit; i++) {
+
+            final byte b = buffer.get(i);
+
+            if (escaped) {
+                // the escaped byte is part of the current run
+                escaped = false;
+                continue;
+            }
+
+            if (b == ESCAPE_CHAR) {
+                append(buffer, runStart, i);
+                runStart = i + 1;
+                escaped = true;
+            } else if (b == END_MESSAGE_CHAR) {
+                append(buffer, runStart, i);
+                buffer.position(i + 1);
+                lastMessageSize = messageSize + (i + 1 - start);
+                messageSize = 0;
+                return endMessage();
+            } else if (b == END_PARAMETER_CHAR) {
+                append(buffer, runStart, i);
+                runStart = i + 1;
+                endParameter();
+            } else if (b == RELATION_SEPARATOR_CHAR) {
+                append(buffer, runStart, i);
+                runStart = i + 1;
+                endKey();
+            }
+        }
+
+        append(buffer, runStart, limit);
+        buffer.position(limit);
+        messageSize += limit - start;
+        return null;
+    }
+
+    /**
+     * Returns the size of the last completed message, including escape characters and the terminator.
+     *
+     * @return Returns the size of the last message in bytes.
+     */
+    public long getLastMessageSize() {
+        return lastMessageSize;
+    }
+
+    /**
+     * Checks whether the decoder holds a partially received message.
+     *
+     * @return Returns {@code true} if a message has been started but not yet completed.
+     */
+    public boolean hasPartialMessage() {
+        return state != State.SUBJECT || length > 0 || escaped;
+    }
+
+    /**
+     * Handles an unescaped {@link Lexer#END_MESSAGE_CHAR}.
+     *
+     * @return Returns the completed message.
+     */
+    private Message endMessage() {
+        switch (state) {
+            case SUBJECT:
+                message = new Message(takeValue());
+                break;
+            case VALUE:
+                message.addParameter(key, takeValue());
+                break;
+            default:
+                throw failure("Illegal END_MESSAGE_CHAR encountered while lexing parameter key");
+        }
+
+        final Message completed = message;
+        message = null;
+        key = null;
+        state = State.SUBJECT;
+        return completed;
+    }
+
+    /**
+     * Handles an unescaped {@link Lexer#END_PARAMETER_CHAR}.
+     */
+    private void endParameter() {
+        switch (state) {
+            case SUBJECT:
+                message = new Message(takeValue());
+                break;
+            case VALUE:
+                message.addParameter(key, takeValue());
+                break;
+            default:
+                throw failure("Illegal END_PARAMETER_CHAR encountered while lexing parameter key");
+        }
+        state = State.PARAM_KEY;
+    }
+
+    /**
+     * Handles an unescaped {@link Lexer#RELATION_SEPARATOR_CHAR}.
+     */
+    private void endKey() {
+        if (state != State.PARAM_KEY) {
+            throw failure("Illegal RELATION_SEPARATOR_CHAR encountered while lexing non parameter key");
+        }
+        key = takeKey();
+        state = State.VALUE;
+    }
+
+    /**
+     * Copies the given range of the buffer to the current value.
+     *
+     * @param buffer The buffer containing the received bytes.
+     * @param from The start index of the range (inclusive).
+     * @param to The end index of the range (exclusive).
+     */
+    private void append(final ByteBuffer buffer, final int from, final int to) {
+        final int count = to - from;
+        if (count <= 0) {
+            return;
+        }
+        if (length + count > value.length) {
+            value = Arrays.copyOf(value, Math.max(value.length * 2, length + count));
+        }
+        buffer.get(from, value, length, count);
+        length += count;
+    }
+
+    /**
+     * Decodes the current value and resets it.
+     *
+     * @return Returns the decoded value.
+     */
+    private String takeValue() {
+        final String decoded = new String(value, 0, length, CHARSET);
+        length = 0;
+        return decoded;
+    }
+
+    /**
+     * Decodes the current value as parameter key and resets it. Well-known keys are not decoded but looked up.
+     *
+     * @return Returns the decoded key.
+     */
+    private String takeKey() {
+        for (int i = 0; i < WELL_KNOWN_KEY_BYTES.length; i++) {
+            final byte[] candidate = WELL_KNOWN_KEY_BYTES[i];
+            if (candidate.length == length && Arrays.equals(candidate, 0, length, value, 0, length)) {
+                length = 0;
+                return WELL_KNOWN_KEYS[i];
+            }
+        }
+        return takeValue();
+    }
+
+    /**
+     * Resets the decoder and constructs the exception describing the protocol violation.
+     *
+     * @param reason Describes the protocol violation.
+     * @return Returns the exception to be thrown.
+     */
+    private IllegalStateException failure(final String reason) {
+        final String prefix = state == State.SUBJECT ? "Lexing subject failed: " : "";
+        state = State.SUBJECT;
+        escaped = false;
+        length = 0;
+        message = null;
+        key = null;
+        messageSize = 0;
+        return new IllegalStateException(prefix + reason);
+    }
+}
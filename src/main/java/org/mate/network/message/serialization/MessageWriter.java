@@ -0,0 +1,205 @@
+package org.mate.network.message.serialization;
+
+import org.mate.network.BufferPool;
+import org.mate.network.message.Message;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import static org.mate.network.message.serialization.Lexer.*;
+
+/**
+ * Serializes messages in a streaming fashion. Subject, keys and values are escaped and encoded as UTF-8 directly into
+ * a pooled buffer, which is handed to a {@link Sink} whenever it is full and at the end of each message. Thus, the
+ * memory required for serializing a message is bounded by the buffer size, independent of the size of the message.
+ * The produced bytes are identical to those of {@link Serializer#serialize(Message)}.
+ */
+public class MessageWriter implements Closeable {
+
+    /**
+     * Receives the serialized bytes.
+     */
+    @FunctionalInterface
+    public interface Sink {
+
+        /**
+         * Consumes the given filled buffer. The sink takes ownership of the buffer, i.e. it is responsible for
+         * returning the buffer to the pool, even if it fails.
+         *
+         * @param filled A buffer ready for reading, i.e. it has been already flipped.
+         * @return Returns the (cleared) buffer to which the writer should continue writing.
+         * @throws IOException If the bytes can't be written.
+         */
+        ByteBuffer accept(ByteBuffer filled) throws IOException;
+    }
+
+    /**
+     * The replacement for unpaired surrogates, as used by {@link String#getBytes(java.nio.charset.Charset)}.
+     */
+    private static final byte REPLACEMENT = '?';
+
+    private final Sink sink;
+    private ByteBuffer buffer;
+
+    /**
+     * The number of bytes of the current message handed to the sink so far.
+     */
+    private long written;
+
+    /**
+     * Creates a writer that writes the serialized messages to the given channel.
+     *
+     * @param channel The channel to write to.
+     */
+    public MessageWriter(final WritableByteChannel channel) {
+        this(filled -> {
+            try {
+                while (filled.hasRemaining()) {
+                    channel.write(filled);
+                }
+            } catch (IOException e) {
+                BufferPool.release(filled);
+                throw e;
+            }
+            filled.clear();
+            return filled;
+        });
+    }
+
+    /**
+     * Creates a writer that hands the serialized bytes to the given sink.
+     *
+     * @param sink Receives the serialized bytes.
+     */
+    public MessageWriter(final Sink sink) {
+        this(sink, BufferPool.acquire());
+    }
+
+    /**
+     * Creates a writer that starts writing into the given buffer and hands the serialized bytes to the given sink.
+     * The buffer needs to hold at least four bytes, i.e. a single encoded character.
+     *
+     * @param sink Receives the serialized bytes.
+     * @param buffer The cleared buffer to write to first.
+     */
+    MessageWriter(final Sink sink, final ByteBuffer buffer) {
+        this.sink = sink;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Serializes the given message and hands all of its bytes to the sink.
+     *
+     * @param message The message to be written.
+     * @return Returns the size of the serialized message in bytes.
+     * @throws IOException If the sink fails to consume the bytes.
+     */
+    public long write(final Message message) throws IOException {
+        if (buffer == null) {
+            throw new IllegalStateException("Writer has been already closed");
+        }
+
+        written = 0;
+
+        writeEscaped(message.getSubject());
+
+        // iterates by position, which doesn't allocate an entry per parameter
+        for (int i = 0, count = message.getParameterCount(); i < count; i++) {
+            writeByte((byte) END_PARAMETER_CHAR);
+            writeEscaped(message.getParameterKey(i));
+            writeByte((byte) RELATION_SEPARATOR_CHAR);
+            writeEscaped(message.getParameterValue(i));
+        }
+
+        writeByte((byte) END_MESSAGE_CHAR);
+        flush();
+        return written;
+    }
+
+    /**
+     * Returns the buffer to the pool. The underlying channel or sink is not closed.
+     */
+    @Override
+    public void close() {
+        BufferPool.release(buffer);
+        buffer = null;
+    }
+
+    /**
+     * Escapes the given string according to {@link Serializer#escapeParameterValue(String)} and encodes it as UTF-8.
+     *
+     * @param value The string to be written.
+     * @throws IOException If the sink fails to consume the bytes.
+     */
+    private void writeEscaped(final String value) throws IOException {
+        for (int i = 0, length = value.length(); i < length; i++) {
+            final char c = value.charAt(i);
+
+            if (c < 0x80) {
+                if (c == ESCAPE_CHAR || c == END_PARAMETER_CHAR || c == END_MESSAGE_CHAR
+                        || c == RELATION_SEPARATOR_CHAR) {
+                    writeByte((byte) ESCAPE_CHAR);
+                }
+                writeByte((byte) c);
+            } else if (c < 0x800) {
+                ensureRemaining(2);
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                ensureRemaining(4);
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                writeByte(REPLACEMENT);
+            } else {
+                ensureRemaining(3);
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * Writes a single byte.
+     *
+     * @param b The byte to be written.
+     * @throws IOException If the sink fails to consume the bytes.
+     */
+    private void writeByte(final byte b) throws IOException {
+        ensureRemaining(1);
+        buffer.put(b);
+    }
+
+    /**
+     * Flushes the buffer if less than the given number of bytes are remaining.
+     *
+     * @param bytes The number of bytes that are going to be written.
+     * @throws IOException If the sink fails to consume the bytes.
+     */
+    private void ensureRemaining(final int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    /**
+     * Hands the buffered bytes to the sink.
+     *
+     * @throws IOException If the sink fails to consume the bytes.
+     */
+    private void flush() throws IOException {
+        final ByteBuffer filled = buffer;
+        filled.flip();
+        written += filled.remaining();
+        // the sink owns the buffer from now on, thus a failing sink must not cause close() to release it again
+        buffer = null;
+        buffer = sink.accept(filled);
+    }
+}
@@ -1,67 +1,80 @@
 package org.mate.network.message.serialization;
 
+import org.mate.network.BufferPool;
 import org.mate.network.message.Message;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.Iterator;
-
-public class Parser {
-    private final Lexer lexer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads messages from a blocking channel. The received bytes are buffered in a pooled direct buffer and decoded by a
+ * {@link MessageDecoder}, which is returned to the pool when the parser is closed.
+ */
+public class Parser implements Closeable {
+    private final ReadableByteChannel channel;
+    private final MessageDecoder decoder;
+    private ByteBuffer buffer;
 
     public Parser(InputStream in) {
-        lexer = new Lexer(in);
+        this(Channels.newChannel(in));
     }
 
-    public Message nextMessage() {
-        Iterator<Lexer.Token> tokenIterator = lexer.lexMessage().iterator();
-
-        Lexer.Token currentToken = tokenIterator.next();
-
-        if (currentToken.getType() != Lexer.Type.SUBJECT) {
-            throw new IllegalStateException("Unexpected first token of type: " + currentToken.getType());
-        }
-
-        Message.MessageBuilder messageBuilder = new Message.MessageBuilder(currentToken.getContents());
+    public Parser(ReadableByteChannel channel) {
+        this.channel = channel;
+        decoder = new MessageDecoder();
+        buffer = BufferPool.acquire();
+        // nothing has been read so far
+        buffer.flip();
+    }
 
-        currentToken = tokenIterator.next();
-        if (currentToken.getType() != Lexer.Type.END_PARAM && currentToken.getType() != Lexer.Type.END_MESSAGE) {
-            throw new IllegalStateException("Unexpected token after subject of type: " + currentToken.getType());
+    public Message nextMessage() {
+        if (buffer == null) {
+            throw new IllegalStateException("Parser has been already closed");
         }
 
-        while (currentToken.getType() != Lexer.Type.END_MESSAGE) {
-            if (currentToken.getType() != Lexer.Type.END_PARAM) {
-                throw new IllegalStateException("Unexpected token after param value of type: " + currentToken.getType());
+        while (true) {
+            Message message = decoder.decode(buffer);
+            if (message != null) {
+                return message;
             }
 
-            currentToken = tokenIterator.next();
-
-            if (currentToken.getType() != Lexer.Type.PARAM_KEY) {
-                throw new IllegalStateException("Unexpected token instead of param key of type: " + currentToken.getType());
+            // the decoder consumed all buffered bytes
+            buffer.clear();
+            int read;
+            try {
+                read = channel.read(buffer);
+            } catch (IOException e) {
+                throw new IllegalStateException("Lexing value failed: IO error while reading from input: "
+                        + e.getLocalizedMessage());
+            } finally {
+                buffer.flip();
             }
 
-            String paramKey = currentToken.getContents();
-
-            currentToken = tokenIterator.next();
-
-            if (currentToken.getType() != Lexer.Type.RELATION_SEPARATOR) {
-                throw new IllegalStateException("Unexpected token instead of relation separator of type: " + currentToken.getType());
+            if (read == -1) {
+                throw new IllegalStateException("Lexing value failed: unexpected EOF");
             }
-
-            currentToken = tokenIterator.next();
-
-            if (currentToken.getType() != Lexer.Type.VALUE) {
-                throw new IllegalStateException("Unexpected token instead of param value of type: " + currentToken.getType());
-            }
-
-            messageBuilder.withParameter(paramKey, currentToken.getContents());
-
-            currentToken = tokenIterator.next();
         }
+    }
 
-        if (tokenIterator.hasNext()) {
-            throw new IllegalStateException("Unexpected left over tokens after end of message");
-        }
+    /**
+     * Returns the size of the last message returned by {@link #nextMessage()}.
+     *
+     * @return Returns the size of the last message in bytes.
+     */
+    public long getLastMessageSize() {
+        return decoder.getLastMessageSize();
+    }
 
-        return messageBuilder.build();
+    /**
+     * Returns the read buffer to the pool. The underlying channel is not closed.
+     */
+    @Override
+    public void close() {
+        BufferPool.release(buffer);
+        buffer = null;
     }
 }
@@ -2,7 +2,9 @@ package org.mate.network.message.serialization;
 
 import org.mate.network.message.Message;
 
-import java.util.Map;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
 
 import static org.mate.network.message.serialization.Lexer.*;
 
@@ -19,20 +21,13 @@ public class Serializer {
     }
 
     public static byte[] serialize(Message message) {
-        StringBuilder sb = new StringBuilder(escapeParameterValue(message.getSubject()));
-        if (!message.getParameters().isEmpty()) {
-            sb.append(END_PARAMETER_CHAR);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (MessageWriter writer = new MessageWriter(Channels.newChannel(out))) {
+            writer.write(message);
+        } catch (IOException e) {
+            // writing to a byte array never fails
+            throw new IllegalStateException("Serializing message failed", e);
         }
-        for (Map.Entry<String, String> parameter : message.getParameters().entrySet()) {
-            sb.append(escapeParameterValue(parameter.getKey()));
-            sb.append(RELATION_SEPARATOR_CHAR);
-            sb.append(escapeParameterValue(parameter.getValue()));
-            sb.append(END_PARAMETER_CHAR);
-        }
-        if (!message.getParameters().isEmpty()) {
-            sb.setLength(sb.length() - 1);
-        }
-        sb.append(END_MESSAGE_CHAR);
-        return sb.toString().getBytes(CHARSET);
+        return out.toByteArray();
     }
 }
@@ -0,0 +1,153 @@
+package org.mate.network.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Collects per-subject statistics of the handled requests, i.e. the number of requests and failed requests, the
+ * latency distribution of the endpoints as well as the number of received and sent bytes.
+ *
+ * Since the subjects are chosen by the client, the number of tracked subjects is bounded: requests with a subject no
+ * endpoint is registered for, as well as any further subject once {@link #MAX_SUBJECTS} subjects are tracked, are
+ * recorded under the subject {@link #UNKNOWN_SUBJECT}.
+ */
+public class RequestMetrics {
+
+    /**
+     * The subject under which the requests of unknown subjects are recorded.
+     */
+    public static final String UNKNOWN_SUBJECT = "unknown";
+
+    /**
+     * The maximal number of distinct subjects that are tracked.
+     */
+    static final int MAX_SUBJECTS = 256;
+
+    private final Map<String, SubjectMetrics> subjects = new ConcurrentHashMap<>();
+
+    /**
+     * Checks whether an endpoint is registered for a subject.
+     */
+    private final Predicate<String> knownSubjects;
+
+    /**
+     * Creates metrics considering all subjects as known.
+     */
+    public RequestMetrics() {
+        this(subject -> true);
+    }
+
+    /**
+     * Creates metrics recording the subjects that aren't known under {@link #UNKNOWN_SUBJECT}.
+     *
+     * @param knownSubjects Checks whether an endpoint is registered for a subject.
+     */
+    public RequestMetrics(Predicate<String> knownSubjects) {
+        this.knownSubjects = knownSubjects;
+    }
+
+    /**
+     * Records a handled request.
+     *
+     * @param subject The subject of the request.
+     * @param nanos The time spent in the endpoint in nanoseconds.
+     * @param failed Whether handling the request failed.
+     */
+    public void recordRequest(String subject, long nanos, boolean failed) {
+        SubjectMetrics metrics = get(subject);
+        metrics.requests.increment();
+        if (failed) {
+            metrics.errors.increment();
+        }
+        metrics.latency.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    /**
+     * Records the size of a received request.
+     *
+     * @param subject The subject of the request.
+     * @param bytes The size of the serialized request in bytes.
+     */
+    public void recordBytesIn(String subject, long bytes) {
+        get(subject).bytesIn.add(bytes);
+    }
+
+    /**
+     * Records the size of a sent response.
+     *
+     * @param subject The subject of the request.
+     * @param bytes The size of the serialized response in bytes.
+     */
+    public void recordBytesOut(String subject, long bytes) {
+        get(subject).bytesOut.add(bytes);
+    }
+
+    /**
+     * Returns a snapshot of the statistics per subject.
+     *
+     * @return Returns a description of the statistics keyed by subject, sorted by subject.
+     */
+    public Map<String, String> snapshot() {
+        Map<String, String> snapshot = new TreeMap<>();
+        subjects.forEach((subject, metrics) -> snapshot.put(subject, metrics.toString()));
+        return snapshot;
+    }
+
+    /**
+     * Retrieves the statistics of the given subject or of {@link #UNKNOWN_SUBJECT} if the subject is unknown or the
+     * maximal number of subjects is reached.
+     *
+     * @param subject The subject of the request.
+     * @return Returns the statistics of the subject.
+     */
+    private SubjectMetrics get(String subject) {
+        SubjectMetrics metrics = subjects.get(subject);
+        if (metrics != null) {
+            return metrics;
+        }
+        if (subjects.size() >= MAX_SUBJECTS || !knownSubjects.test(subject)) {
+            subject = UNKNOWN_SUBJECT;
+        }
+        return subjects.computeIfAbsent(subject, s -> new SubjectMetrics());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Request metrics:");
+        snapshot().forEach((subject, metrics) -> sb.append(System.lineSeparator())
+                .append(subject).append(": ").append(metrics));
+        return sb.toString();
+    }
+
+    /**
+     * The statistics of a single subject.
+     */
+    private static final class SubjectMetrics {
+
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder bytesIn = new LongAdder();
+        private final LongAdder bytesOut = new LongAdder();
+
+        /**
+         * The latency in microseconds.
+         */
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        @Override
+        public String toString() {
+            return "count=" + requests.sum()
+                    + ",errors=" + errors.sum()
+                    + ",p50_us=" + latency.getValueAtPercentile(50)
+                    + ",p90_us=" + latency.getValueAtPercentile(90)
+                    + ",p99_us=" + latency.getValueAtPercentile(99)
+                    + ",max_us=" + latency.getMax()
+                    + ",bytes_in=" + bytesIn.sum()
+                    + ",bytes_out=" + bytesOut.sum();
+        }
+    }
+}
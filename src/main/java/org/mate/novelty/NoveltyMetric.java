@@ -1,6 +1,5 @@
 package org.mate.novelty;
 
-import org.apache.commons.text.similarity.CosineSimilarity;
 import org.mate.coverage.CoverageVector;
 import org.mate.util.Log;
 
@@ -101,7 +100,7 @@ public class NoveltyMetric {
             Log.println("Comparing two 0-vectors!");
             return 0;
         } else {
-            return 1 - new CosineSimilarity().cosineSimilarity(v1.getVector(), v2.getVector());
+            return 1 - v1.cosineSimilarity(v2);
         }
     }
 }
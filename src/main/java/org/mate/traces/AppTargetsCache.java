@@ -0,0 +1,370 @@
+package org.mate.traces;
+
+import org.mate.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the target files of the apps, i.e. the branches.txt, blocks.txt and methods.txt files produced by the
+ * instrumentation. A target file is read once (memory-mapped) and then served from the cache until its modification
+ * time or size changes, e.g. when an app is re-instrumented. Since the cache is keyed by the (normalized) path of the
+ * target file, the targets of several apps never get mixed up.
+ */
+public final class AppTargetsCache {
+
+    /**
+     * The cached target files keyed by the (normalized) path.
+     */
+    private static final Map<Path, Targets> CACHE = new ConcurrentHashMap<>();
+
+    // utility class
+    private AppTargetsCache() {
+    }
+
+    /**
+     * Returns the targets of the given target file, re-reading the file if it has changed since it has been cached.
+     *
+     * @param targetsFile The target file, e.g. apps/com.zola.bmi/branches.txt.
+     * @return Returns the targets described by the file.
+     * @throws UncheckedIOException If the target file can't be read.
+     */
+    public static Targets get(Path targetsFile) {
+
+        final Path path = targetsFile.toAbsolutePath().normalize();
+
+        final BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't read target file " + targetsFile, e);
+        }
+
+        return CACHE.compute(path, (file, cached) -> {
+            if (cached != null && cached.lastModified.equals(attributes.lastModifiedTime())
+                    && cached.size == attributes.size()) {
+                return cached;
+            }
+            if (cached != null) {
+                Log.println("Target file " + file + " has changed, reloading it.");
+            }
+            return Targets.load(file, attributes);
+        });
+    }
+
+    /**
+     * Returns the targets of the given target file, re-reading the file if it has changed since it has been cached.
+     *
+     * @param targetsFile The target file, e.g. apps/com.zola.bmi/branches.txt.
+     * @return Returns the targets described by the file.
+     * @throws UncheckedIOException If the target file can't be read.
+     */
+    public static Targets get(File targetsFile) {
+        return get(targetsFile.toPath());
+    }
+
+    /**
+     * An immutable snapshot of a target file, i.e. its non-blank lines in file order.
+     */
+    public static final class Targets {
+
+        private final Path file;
+        private final FileTime lastModified;
+        private final long size;
+        private final List<String> lines;
+
+        /**
+         * The trace id of the target in each line, computed on first access.
+         */
+        private volatile int[] lineTraceIds;
+
+        /**
+         * The trace ids of the distinct targets, computed on first access.
+         */
+        private volatile int[] traceIds;
+
+        /**
+         * The block statistics if this is a blocks.txt file, computed on first access.
+         */
+        private volatile BlockCounts blockCounts;
+
+        private Targets(Path file, FileTime lastModified, long size, List<String> lines) {
+            this.file = file;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.lines = lines;
+        }
+
+        /**
+         * Memory-maps the given target file and splits it into lines.
+         *
+         * @param file The target file.
+         * @param attributes The attributes of the file at the time it is read.
+         * @return Returns the targets described by the file.
+         */
+        private static Targets load(Path file, BasicFileAttributes attributes) {
+
+            final CharBuffer content;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                content = StandardCharsets.UTF_8.decode(buffer);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Couldn't read target file " + file, e);
+            }
+
+            final List<String> lines = new ArrayList<>();
+            int start = 0;
+            for (int i = 0; i <= content.length(); i++) {
+                if (i == content.length() || content.charAt(i) == '\n') {
+                    int end = i > start && content.charAt(i - 1) == '\r' ? i - 1 : i;
+                    if (end > start) {
+                        lines.add(content.subSequence(start, end).toString());
+                    }
+                    start = i + 1;
+                }
+            }
+
+            Log.println("Number of targets in " + file.getFileName() + ": " + lines.size());
+            return new Targets(file, attributes.lastModifiedTime(), attributes.size(),
+                    Collections.unmodifiableList(lines));
+        }
+
+        /**
+         * Returns the targets, i.e. the non-blank lines of the target file, in file order.
+         *
+         * @return Returns an unmodifiable, indexed view of the targets.
+         */
+        public List<String> getLines() {
+            return lines;
+        }
+
+        /**
+         * Returns the number of targets.
+         *
+         * @return Returns the number of non-blank lines of the target file.
+         */
+        public int size() {
+            return lines.size();
+        }
+
+        /**
+         * Returns the ids of the targets in the {@link TraceDictionary} of the app, which is located in the directory
+         * of the target file.
+         *
+         * @return Returns the ids of the distinct targets in file order.
+         */
+        public int[] getTraceIds() {
+            int[] ids = traceIds;
+            if (ids == null) {
+                ids = TraceStore.forApp(file.getParent()).getDictionary().idsOf(lines);
+                traceIds = ids;
+            }
+            return ids;
+        }
+
+        /**
+         * Determines which targets are covered by the given traces.
+         *
+         * @param traces The ids of the traces.
+         * @return Returns a bit set where the i-th bit is set if the target in the i-th line is covered.
+         */
+        public BitSet coverageOf(BitSet traces) {
+
+            int[] ids = lineTraceIds;
+            if (ids == null) {
+                TraceDictionary dictionary = TraceStore.forApp(file.getParent()).getDictionary();
+                ids = new int[lines.size()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = dictionary.idOf(lines.get(i));
+                }
+                lineTraceIds = ids;
+            }
+
+            BitSet covered = new BitSet(ids.length);
+            for (int i = 0; i < ids.length; i++) {
+                if (traces.get(ids[i])) {
+                    covered.set(i);
+                }
+            }
+            return covered;
+        }
+
+        /**
+         * Returns the name of the target file, e.g. branches.txt.
+         *
+         * @return Returns the name of the target file.
+         */
+        public String getName() {
+            return file.getFileName().toString();
+        }
+
+        /**
+         * Returns a fingerprint of the content of the target file. Coverage bit sets computed against a target file
+         * are only valid as long as the fingerprint doesn't change.
+         *
+         * @return Returns the fingerprint of the targets.
+         */
+        public long getFingerprint() {
+            return ((long) lines.hashCode() << 32) | lines.size();
+        }
+
+        /**
+         * Returns the number of methods, branches and instructions described by a blocks.txt file.
+         *
+         * @return Returns the block statistics.
+         */
+        public BlockCounts getBlockCounts() {
+            BlockCounts counts = blockCounts;
+            if (counts == null) {
+                counts = BlockCounts.of(file, lines);
+                blockCounts = counts;
+            }
+            return counts;
+        }
+    }
+
+    /**
+     * The total number of methods, branches and instructions described by a blocks.txt file.
+     */
+    public static final class BlockCounts {
+
+        private final int numberOfMethods;
+        private final int numberOfBranches;
+        private final int numberOfInstructions;
+
+        /**
+         * The number of instructions of the block in each line.
+         */
+        private final int[] blockSizes;
+
+        /**
+         * The index of the method of the block in each line, {@code -1} for malformed entries.
+         */
+        private final int[] blockMethods;
+
+        /**
+         * The i-th bit is set if the block in the i-th line is a branch.
+         */
+        private final BitSet branchBlocks;
+
+        private BlockCounts(int numberOfMethods, int[] blockSizes, int[] blockMethods, BitSet branchBlocks) {
+            this.numberOfMethods = numberOfMethods;
+            this.numberOfBranches = branchBlocks.cardinality();
+            this.numberOfInstructions = Arrays.stream(blockSizes).sum();
+            this.blockSizes = blockSizes;
+            this.blockMethods = blockMethods;
+            this.branchBlocks = branchBlocks;
+        }
+
+        /**
+         * Computes the block statistics from the lines of a blocks.txt file.
+         *
+         * @param file The blocks.txt file.
+         * @param blocks The lines of the blocks.txt file.
+         * @return Returns the block statistics.
+         */
+        private static BlockCounts of(Path file, List<String> blocks) {
+
+            final Map<String, Integer> methods = new HashMap<>();
+            final int[] blockSizes = new int[blocks.size()];
+            final int[] blockMethods = new int[blocks.size()];
+            final BitSet branchBlocks = new BitSet(blocks.size());
+
+            // an entry looks as follows: class name -> method name -> block id -> block size -> isBranch
+            for (int i = 0; i < blocks.size(); i++) {
+                final String block = blocks.get(i);
+                final String[] tuple = block.split("->");
+                if (tuple.length == 5) {
+                    final String method = tuple[0].trim() + "->" + tuple[1].trim();
+                    blockMethods[i] = methods.computeIfAbsent(method, m -> methods.size());
+                    blockSizes[i] = Integer.parseInt(tuple[3].trim());
+                    branchBlocks.set(i, tuple[4].equals("isBranch"));
+                } else {
+                    blockMethods[i] = -1;
+                    Log.println("Malformed entry in " + file + ": " + block);
+                }
+            }
+
+            return new BlockCounts(methods.size(), blockSizes, blockMethods, branchBlocks);
+        }
+
+        /**
+         * Returns the total number of methods.
+         *
+         * @return Returns the total number of methods.
+         */
+        public int getNumberOfMethods() {
+            return numberOfMethods;
+        }
+
+        /**
+         * Returns the total number of branches.
+         *
+         * @return Returns the total number of branches.
+         */
+        public int getNumberOfBranches() {
+            return numberOfBranches;
+        }
+
+        /**
+         * Returns the total number of instructions.
+         *
+         * @return Returns the total number of instructions.
+         */
+        public int getNumberOfInstructions() {
+            return numberOfInstructions;
+        }
+
+        /**
+         * Returns the number of distinct methods the covered blocks belong to.
+         *
+         * @param covered The covered blocks, see {@link Targets#coverageOf(BitSet)}.
+         * @return Returns the number of covered methods.
+         */
+        public int getCoveredMethods(BitSet covered) {
+            BitSet methods = new BitSet(numberOfMethods);
+            covered.stream().filter(i -> blockMethods[i] >= 0).forEach(i -> methods.set(blockMethods[i]));
+            return methods.cardinality();
+        }
+
+        /**
+         * Returns the number of covered branches.
+         *
+         * @param covered The covered blocks, see {@link Targets#coverageOf(BitSet)}.
+         * @return Returns the number of covered branches.
+         */
+        public int getCoveredBranches(BitSet covered) {
+            BitSet branches = (BitSet) covered.clone();
+            branches.and(branchBlocks);
+            return branches.cardinality();
+        }
+
+        /**
+         * Returns the number of instructions of the covered blocks.
+         *
+         * @param covered The covered blocks, see {@link Targets#coverageOf(BitSet)}.
+         * @return Returns the number of covered instructions.
+         */
+        public int getCoveredInstructions(BitSet covered) {
+            return covered.stream().map(i -> blockSizes[i]).sum();
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package org.mate.traces;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * A bounded LRU cache of the decoded traces files shared by all apps, i.e. the trace ids of a traces file, its branch
+ * distance traces and its coverage bit sets. The size of the cache is bounded by the (estimated) number of bytes of the cached entries, the
+ * least recently used traces files are evicted first.
+ *
+ * The cached values are shared among all readers and must not be modified. Each entry carries the {@link Stamp} of
+ * the traces file the values have been read from, which readers take before reading the file. A value is only
+ * returned if the stamp still matches the file, thus a reader that caches the content of a traces file that has been
+ * replaced (and invalidated) in the meantime doesn't make the stale content visible to later readers.
+ */
+final class TraceCache {
+
+    /**
+     * The estimated number of bytes of an entry without its ids and bit sets.
+     */
+    private static final long ENTRY_OVERHEAD = 128;
+
+    /**
+     * The cached traces files in access order keyed by their (normalized) path.
+     */
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The maximal number of bytes of the cached entries.
+     */
+    private long capacity;
+
+    /**
+     * The current number of bytes of the cached entries.
+     */
+    private long weight = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+
+    TraceCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Identifies the content of a traces file by its file key, modification time and size. Since traces files are
+     * never modified in place but replaced, a new content comes with a new file key.
+     */
+    static final class Stamp {
+
+        private final Object fileKey;
+        private final long lastModified;
+        private final long size;
+
+        Stamp(Object fileKey, long lastModified, long size) {
+            this.fileKey = fileKey;
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+
+        /**
+         * Takes the stamp of the given traces file.
+         *
+         * @param traceFile The traces file.
+         * @return Returns the stamp of the current content of the file.
+         * @throws IOException If the attributes of the file can't be read.
+         */
+        static Stamp of(Path traceFile) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(traceFile, BasicFileAttributes.class);
+            return new Stamp(attributes.fileKey(), attributes.lastModifiedTime().toMillis(), attributes.size());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Stamp)) {
+                return false;
+            }
+            Stamp other = (Stamp) o;
+            return lastModified == other.lastModified && size == other.size && Objects.equals(fileKey, other.fileKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fileKey, lastModified, size);
+        }
+    }
+
+    /**
+     * The cached content of a single traces file.
+     */
+    private static final class Entry {
+
+        private final Stamp stamp;
+
+        private int[] ids;
+
+        private String[] distances;
+
+        /**
+         * The coverage bit sets keyed by the name of the target file.
+         */
+        private final Map<String, TraceFile.Coverage> coverage = new HashMap<>();
+
+        private Entry(Stamp stamp) {
+            this.stamp = stamp;
+        }
+
+        private long weight() {
+            long weight = ENTRY_OVERHEAD + (ids != null ? (long) ids.length * Integer.BYTES : 0);
+            if (distances != null) {
+                for (String distance : distances) {
+                    weight += ENTRY_OVERHEAD / 2 + distance.length();
+                }
+            }
+            for (TraceFile.Coverage section : coverage.values()) {
+                weight += ENTRY_OVERHEAD + section.targets.size() / Byte.SIZE;
+            }
+            return weight;
+        }
+    }
+
+    /**
+     * Returns the cached trace ids of the given traces file.
+     *
+     * @param traceFile The (normalized) path of the traces file.
+     * @param stamp The current stamp of the traces file.
+     * @return Returns the trace ids or {@code null} if they are not cached.
+     */
+    synchronized int[] getIds(Path traceFile, Stamp stamp) {
+        Entry entry = get(traceFile, stamp);
+        return count(entry != null ? entry.ids : null);
+    }
+
+    /**
+     * Caches the trace ids of the given traces file.
+     *
+     * @param traceFile The (normalized) path of the traces file.
+     * @param stamp The stamp of the traces file taken before the ids have been read.
+     * @param ids The trace ids.
+     */
+    synchronized void putIds(Path traceFile, Stamp stamp, int[] ids) {
+        update(traceFile, stamp, entry -> entry.ids = ids);
+    }
+
+    /**
+     * Returns the cached branch distance traces of the given traces file.
+     *
+     * @param traceFile The (normalized) path of the traces file.
+     * @param stamp The current stamp of the traces file.
+     * @return Returns the distance traces or {@code null} if they are not cached.
+     */
+    synchronized String[] getDistances(Path traceFile, Stamp stamp) {
+        Entry entry = get(traceFile, stamp);
+        return count(entry != null ? entry.distances : null);
+    }
+
+    /**
+     * Caches the branch distance traces of the given traces file.
+     *
+     * @param traceFile The (normalized) path of the traces file.
+     * @param stamp The stamp of the traces file taken before the distance traces have been read.
+     * @param distances The distance traces.
+     */
+    synchronized void putDistances(Path traceFile, Stamp stamp, String[] distances) {
+        update(traceFile, stamp, entry -> entry.distances = distances);
+    }
+
+    /**
+     * Returns the cached coverage of the given traces file.
+     *
+     * @param traceFile The (normalized) path of the traces file.
+     * @param stamp The current stamp of the traces file.
+     * @param targetFile The name of the target file, e.g. branches.txt.
+     * @return Returns the coverage or {@code null} if it is not cached.
+     */
+    synchronized TraceFile.Coverage getCoverage(Path traceFile, Stamp stamp, String targetFile) {
+        Entry entry = get(traceFile, stamp);
+        return count(entry != null ? entry.coverage.get(targetFile) : null);
+    }
+
+    /**
+     * Caches the coverage of the given traces file.
+     *
+     * @param traceFile The (normalized) path of the traces file.
+     * @param stamp The stamp of the traces file taken before the coverage has been read.
+     * @param targetFile The name of the target file, e.g. branches.txt.
+     * @param coverage The coverage bit set.
+     */
+    synchronized void putCoverage(Path traceFile, Stamp stamp, String targetFile, TraceFile.Coverage coverage) {
+        update(traceFile, stamp, entry -> entry.coverage.put(targetFile, coverage));
+    }
+
+    /**
+     * Removes the given traces file from the cache, e.g. because it has been (re-)written.
+     *
+     * @param traceFile The (normalized) path of the traces file.
+     */
+    synchronized void invalidate(Path traceFile) {
+        Entry entry = entries.remove(traceFile);
+        if (entry != null) {
+            weight -= entry.weight();
+        }
+    }
+
+    /**
+     * Sets the maximal number of bytes of the cached entries, {@code 0} disables the cache.
+     *
+     * @param capacity The new capacity in bytes.
+     */
+    synchronized void setCapacity(long capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("The capacity of the trace cache must not be negative!");
+        }
+        this.capacity = capacity;
+        evict();
+    }
+
+    /**
+     * Returns a summary of the cache usage.
+     *
+     * @return Returns the number of entries, the weight and the number of hits and misses.
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format("TraceCache{entries=%d, weight=%d, capacity=%d, hits=%d, misses=%d}",
+                entries.size(), weight, capacity, hits, misses);
+    }
+
+    /**
+     * Records a cache hit or miss.
+     *
+     * @param value The cached value or {@code null}.
+     * @return Returns the given value.
+     */
+    private <T> T count(T value) {
+        if (value != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the entry of the given traces file if it matches the given stamp. An outdated entry is removed.
+     *
+     * @param traceFile The (normalized) path of the traces file.
+     * @param stamp The current stamp of the traces file.
+     * @return Returns the entry or {@code null} if there is no up-to-date entry.
+     */
+    private Entry get(Path traceFile, Stamp stamp) {
+        Entry entry = entries.get(traceFile);
+        if (entry != null && !entry.stamp.equals(stamp)) {
+            invalidate(traceFile);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Updates the entry of the given traces file and evicts the least recently used entries if necessary. An entry
+     * with a different stamp is replaced.
+     *
+     * @param traceFile The (normalized) path of the traces file.
+     * @param stamp The stamp of the traces file the new value has been read from.
+     * @param update The update of the entry.
+     */
+    private void update(Path traceFile, Stamp stamp, Consumer<Entry> update) {
+
+        if (capacity == 0) {
+            return;
+        }
+
+        Entry entry = entries.get(traceFile);
+        long previous = 0;
+        if (entry == null || !entry.stamp.equals(stamp)) {
+            if (entry != null) {
+                weight -= entry.weight();
+            }
+            entry = new Entry(stamp);
+            entries.put(traceFile, entry);
+        } else {
+            previous = entry.weight();
+        }
+
+        update.accept(entry);
+        weight += entry.weight() - previous;
+        evict();
+    }
+
+    /**
+     * Evicts the least recently used entries until the weight doesn't exceed the capacity.
+     */
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (weight > capacity && iterator.hasNext()) {
+            weight -= iterator.next().weight();
+            iterator.remove();
+        }
+    }
+}
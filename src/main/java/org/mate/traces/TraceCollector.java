@@ -0,0 +1,285 @@
+package org.mate.traces;
+
+import org.apache.commons.io.FileUtils;
+import org.mate.io.BlobStore;
+import org.mate.util.Log;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Removes the traces and line coverage data of dead chromosomes, i.e. of chromosomes that are no longer part of the
+ * search, e.g. discarded offspring. The client declares the live chromosomes of an app via {@link #retain(String,
+ * Set)}, every other chromosome is dead. Apps for which no live chromosomes have been declared are never collected.
+ *
+ * A dead chromosome is only removed once it reaches the minimal age, which prevents removing the data of a new
+ * chromosome that the client hasn't declared live yet. If a maximal size is configured, dead chromosomes are only
+ * removed (oldest first) while the data of the app exceeds that size, otherwise all dead chromosomes are removed. The
+ * size is the actual disk usage of the traces, coverage and blobs of the app, i.e. files shared via hard links are
+ * counted once.
+ */
+public final class TraceCollector {
+
+    /**
+     * The directories in the app directory that contain data per chromosome.
+     */
+    private static final List<String> CHROMOSOME_DIRS = List.of("traces", "coverage");
+
+    private final Path appsDir;
+    private final long minAge;
+    private final long maxSize;
+
+    /**
+     * The live chromosomes keyed by the package name of the app.
+     */
+    private final Map<String, Set<String>> liveChromosomes = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new collector.
+     *
+     * @param appsDir The apps directory.
+     * @param minAge The minimal age in milliseconds of a dead chromosome before it is removed.
+     * @param maxSize The maximal number of bytes of the traces, coverage and blobs of an app, {@code 0} removes all
+     *         dead chromosomes regardless of the size.
+     */
+    public TraceCollector(Path appsDir, long minAge, long maxSize) {
+        this.appsDir = appsDir;
+        this.minAge = minAge;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Declares the live chromosomes of an app, replacing the previously declared ones.
+     *
+     * @param packageName The package name of the app.
+     * @param chromosomes The live chromosomes.
+     */
+    public void retain(String packageName, Set<String> chromosomes) {
+        liveChromosomes.put(packageName, Set.copyOf(chromosomes));
+    }
+
+    /**
+     * Collects the dead chromosomes of all apps for which live chromosomes have been declared.
+     */
+    public void collect() {
+        for (String packageName : liveChromosomes.keySet()) {
+            try {
+                collect(packageName);
+            } catch (RuntimeException e) {
+                Log.printError("Couldn't collect traces of " + packageName + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Collects the dead chromosomes of the given app.
+     *
+     * @param packageName The package name of the app.
+     * @return Returns the number of removed chromosomes.
+     */
+    public synchronized int collect(String packageName) {
+
+        final Set<String> live = liveChromosomes.get(packageName);
+
+        if (live == null) {
+            // we don't know which chromosomes are still needed
+            return 0;
+        }
+
+        final long start = System.currentTimeMillis();
+        final Path appDir = appsDir.resolve(packageName);
+
+        try {
+            final DiskUsage usage = maxSize > 0 ? DiskUsage.of(appDir) : null;
+            int removed = 0;
+
+            for (Map.Entry<String, List<Path>> chromosome : deadChromosomes(appDir, live, start).entrySet()) {
+
+                if (usage != null && usage.size <= maxSize) {
+                    break;
+                }
+
+                for (Path data : chromosome.getValue()) {
+                    if (usage != null) {
+                        usage.remove(data);
+                    }
+                    if (data.getParent().getFileName().toString().equals("traces")) {
+                        TraceStore.forApp(appDir).delete(chromosome.getKey());
+                    } else {
+                        FileUtils.forceDelete(data.toFile());
+                    }
+                }
+                removed++;
+            }
+
+            int blobs = removed > 0 ? BlobStore.forApp(appDir).collect() : 0;
+
+            if (removed > 0) {
+                Log.println("Removed " + removed + " dead chromosomes and " + blobs + " blobs of " + packageName
+                        + " in " + (System.currentTimeMillis() - start) + " ms.");
+            }
+            return removed;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't collect traces of " + packageName, e);
+        }
+    }
+
+    /**
+     * Returns the data of the dead chromosomes that reached the minimal age, oldest first. A chromosome is as old as
+     * its most recently modified data.
+     *
+     * @param appDir The app directory.
+     * @param live The live chromosomes.
+     * @param now The current time in milliseconds.
+     * @return Returns the traces files/directories and coverage directories keyed by the dead chromosomes.
+     * @throws IOException If the chromosome directories can't be listed.
+     */
+    private Map<String, List<Path>> deadChromosomes(Path appDir, Set<String> live, long now) throws IOException {
+
+        final Map<String, List<Path>> dead = new HashMap<>();
+
+        for (String dir : CHROMOSOME_DIRS) {
+            Path chromosomesDir = appDir.resolve(dir);
+            if (Files.isDirectory(chromosomesDir)) {
+                try (Stream<Path> chromosomes = Files.list(chromosomesDir)) {
+                    chromosomes.filter(chromosome -> !live.contains(chromosome.getFileName().toString()))
+                            .forEach(chromosome -> dead.computeIfAbsent(chromosome.getFileName().toString(),
+                                    name -> new ArrayList<>()).add(chromosome));
+                }
+            }
+        }
+
+        final Map<String, Long> lastModified = new HashMap<>();
+        dead.forEach((chromosome, data) -> lastModified.put(chromosome,
+                data.stream().mapToLong(TraceCollector::lastModified).max().orElse(0)));
+
+        return dead.entrySet().stream()
+                .filter(chromosome -> now - lastModified.get(chromosome.getKey()) >= minAge)
+                .sorted(Comparator.comparingLong(chromosome -> lastModified.get(chromosome.getKey())))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> a, LinkedHashMap::new));
+    }
+
+    /**
+     * Returns the last modification time of the given file or directory, which is updated whenever a traces file is
+     * added to the directory of a test suite.
+     *
+     * @param file The file or directory.
+     * @return Returns the last modification time in milliseconds.
+     */
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The disk usage of the traces, coverage and blobs of an app. Since files are shared among chromosomes via hard
+     * links, see {@link BlobStore}, each file is counted once and removing a file only frees its size once the last
+     * link is removed. A file only referenced by its blob counts as freed, since the blob is deleted by
+     * {@link BlobStore#collect()}.
+     */
+    private static final class DiskUsage {
+
+        /**
+         * The number of links to each file keyed by the file key.
+         */
+        private final Map<Object, Integer> links = new HashMap<>();
+
+        /**
+         * The sizes of the files keyed by the file key.
+         */
+        private final Map<Object, Long> sizes = new HashMap<>();
+
+        /**
+         * The file keys of the blobs.
+         */
+        private final Set<Object> blobs = new HashSet<>();
+
+        /**
+         * The number of bytes occupied by the files.
+         */
+        private long size = 0;
+
+        /**
+         * Determines the disk usage of the given app.
+         *
+         * @param appDir The app directory.
+         * @return Returns the disk usage of the app.
+         * @throws IOException If the files can't be listed.
+         */
+        private static DiskUsage of(Path appDir) throws IOException {
+            DiskUsage usage = new DiskUsage();
+            for (String dir : CHROMOSOME_DIRS) {
+                usage.walk(appDir.resolve(dir), (key, file) -> usage.add(key, file, false));
+            }
+            usage.walk(appDir.resolve(BlobStore.BLOBS_DIR), (key, file) -> usage.add(key, file, true));
+            return usage;
+        }
+
+        private void add(Object key, BasicFileAttributes file, boolean blob) {
+            if (links.merge(key, 1, Integer::sum) == 1) {
+                sizes.put(key, file.size());
+                size += file.size();
+            }
+            if (blob) {
+                blobs.add(key);
+            }
+        }
+
+        /**
+         * Removes the files of the given file or directory and subtracts the freed bytes.
+         *
+         * @param data The file or directory to be removed.
+         * @throws IOException If the files can't be listed.
+         */
+        private void remove(Path data) throws IOException {
+            walk(data, (key, file) -> {
+                int remaining = links.merge(key, -1, Integer::sum);
+                if (remaining == 0 || remaining == 1 && blobs.contains(key)) {
+                    size -= sizes.getOrDefault(key, 0L);
+                    sizes.remove(key);
+                }
+            });
+        }
+
+        /**
+         * Visits the regular files of the given file or directory along with their file keys. If the file system
+         * doesn't provide file keys, the path is used as key, i.e. hard links are counted as distinct files.
+         *
+         * @param root The file or directory.
+         * @param visitor Receives the file key and the attributes of each file.
+         * @throws IOException If the files can't be listed.
+         */
+        private void walk(Path root, BiConsumer<Object, BasicFileAttributes> visitor) throws IOException {
+            if (!Files.exists(root)) {
+                return;
+            }
+            try (Stream<Path> files = Files.walk(root)) {
+                for (Path file : files.collect(Collectors.toList())) {
+                    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    if (attributes.isRegularFile()) {
+                        Object key = attributes.fileKey();
+                        visitor.accept(key != null ? key : file.toAbsolutePath().normalize(), attributes);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package org.mate.traces;
+
+import org.mate.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns a dense int id to each trace of an app, e.g. 'class->method->12'. The dictionary is seeded with the
+ * instrumented targets, i.e. the lines of the branches.txt, blocks.txt and instrumentation-points.txt files, and
+ * extended whenever an unknown trace is encountered, e.g. the trace of a virtual entry or exit vertex. Ids are never
+ * re-assigned, since they are referenced by the ingested traces files, see {@link TraceFile}. Since the dictionary is
+ * never compacted, it must only hold traces of the instrumented code, whose number is bounded by the size of the app.
+ * In particular, branch distance traces, which carry a distance value, are not assigned an id, see
+ * {@link TraceFile#isDistanceTrace(String)}.
+ *
+ * The dictionary is persisted as text file ({@link #DICTIONARY_FILE}) in the app directory, where the trace with the
+ * id {@code i} is stored in line {@code i}. New traces are appended and synced by {@link #flush()}. A last line
+ * without a line break is the remainder of an interrupted flush and is discarded on load, since the ids of its traces
+ * haven't been referenced yet.
+ */
+public final class TraceDictionary {
+
+    /**
+     * The name of the file in the app directory that stores the dictionary.
+     */
+    static final String DICTIONARY_FILE = "traces.dict";
+
+    /**
+     * The instrumentation files the dictionary is seeded with, in this order.
+     */
+    private static final List<String> TARGET_FILES
+            = List.of("branches.txt", "blocks.txt", "instrumentation-points.txt");
+
+    private final Path dictionaryFile;
+
+    /**
+     * Maps a trace to its id.
+     */
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    /**
+     * Maps an id to its trace, only the first {@link #size} entries are valid. The reference is re-published after
+     * each insertion such that {@link #traceOf(int)} can be invoked without locking.
+     */
+    private volatile String[] traces = new String[1024];
+
+    /**
+     * The number of assigned ids.
+     */
+    private int size = 0;
+
+    /**
+     * The number of traces that have been written to the dictionary file.
+     */
+    private int persisted = 0;
+
+    private TraceDictionary(Path dictionaryFile) {
+        this.dictionaryFile = dictionaryFile;
+    }
+
+    /**
+     * Loads the dictionary of the given app or creates a new one seeded with the instrumented targets.
+     *
+     * @param appDir The app directory.
+     * @return Returns the dictionary of the app.
+     */
+    static TraceDictionary load(Path appDir) {
+
+        TraceDictionary dictionary = new TraceDictionary(appDir.resolve(DICTIONARY_FILE));
+
+        try {
+            if (Files.exists(dictionary.dictionaryFile)) {
+                dictionary.read();
+            } else {
+                for (String targetFile : TARGET_FILES) {
+                    Path targets = appDir.resolve(targetFile);
+                    if (Files.exists(targets)) {
+                        for (String target : Files.readAllLines(targets, StandardCharsets.UTF_8)) {
+                            if (!target.isBlank()) {
+                                dictionary.idOf(target);
+                            }
+                        }
+                    }
+                }
+                dictionary.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't load trace dictionary of " + appDir, e);
+        }
+
+        Log.println("Number of traces in dictionary of " + appDir.getFileName() + ": " + dictionary.size);
+        return dictionary;
+    }
+
+    /**
+     * Reads the dictionary file. A trailing incomplete line, i.e. the remainder of an interrupted flush, is truncated.
+     *
+     * @throws IOException If the dictionary file can't be read or truncated.
+     */
+    private void read() throws IOException {
+
+        byte[] bytes = Files.readAllBytes(dictionaryFile);
+
+        int start = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                int end = i > start && bytes[i - 1] == '\r' ? i - 1 : i;
+                add(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+
+        if (start < bytes.length) {
+            Log.printWarning("Discarding incomplete last line of trace dictionary " + dictionaryFile);
+            try (FileChannel channel = FileChannel.open(dictionaryFile, StandardOpenOption.WRITE)) {
+                channel.truncate(start);
+                channel.force(true);
+            }
+        }
+        persisted = size;
+    }
+
+    /**
+     * Returns the id of the given trace, assigning a new id if the trace is unknown.
+     *
+     * @param trace The trace.
+     * @return Returns the id of the trace.
+     */
+    public synchronized int idOf(String trace) {
+        Integer id = ids.get(trace);
+        return id != null ? id : add(trace);
+    }
+
+    /**
+     * Returns the ids of the given traces, assigning new ids to unknown traces. Duplicate traces are mapped to a single
+     * id, i.e. the returned ids are distinct and in order of first occurrence.
+     *
+     * @param traces The traces, e.g. the lines of the branches.txt file.
+     * @return Returns the ids of the distinct traces.
+     */
+    public synchronized int[] idsOf(Collection<String> traces) {
+        return traces.stream().mapToInt(this::idOf).distinct().toArray();
+    }
+
+    /**
+     * Returns the trace with the given id.
+     *
+     * @param id The id of the trace.
+     * @return Returns the trace.
+     * @throws IllegalArgumentException If the id has not been assigned.
+     */
+    public String traceOf(int id) {
+        String[] snapshot = traces;
+        String trace = id >= 0 && id < snapshot.length ? snapshot[id] : null;
+        if (trace == null) {
+            synchronized (this) {
+                if (id < 0 || id >= size) {
+                    throw new IllegalArgumentException("Unknown trace id: " + id);
+                }
+                trace = traces[id];
+            }
+        }
+        return trace;
+    }
+
+    /**
+     * Returns the number of assigned ids.
+     *
+     * @return Returns the size of the dictionary.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Appends the traces that have been added since the last flush to the dictionary file and syncs the file to disk.
+     * Must be invoked before the ids of these traces are persisted elsewhere. If the traces can't be appended
+     * entirely, the file is truncated to its previous length.
+     */
+    public synchronized void flush() {
+
+        if (persisted == size) {
+            return;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int id = persisted; id < size; id++) {
+            out.writeBytes(traces[id].getBytes(StandardCharsets.UTF_8));
+            out.write('\n');
+        }
+
+        try (FileChannel channel = FileChannel.open(dictionaryFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            long length = channel.size();
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, length + buffer.position());
+                }
+                channel.force(true);
+            } catch (IOException e) {
+                channel.truncate(length);
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't write trace dictionary " + dictionaryFile, e);
+        }
+        persisted = size;
+    }
+
+    /**
+     * Assigns the next id to the given trace.
+     *
+     * @param trace The new trace.
+     * @return Returns the assigned id.
+     */
+    private int add(String trace) {
+        String[] array = traces;
+        if (size == array.length) {
+            array = Arrays.copyOf(array, size * 2);
+        }
+        int id = size++;
+        ids.put(trace, id);
+        array[id] = trace;
+        // publishes the new entry
+        traces = array;
+        return id;
+    }
+}
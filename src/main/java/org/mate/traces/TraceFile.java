@@ -0,0 +1,306 @@
+package org.mate.traces;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The binary format of an ingested traces file. Instead of one line per trace, e.g. 'class->method->12', a binary
+ * traces file stores the ids of the distinct traces as assigned by the {@link TraceDictionary} of the app, followed
+ * by the coverage bit sets of the traces over the target files of the app, e.g. the branches.txt file, and the
+ * branch distance traces, which are stored as text since they are not part of the dictionary:
+ *
+ * <pre>
+ * magic ('M', 'T', 'R', 'C') | version (1 byte) | number of lines of the original file (varint)
+ *     | number of ids (varint) | ids in order of first occurrence (zigzag encoded delta to the previous id, varint)
+ *     | number of coverage sections (varint) | coverage sections
+ *     | number of distance traces (varint) | distance traces (varint length + UTF-8 each)
+ *
+ * coverage section := name of the target file (varint length + UTF-8) | fingerprint of the target file (8 bytes)
+ *     | number of words (varint) | words of the bit set (8 bytes each)
+ * </pre>
+ *
+ * Since the traces of a single action are mostly recorded in id order, the deltas are usually encoded in one or two
+ * bytes. Version 1 files carry no coverage sections and version 2 files no distance traces, i.e. their distance
+ * traces are part of the ids. Traces files without the magic bytes are plain text files that have not been ingested
+ * yet.
+ */
+final class TraceFile {
+
+    private static final byte[] MAGIC = {'M', 'T', 'R', 'C'};
+    private static final byte VERSION = 3;
+
+    /**
+     * The suffix of the temporary file a traces file is written to before it is moved in place.
+     */
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    /**
+     * The initial version without coverage sections.
+     */
+    private static final byte VERSION_WITHOUT_COVERAGE = 1;
+
+    /**
+     * The version that stores the distance traces as ids.
+     */
+    private static final byte VERSION_WITHOUT_DISTANCES = 2;
+
+    // utility class
+    private TraceFile() {
+    }
+
+    /**
+     * The decoded content of a binary traces file.
+     */
+    static final class Content {
+
+        /**
+         * The ids of the distinct traces in order of first occurrence.
+         */
+        final int[] ids;
+
+        /**
+         * The number of lines (traces including duplicates) of the original text file.
+         */
+        final int lines;
+
+        /**
+         * The coverage bit sets keyed by the name of the target file, e.g. branches.txt.
+         */
+        final Map<String, Coverage> coverage;
+
+        /**
+         * The distinct branch distance traces in order of first occurrence, see {@link #isDistanceTrace(String)}.
+         */
+        final String[] distances;
+
+        Content(int[] ids, int lines, String[] distances) {
+            this(ids, lines, new LinkedHashMap<>(), distances);
+        }
+
+        Content(int[] ids, int lines, Map<String, Coverage> coverage, String[] distances) {
+            this.ids = ids;
+            this.lines = lines;
+            this.coverage = coverage;
+            this.distances = distances;
+        }
+    }
+
+    /**
+     * The targets covered by the traces of a traces file.
+     */
+    static final class Coverage {
+
+        /**
+         * The fingerprint of the target file the bit set refers to, see
+         * {@link AppTargetsCache.Targets#getFingerprint()}.
+         */
+        final long fingerprint;
+
+        /**
+         * The i-th bit is set if the target in the i-th line of the target file is covered.
+         */
+        final BitSet targets;
+
+        Coverage(long fingerprint, BitSet targets) {
+            this.fingerprint = fingerprint;
+            this.targets = targets;
+        }
+    }
+
+    /**
+     * Checks whether the given traces file has been already converted into the binary format.
+     *
+     * @param traceFile The traces file.
+     * @return Returns {@code true} if the file is a binary traces file, otherwise {@code false}.
+     * @throws IOException If the file can't be read.
+     */
+    static boolean isBinary(Path traceFile) throws IOException {
+        try (InputStream in = Files.newInputStream(traceFile)) {
+            return Arrays.equals(in.readNBytes(MAGIC.length), MAGIC);
+        }
+    }
+
+    /**
+     * Checks whether the given trace is a branch distance trace, e.g. 'class->method->12:3'. Since a branch distance
+     * trace carries the distance value, there are arbitrarily many distinct distance traces per branch, thus they are
+     * stored per traces file and not assigned an id by the {@link TraceDictionary}.
+     *
+     * @param trace The trace.
+     * @return Returns {@code true} if the trace is a branch distance trace, otherwise {@code false}.
+     */
+    static boolean isDistanceTrace(String trace) {
+        return trace.indexOf(':') != -1;
+    }
+
+    /**
+     * Checks whether the given file is a temporary file created while writing a traces file.
+     *
+     * @param file The file to check.
+     * @return Returns {@code true} if the file is a temporary file, otherwise {@code false}.
+     */
+    static boolean isTemporary(Path file) {
+        return file.getFileName().toString().endsWith(TEMPORARY_SUFFIX);
+    }
+
+    /**
+     * Writes the given content in the binary format. The file is replaced atomically, thus concurrent readers either
+     * see the previous or the new content, and concurrent writers don't interfere with each other.
+     *
+     * @param traceFile The traces file to be written.
+     * @param content The trace ids and coverage bit sets.
+     * @throws IOException If writing the file fails.
+     */
+    static void write(Path traceFile, Content content) throws IOException {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(MAGIC.length + 12 + content.ids.length * 2);
+        out.write(MAGIC);
+        out.write(VERSION);
+        writeVarint(out, content.lines);
+        writeVarint(out, content.ids.length);
+
+        int previous = 0;
+        for (int id : content.ids) {
+            int delta = id - previous;
+            writeVarint(out, (delta << 1) ^ (delta >> 31));
+            previous = id;
+        }
+
+        writeVarint(out, content.coverage.size());
+        for (Map.Entry<String, Coverage> section : content.coverage.entrySet()) {
+            byte[] name = section.getKey().getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, name.length);
+            out.write(name);
+            out.write(ByteBuffer.allocate(Long.BYTES).putLong(section.getValue().fingerprint).array());
+            long[] words = section.getValue().targets.toLongArray();
+            writeVarint(out, words.length);
+            ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES * words.length);
+            buffer.asLongBuffer().put(words);
+            out.write(buffer.array());
+        }
+
+        writeVarint(out, content.distances.length);
+        for (String distance : content.distances) {
+            byte[] trace = distance.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, trace.length);
+            out.write(trace);
+        }
+
+        // each writer uses a temporary file of its own, e.g. concurrent readers storing re-computed coverage
+        Path temporaryFile = Files.createTempFile(traceFile.toAbsolutePath().getParent(),
+                traceFile.getFileName() + ".", TEMPORARY_SUFFIX);
+        try {
+            Files.write(temporaryFile, out.toByteArray());
+            Files.move(temporaryFile, traceFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * Reads a binary traces file.
+     *
+     * @param traceFile The traces file.
+     * @return Returns the decoded trace ids or {@code null} if the file is a text traces file.
+     * @throws IOException If reading the file fails or the file is a corrupted binary traces file.
+     */
+    static Content read(Path traceFile) throws IOException {
+
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(traceFile, StandardOpenOption.READ)) {
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                // read the whole file
+            }
+            buffer.flip();
+        }
+
+        if (buffer.remaining() < MAGIC.length
+                || !Arrays.equals(buffer.array(), 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+            return null;
+        }
+        buffer.position(MAGIC.length);
+
+        try {
+            byte version = buffer.get();
+            if (version != VERSION && version != VERSION_WITHOUT_DISTANCES && version != VERSION_WITHOUT_COVERAGE) {
+                throw new IOException("Unsupported traces file version " + version + ": " + traceFile);
+            }
+
+            int lines = readVarint(buffer);
+            int[] ids = new int[readVarint(buffer)];
+            int previous = 0;
+            for (int i = 0; i < ids.length; i++) {
+                int zigzag = readVarint(buffer);
+                previous += (zigzag >>> 1) ^ -(zigzag & 1);
+                ids[i] = previous;
+            }
+
+            Map<String, Coverage> coverage = new LinkedHashMap<>();
+            int sections = version == VERSION_WITHOUT_COVERAGE ? 0 : readVarint(buffer);
+            for (int i = 0; i < sections; i++) {
+                byte[] name = new byte[readVarint(buffer)];
+                buffer.get(name);
+                long fingerprint = buffer.getLong();
+                long[] words = new long[readVarint(buffer)];
+                buffer.asLongBuffer().get(words);
+                buffer.position(buffer.position() + words.length * Long.BYTES);
+                coverage.put(new String(name, StandardCharsets.UTF_8),
+                        new Coverage(fingerprint, BitSet.valueOf(words)));
+            }
+
+            String[] distances = new String[version == VERSION ? readVarint(buffer) : 0];
+            for (int i = 0; i < distances.length; i++) {
+                byte[] trace = new byte[readVarint(buffer)];
+                buffer.get(trace);
+                distances[i] = new String(trace, StandardCharsets.UTF_8);
+            }
+            return new Content(ids, lines, coverage, distances);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupted traces file: " + traceFile, e);
+        }
+    }
+
+    /**
+     * Writes the given value as unsigned LEB128 varint.
+     *
+     * @param out The output stream.
+     * @param value The value to write.
+     */
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Reads an unsigned LEB128 varint.
+     *
+     * @param buffer The buffer to read from.
+     * @return Returns the decoded value.
+     */
+    private static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+}
@@ -0,0 +1,150 @@
+package org.mate.traces;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An in-memory index of the traces files of an app, i.e. a mapping of a chromosome to the traces files stored in
+ * traces/chromosome (a single traces file for a test case, a directory of traces files for a test suite).
+ *
+ * A chromosome is looked up on the file system only once, afterwards the index is maintained incrementally by
+ * {@link #add(Path)} whenever the server stores a traces file, e.g. when traces are pulled from the emulator or copied
+ * from one chromosome to another. Thus, traces files must not be added to the traces directory behind the server's
+ * back once the respective chromosome has been indexed.
+ */
+final class TraceIndex {
+
+    private final Path tracesDir;
+
+    /**
+     * The traces files keyed by the chromosome.
+     */
+    private final Map<String, NavigableSet<Path>> chromosomes = new ConcurrentHashMap<>();
+
+    /**
+     * Whether all chromosomes of the traces directory have been indexed.
+     */
+    private volatile boolean complete = false;
+
+    TraceIndex(Path tracesDir) {
+        this.tracesDir = tracesDir.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Returns the traces files of the given chromosomes.
+     *
+     * @param chromosomes A list of chromosomes separated by '+' or {@code null} if all traces files should be
+     *         considered.
+     * @return Returns the traces files of the chromosomes.
+     * @throws UncheckedIOException If a chromosome is unknown or its traces files can't be listed.
+     */
+    List<File> getTraceFiles(String chromosomes) {
+
+        final List<File> traceFiles = new ArrayList<>();
+
+        if (chromosomes == null) {
+            indexAll();
+            for (NavigableSet<Path> files : this.chromosomes.values()) {
+                files.forEach(file -> traceFiles.add(file.toFile()));
+            }
+        } else {
+            for (String chromosome : chromosomes.split("\\+")) {
+                lookup(chromosome).forEach(file -> traceFiles.add(file.toFile()));
+            }
+        }
+
+        return traceFiles;
+    }
+
+    /**
+     * Adds a traces file that has been stored by the server to the index.
+     *
+     * @param traceFile The new traces file, e.g. traces/chromosome/entity.
+     * @throws IllegalArgumentException If the file is not located in the traces directory.
+     */
+    void add(Path traceFile) {
+
+        final Path relativePath = tracesDir.relativize(traceFile.toAbsolutePath().normalize());
+
+        if (relativePath.getNameCount() == 0 || relativePath.startsWith("..")) {
+            throw new IllegalArgumentException("Traces file " + traceFile + " is not located in " + tracesDir);
+        }
+
+        // a chromosome that hasn't been indexed yet is scanned entirely, which includes the new file
+        lookup(relativePath.getName(0).toString()).add(traceFile.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Removes the given chromosome from the index, e.g. because its traces files have been deleted.
+     *
+     * @param chromosome The chromosome.
+     */
+    void remove(String chromosome) {
+        chromosomes.remove(chromosome);
+    }
+
+    /**
+     * Returns the traces files of a single chromosome, scanning the chromosome on first access.
+     *
+     * @param chromosome The chromosome.
+     * @return Returns the traces files of the chromosome.
+     */
+    private NavigableSet<Path> lookup(String chromosome) {
+        NavigableSet<Path> files = chromosomes.get(chromosome);
+        if (files == null) {
+            files = chromosomes.computeIfAbsent(chromosome, this::scan);
+        }
+        return files;
+    }
+
+    /**
+     * Indexes all chromosomes of the traces directory that haven't been indexed yet.
+     */
+    private void indexAll() {
+
+        if (complete) {
+            return;
+        }
+
+        synchronized (this) {
+            if (!complete && Files.isDirectory(tracesDir)) {
+                try (Stream<Path> entries = Files.list(tracesDir)) {
+                    for (Path entry : entries.collect(Collectors.toList())) {
+                        lookup(entry.getFileName().toString());
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Couldn't list traces directory " + tracesDir, e);
+                }
+            }
+            complete = true;
+        }
+    }
+
+    /**
+     * Lists the traces files of the given chromosome on the file system.
+     *
+     * @param chromosome The chromosome.
+     * @return Returns the traces files of the chromosome.
+     */
+    private NavigableSet<Path> scan(String chromosome) {
+        try (Stream<Path> files = Files.walk(tracesDir.resolve(chromosome))) {
+            return files.filter(Files::isRegularFile)
+                    .filter(file -> !TraceFile.isTemporary(file))
+                    .map(file -> file.toAbsolutePath().normalize())
+                    .collect(Collectors.toCollection(ConcurrentSkipListSet::new));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't retrieve traces files of chromosome " + chromosome, e);
+        }
+    }
+}
@@ -0,0 +1,708 @@
+package org.mate.traces;
+
+import org.apache.commons.io.FileUtils;
+import org.mate.io.BlobStore;
+import org.mate.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Provides access to the traces files of an app, i.e. the traces.txt files pulled from the emulator and stored in
+ * the traces directory of the app. Once pulled, a traces file is ingested, i.e. converted in place into the compact
+ * binary format described in {@link TraceFile}, which refers to the traces by the ids of the app's
+ * {@link TraceDictionary}. Thus, a traces file is parsed only once and readers obtain the traces as ids or as the
+ * (shared) trace strings of the dictionary. Traces files that haven't been ingested, e.g. of a previous server
+ * version, are still read as text.
+ *
+ * A traces file represents the set of distinct traces of a single action or test case, in order of first
+ * occurrence. The bulk read operations, e.g. {@link #readIdSet(List)}, read the given traces files in parallel and
+ * merge the trace ids of the individual files, thus evaluating a whole population scales with the number of cores.
+ * The decoded traces files are kept in a bounded cache shared by all apps, see {@link #setCacheCapacity(long)}, since
+ * the same chromosomes, e.g. the members of an archive, are typically evaluated over and over again.
+ */
+public final class TraceStore {
+
+    /**
+     * The trace stores keyed by the (normalized) app directory.
+     */
+    private static final Map<Path, TraceStore> STORES = new ConcurrentHashMap<>();
+
+    /**
+     * The name of the directory in the app directory that contains the traces files.
+     */
+    private static final String TRACES_DIR = "traces";
+
+    /**
+     * The target files for which the coverage of a traces file is computed at ingestion time.
+     */
+    private static final List<String> TARGET_FILES = List.of("branches.txt", "blocks.txt", "methods.txt");
+
+    /**
+     * The default capacity of the cache in bytes.
+     */
+    private static final long DEFAULT_CACHE_CAPACITY = 64L * 1024 * 1024;
+
+    /**
+     * The initial size of the buffer for streamed traces.
+     */
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The cache of the decoded traces files of all apps.
+     */
+    private static final TraceCache CACHE = new TraceCache(DEFAULT_CACHE_CAPACITY);
+
+    private final Path appDir;
+    private final TraceDictionary dictionary;
+    private final TraceIndex index;
+
+    private TraceStore(Path appDir) {
+        this.appDir = appDir;
+        dictionary = TraceDictionary.load(appDir);
+        index = new TraceIndex(appDir.resolve(TRACES_DIR));
+    }
+
+    /**
+     * Returns the trace store of the given app.
+     *
+     * @param appDir The app directory, e.g. apps/com.zola.bmi.
+     * @return Returns the trace store of the app.
+     */
+    public static TraceStore forApp(Path appDir) {
+        return STORES.computeIfAbsent(appDir.toAbsolutePath().normalize(), TraceStore::new);
+    }
+
+    /**
+     * Returns the trace store of the given app.
+     *
+     * @param appDir The app directory, e.g. apps/com.zola.bmi.
+     * @return Returns the trace store of the app.
+     */
+    public static TraceStore forApp(File appDir) {
+        return forApp(appDir.toPath());
+    }
+
+    /**
+     * Sets the number of bytes the decoded traces files may occupy in the cache. The least recently used traces files
+     * are evicted once the capacity is exceeded.
+     *
+     * @param capacity The capacity of the cache in bytes, {@code 0} disables the cache.
+     */
+    public static void setCacheCapacity(long capacity) {
+        CACHE.setCapacity(capacity);
+    }
+
+    /**
+     * Flushes the dictionaries of all trace stores that have been opened, e.g. before the server exits. The
+     * dictionaries are still flushed if flushing one of them fails.
+     */
+    public static void flushAll() {
+        for (TraceStore store : STORES.values()) {
+            try {
+                store.dictionary.flush();
+            } catch (UncheckedIOException e) {
+                Log.printError(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the trace store of the app the given traces file belongs to, i.e. the app directory is the parent of
+     * the enclosing traces directory, e.g. apps/com.zola.bmi/traces/chromosome/entity.
+     *
+     * @param traceFile A traces file located in the traces directory of an app.
+     * @return Returns the trace store of the app.
+     * @throws IllegalArgumentException If the file is not located in a traces directory.
+     */
+    public static TraceStore forTraceFile(File traceFile) {
+        Path path = traceFile.toPath().toAbsolutePath().normalize();
+        for (Path dir = path.getParent(); dir != null && dir.getParent() != null; dir = dir.getParent()) {
+            if (dir.getFileName().toString().equals(TRACES_DIR)) {
+                return forApp(dir.getParent());
+            }
+        }
+        throw new IllegalArgumentException("Traces file " + traceFile + " is not located in a traces directory!");
+    }
+
+    /**
+     * Returns the dictionary mapping the traces of the app to ids.
+     *
+     * @return Returns the trace dictionary.
+     */
+    public TraceDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Returns the traces files of the given chromosomes. The traces files are served from an in-memory index, see
+     * {@link #register(Path)}.
+     *
+     * @param chromosomes A list of chromosomes separated by '+' or {@code null} if all traces files should be
+     *         considered.
+     * @return Returns the traces files of the chromosomes.
+     * @throws UncheckedIOException If a chromosome is unknown or its traces files can't be listed.
+     */
+    public List<File> getTraceFiles(String chromosomes) {
+        return index.getTraceFiles(chromosomes);
+    }
+
+    /**
+     * Registers a traces file that has been stored in the traces directory of the app, e.g. a traces file pulled from
+     * the emulator or copied from another chromosome. Must be invoked whenever the server stores a traces file. A
+     * previously cached content of the file is discarded.
+     *
+     * @param traceFile The new traces file.
+     */
+    public void register(Path traceFile) {
+        index.add(traceFile);
+        CACHE.invalidate(traceFile.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Copies a traces file to another chromosome, e.g. a test case from one test suite to another. The copy shares its
+     * content with the source file, see {@link BlobStore}, and is registered, see {@link #register(Path)}.
+     *
+     * @param source The traces file to be copied.
+     * @param target The target traces file, which must not exist yet.
+     * @throws IOException If the traces file can't be copied.
+     */
+    public void copy(Path source, Path target) throws IOException {
+        BlobStore.forApp(appDir).copy(source, target);
+        register(target);
+    }
+
+    /**
+     * Deletes the traces file(s) of the given chromosome and drops them from the index and the cache.
+     *
+     * @param chromosome The chromosome, i.e. a test case or a test suite.
+     * @throws IOException If the traces files can't be deleted.
+     */
+    public void delete(String chromosome) throws IOException {
+
+        Path chromosomeDir = appDir.resolve(TRACES_DIR).resolve(chromosome);
+        index.remove(chromosome);
+
+        if (Files.exists(chromosomeDir)) {
+            try (Stream<Path> files = Files.walk(chromosomeDir)) {
+                files.forEach(file -> CACHE.invalidate(file.toAbsolutePath().normalize()));
+            }
+            FileUtils.forceDelete(chromosomeDir.toFile());
+        }
+    }
+
+    /**
+     * Converts the given (text) traces file into the binary format. Besides the trace ids, the binary file stores
+     * the coverage of the traces over each target file of the app, e.g. the branches.txt file. Files that have been
+     * already ingested are left untouched.
+     *
+     * @param traceFile The traces file pulled from the emulator.
+     * @return Returns the number of traces (lines) of the original traces file.
+     */
+    public int ingest(Path traceFile) {
+        try {
+            if (TraceFile.isBinary(traceFile)) {
+                return TraceFile.read(traceFile).lines;
+            }
+
+            long start = System.currentTimeMillis();
+            TraceFile.Content content = parse(traceFile);
+            store(traceFile, content);
+
+            Log.println("Ingesting " + content.lines + " traces (" + content.ids.length + " distinct) took: "
+                    + (System.currentTimeMillis() - start) + " ms.");
+            return content.lines;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't ingest traces file " + traceFile, e);
+        }
+    }
+
+    /**
+     * Receives the traces streamed from the emulator, i.e. the (text) traces are parsed while they are received without
+     * writing them to a text file first. Optionally, the received traces are archived as text file. The binary traces
+     * file is only written by {@link StreamedTraces#store(Path)}, which allows the caller to validate the stream, e.g.
+     * the exit code of the streaming process, before the traces are stored.
+     *
+     * @param in The stream of the text traces, e.g. the output of 'adb exec-out cat traces.txt'.
+     * @param archiveFile The file the text traces are copied to or {@code null} if they shouldn't be archived.
+     * @return Returns the received traces.
+     */
+    public StreamedTraces receive(InputStream in, Path archiveFile) {
+
+        long start = System.currentTimeMillis();
+
+        if (archiveFile != null) {
+            try {
+                Files.createDirectories(archiveFile.getParent());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Couldn't create archive directory for " + archiveFile, e);
+            }
+        }
+
+        try (OutputStream archive = archiveFile != null ? Files.newOutputStream(archiveFile) : null) {
+
+            Parser parser = new Parser();
+            byte[] chunk = new byte[STREAM_BUFFER_SIZE];
+            int length = 0;
+            long bytes = 0;
+            int read;
+
+            while ((read = in.read(chunk, length, chunk.length - length)) != -1) {
+
+                if (archive != null) {
+                    archive.write(chunk, length, read);
+                }
+                length += read;
+                bytes += read;
+
+                // keep the incomplete last line for the next chunk
+                int rest = parser.accept(ByteBuffer.wrap(chunk), length);
+                System.arraycopy(chunk, rest, chunk, 0, length - rest);
+                length -= rest;
+
+                if (length == chunk.length) {
+                    // a single line exceeds the buffer
+                    chunk = Arrays.copyOf(chunk, chunk.length * 2);
+                }
+            }
+
+            parser.finish(ByteBuffer.wrap(chunk), length);
+
+            Log.println("Streaming " + parser.lines + " traces (" + parser.traces.size() + " distinct) took: "
+                    + (System.currentTimeMillis() - start) + " ms.");
+            return new StreamedTraces(parser, bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't receive traces", e);
+        }
+    }
+
+    /**
+     * The traces received by {@link #receive(InputStream, Path)} that haven't been stored yet. The traces are only
+     * added to the dictionary once they are stored.
+     */
+    public final class StreamedTraces {
+
+        private final Parser parser;
+        private final long bytes;
+
+        private StreamedTraces(Parser parser, long bytes) {
+            this.parser = parser;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Returns the number of received bytes.
+         *
+         * @return Returns the length of the text traces in bytes.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Returns the number of received traces.
+         *
+         * @return Returns the number of traces (lines) including duplicates.
+         */
+        public int getLines() {
+            return parser.lines;
+        }
+
+        /**
+         * Writes the binary traces file, see {@link #ingest(Path)}.
+         *
+         * @param traceFile The binary traces file to be written.
+         */
+        public void store(Path traceFile) {
+            try {
+                TraceStore.this.store(traceFile, parser.toContent());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Couldn't store traces into " + traceFile, e);
+            }
+        }
+    }
+
+    /**
+     * Computes the coverage of the given traces over the target files of the app and writes the binary traces file.
+     *
+     * @param traceFile The traces file.
+     * @param content The parsed traces.
+     * @throws IOException If writing the file fails.
+     */
+    private void store(Path traceFile, TraceFile.Content content) throws IOException {
+
+        BitSet ids = toBitSet(content.ids);
+        for (String targetFile : TARGET_FILES) {
+            Path targetsFile = appDir.resolve(targetFile);
+            if (Files.exists(targetsFile)) {
+                AppTargetsCache.Targets targets = AppTargetsCache.get(targetsFile);
+                content.coverage.put(targets.getName(),
+                        new TraceFile.Coverage(targets.getFingerprint(), targets.coverageOf(ids)));
+            }
+        }
+
+        // the new traces need to be persisted before they are referenced
+        dictionary.flush();
+        TraceFile.write(traceFile, content);
+    }
+
+    /**
+     * Reads the ids of the distinct traces of the given traces file.
+     *
+     * @param traceFile The traces file.
+     * @return Returns the trace ids in order of first occurrence.
+     */
+    public int[] readIds(File traceFile) {
+        return ids(traceFile).clone();
+    }
+
+    /**
+     * Reads the ids of the distinct traces of the given traces file, preferably from the cache. The branch distance
+     * traces are not included, see {@link #distances(File)}.
+     *
+     * @param traceFile The traces file.
+     * @return Returns the (shared) trace ids in order of first occurrence, which must not be modified.
+     */
+    private int[] ids(File traceFile) {
+        Path path = traceFile.toPath().toAbsolutePath().normalize();
+        TraceCache.Stamp stamp = stamp(path);
+        int[] ids = CACHE.getIds(path, stamp);
+        return ids != null ? ids : load(path, stamp).ids;
+    }
+
+    /**
+     * Reads the distinct branch distance traces of the given traces file, preferably from the cache.
+     *
+     * @param traceFile The traces file.
+     * @return Returns the (shared) distance traces in order of first occurrence, which must not be modified.
+     */
+    private String[] distances(File traceFile) {
+        Path path = traceFile.toPath().toAbsolutePath().normalize();
+        TraceCache.Stamp stamp = stamp(path);
+        String[] distances = CACHE.getDistances(path, stamp);
+        return distances != null ? distances : load(path, stamp).distances;
+    }
+
+    /**
+     * Takes the stamp of the given traces file, which needs to be done before the file is read, see
+     * {@link TraceCache.Stamp}.
+     *
+     * @param traceFile The (normalized) path of the traces file.
+     * @return Returns the stamp of the traces file.
+     */
+    private static TraceCache.Stamp stamp(Path traceFile) {
+        try {
+            return TraceCache.Stamp.of(traceFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't read traces file " + traceFile, e);
+        }
+    }
+
+    /**
+     * Reads the given traces file and caches its trace ids and distance traces.
+     *
+     * @param traceFile The (normalized) path of the traces file.
+     * @param stamp The stamp of the traces file taken before reading it.
+     * @return Returns the content of the traces file.
+     */
+    private TraceFile.Content load(Path traceFile, TraceCache.Stamp stamp) {
+
+        TraceFile.Content content;
+        try {
+            content = TraceFile.read(traceFile);
+            if (content == null) {
+                content = parse(traceFile);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't read traces file " + traceFile, e);
+        }
+
+        CACHE.putIds(traceFile, stamp, content.ids);
+        CACHE.putDistances(traceFile, stamp, content.distances);
+        return content;
+    }
+
+    /**
+     * Reads the distinct traces of the given traces file, i.e. the traces referred to by id followed by the branch
+     * distance traces.
+     *
+     * @param traceFile The traces file.
+     * @return Returns the traces in order of first occurrence.
+     */
+    public List<String> readTraces(File traceFile) {
+        int[] ids = ids(traceFile);
+        String[] distances = distances(traceFile);
+        List<String> traces = new ArrayList<>(ids.length + distances.length);
+        for (int id : ids) {
+            traces.add(dictionary.traceOf(id));
+        }
+        traces.addAll(Arrays.asList(distances));
+        return traces;
+    }
+
+    /**
+     * Reads the distinct traces of the given traces files, i.e. the traces referred to by id followed by the branch
+     * distance traces. The files are read in parallel.
+     *
+     * @param traceFiles The traces files.
+     * @return Returns the union of the traces in order of first occurrence.
+     */
+    public Set<String> readTraces(List<File> traceFiles) {
+
+        // the (ordered) collect preserves the order of the traces files
+        List<int[]> idsPerFile = traceFiles.parallelStream().map(this::ids).collect(Collectors.toList());
+
+        BitSet seen = new BitSet(dictionary.size());
+        Set<String> traces = new LinkedHashSet<>();
+        for (int[] ids : idsPerFile) {
+            for (int id : ids) {
+                if (!seen.get(id)) {
+                    seen.set(id);
+                    traces.add(dictionary.traceOf(id));
+                }
+            }
+        }
+        traces.addAll(readDistanceTraces(traceFiles));
+        return traces;
+    }
+
+    /**
+     * Reads the distinct branch distance traces of the given traces files, see
+     * {@link TraceFile#isDistanceTrace(String)}. Traces files ingested by a previous server version may refer to their
+     * distance traces by id, i.e. those are only returned by {@link #readIdSet(List)}. The files are read in parallel.
+     *
+     * @param traceFiles The traces files.
+     * @return Returns the union of the distance traces in order of first occurrence.
+     */
+    public Set<String> readDistanceTraces(List<File> traceFiles) {
+        Set<String> distances = new LinkedHashSet<>();
+        traceFiles.parallelStream().map(this::distances).collect(Collectors.toList())
+                .forEach(traces -> distances.addAll(Arrays.asList(traces)));
+        return distances;
+    }
+
+    /**
+     * Reads the ids of the distinct traces of the given traces files. The files are read in parallel, each into a
+     * bit set of its own, which are merged afterwards.
+     *
+     * @param traceFiles The traces files.
+     * @return Returns the union of the trace ids as bit set.
+     */
+    public BitSet readIdSet(List<File> traceFiles) {
+        int size = dictionary.size();
+        return traceFiles.parallelStream().collect(() -> new BitSet(size), (ids, traceFile) -> {
+            for (int id : ids(traceFile)) {
+                ids.set(id);
+            }
+        }, BitSet::or);
+    }
+
+    /**
+     * Reads the targets covered by the given traces files, i.e. the union of the coverage bit sets. The coverage of an
+     * ingested traces file is computed once and stored in the file itself. It is re-computed (and stored) only if it is
+     * missing or the target file has changed in the meantime. The files are read in parallel.
+     *
+     * @param traceFiles The traces files.
+     * @param targetsFile The target file, e.g. the branches.txt file of the app.
+     * @return Returns a bit set where the i-th bit is set if the target in the i-th line of the target file is
+     *         covered by any of the traces files.
+     */
+    public BitSet readCoverage(List<File> traceFiles, File targetsFile) {
+        AppTargetsCache.Targets targets = AppTargetsCache.get(targetsFile);
+        return traceFiles.parallelStream().collect(() -> new BitSet(targets.size()),
+                (covered, traceFile) -> covered.or(readCoverage(traceFile, targets)), BitSet::or);
+    }
+
+    /**
+     * Reads the targets covered by the given traces file.
+     *
+     * @param traceFile The traces file.
+     * @param targets The targets.
+     * @return Returns the covered targets.
+     */
+    private BitSet readCoverage(File traceFile, AppTargetsCache.Targets targets) {
+
+        Path path = traceFile.toPath().toAbsolutePath().normalize();
+        TraceCache.Stamp stamp = stamp(path);
+
+        TraceFile.Coverage cached = CACHE.getCoverage(path, stamp, targets.getName());
+        if (cached != null && cached.fingerprint == targets.getFingerprint()) {
+            return cached.targets;
+        }
+
+        try {
+            TraceFile.Content content = TraceFile.read(path);
+
+            if (content == null) {
+                // a text traces file that hasn't been ingested
+                return targets.coverageOf(toBitSet(ids(traceFile)));
+            }
+
+            TraceFile.Coverage coverage = content.coverage.get(targets.getName());
+
+            if (coverage == null || coverage.fingerprint != targets.getFingerprint()) {
+                coverage = new TraceFile.Coverage(targets.getFingerprint(), targets.coverageOf(toBitSet(content.ids)));
+                content.coverage.put(targets.getName(), coverage);
+                dictionary.flush();
+                TraceFile.write(path, content);
+            }
+            // a re-written file has a new stamp, thus it is cached once it is read again
+            CACHE.putCoverage(path, stamp, targets.getName(), coverage);
+            return coverage.targets;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't read coverage of traces file " + traceFile, e);
+        }
+    }
+
+    /**
+     * Converts the given trace ids into a bit set.
+     *
+     * @param ids The trace ids.
+     * @return Returns a bit set where the bits of the given ids are set.
+     */
+    private static BitSet toBitSet(int[] ids) {
+        BitSet bitSet = new BitSet();
+        for (int id : ids) {
+            bitSet.set(id);
+        }
+        return bitSet;
+    }
+
+    /**
+     * Parses a text traces file and maps its traces to ids. The file is memory-mapped and split into lines on the byte
+     * level, see {@link Parser}.
+     *
+     * @param traceFile The text traces file.
+     * @return Returns the ids of the distinct traces and the number of lines.
+     * @throws IOException If reading the file fails.
+     */
+    private TraceFile.Content parse(Path traceFile) throws IOException {
+
+        final MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(traceFile, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        Parser parser = new Parser();
+        int rest = parser.accept(buffer, buffer.limit());
+        return parser.finish(buffer.slice(rest, buffer.limit() - rest), buffer.limit() - rest).toContent();
+    }
+
+    /**
+     * Collects the distinct lines of text traces. The traces are split into lines on the byte level and a line is only
+     * decoded the first time it occurs, duplicates are recognized by their bytes. The traces are only looked up in the
+     * dictionary by {@link #toContent()}, thus the lines of a stream that turns out to be invalid, e.g. a truncated
+     * last line or an error message of adb, never become part of the dictionary.
+     */
+    private final class Parser {
+
+        /**
+         * The (bytes of the) distinct lines.
+         */
+        private final Set<ByteBuffer> distinctLines = new HashSet<>();
+
+        /**
+         * The distinct traces in order of first occurrence.
+         */
+        private final List<String> traces = new ArrayList<>();
+
+        /**
+         * The distinct branch distance traces, which are not assigned an id.
+         */
+        private final List<String> distances = new ArrayList<>();
+
+        private int lines = 0;
+
+        /**
+         * Parses the complete lines, i.e. the lines terminated by a line break, of the given buffer. The buffer may be
+         * re-used afterwards.
+         *
+         * @param buffer The buffer containing the text traces.
+         * @param limit The number of valid bytes of the buffer.
+         * @return Returns the start of the incomplete last line.
+         */
+        private int accept(ByteBuffer buffer, int limit) {
+            int start = 0;
+            for (int i = 0; i < limit; i++) {
+                if (buffer.get(i) == '\n') {
+                    line(buffer, start, i);
+                    start = i + 1;
+                }
+            }
+            return start;
+        }
+
+        /**
+         * Parses the last line, which is not terminated by a line break.
+         *
+         * @param buffer The buffer containing the last line at its beginning.
+         * @param limit The length of the last line.
+         * @return Returns this parser.
+         */
+        private Parser finish(ByteBuffer buffer, int limit) {
+            if (limit > 0) {
+                line(buffer, 0, limit);
+            }
+            return this;
+        }
+
+        /**
+         * Maps the parsed traces to ids, assigning new ids to unknown traces.
+         *
+         * @return Returns the ids of the distinct traces, the number of lines and the distance traces.
+         */
+        private TraceFile.Content toContent() {
+            return new TraceFile.Content(dictionary.idsOf(traces), lines, distances.toArray(new String[0]));
+        }
+
+        /**
+         * Collects a single line if it hasn't occurred yet.
+         *
+         * @param buffer The buffer containing the line.
+         * @param start The start of the line.
+         * @param end The end of the line (exclusive) without the line break.
+         */
+        private void line(ByteBuffer buffer, int start, int end) {
+
+            if (end > start && buffer.get(end - 1) == '\r') {
+                end--;
+            }
+            lines++;
+
+            if (!distinctLines.contains(buffer.slice(start, end - start))) {
+                byte[] bytes = new byte[end - start];
+                buffer.get(start, bytes);
+                distinctLines.add(ByteBuffer.wrap(bytes));
+                String trace = new String(bytes, StandardCharsets.UTF_8);
+
+                if (TraceFile.isDistanceTrace(trace)) {
+                    // the distance traces would let the dictionary grow without bounds
+                    distances.add(trace);
+                } else {
+                    traces.add(trace);
+                }
+            }
+        }
+    }
+}
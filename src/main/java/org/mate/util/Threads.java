@@ -0,0 +1,195 @@
+package org.mate.util;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Provides the threads executing the incoming connections and requests. Since the handling of a request is dominated
+ * by waiting for adb subprocesses and file I/O, requests can be executed on virtual threads if the running JVM
+ * supports them (JDK 21+). The lookup is performed reflectively such that the server still runs on older JDKs, where
+ * we fall back to regular platform threads.
+ */
+public final class Threads {
+
+    /**
+     * The factory for virtual threads or {@code null} if the running JVM doesn't support virtual threads.
+     */
+    private static final ThreadFactory VIRTUAL_THREAD_FACTORY = lookupVirtualThreadFactory();
+
+    private Threads() {
+        throw new UnsupportedOperationException("Cannot instantiate utility class!");
+    }
+
+    /**
+     * Checks whether the running JVM supports virtual threads.
+     *
+     * @return Returns {@code true} if virtual threads are available, otherwise {@code false}.
+     */
+    public static boolean virtualThreadsAvailable() {
+        return VIRTUAL_THREAD_FACTORY != null;
+    }
+
+    /**
+     * Creates an executor that runs each submitted task on a new thread.
+     *
+     * @param virtual Whether virtual threads should be used if available.
+     * @return Returns an executor starting a virtual thread per task or a cached pool of platform threads.
+     */
+    public static ExecutorService newPerTaskExecutor(final boolean virtual) {
+        if (virtual && virtualThreadsAvailable()) {
+            // a new virtual thread per task, virtual threads must not be pooled since thread locals would leak
+            // between requests
+            return newVirtualThreadPerTaskExecutor();
+        }
+        return Executors.newCachedThreadPool();
+    }
+
+    /**
+     * Creates an executor for handling requests that accepts at most the given number of pending tasks and rejects
+     * further tasks with a {@link RejectedExecutionException}. With platform threads, the tasks are executed by a
+     * fixed pool of threads and up to {@code capacity} tasks wait in a queue. With virtual threads, each task is
+     * executed on a new virtual thread, since pooling virtual threads would leak thread locals between requests, and
+     * up to {@code capacity} tasks are executed concurrently.
+     *
+     * @param prefix The prefix of the names of the platform threads.
+     * @param threads The number of platform threads.
+     * @param capacity The maximal number of queued tasks or concurrently executed tasks, respectively.
+     * @param virtual Whether virtual threads should be used if available.
+     * @return Returns the bounded executor.
+     */
+    public static ExecutorService newWorkerExecutor(final String prefix, final int threads, final int capacity,
+                                                    final boolean virtual) {
+        if (virtual && virtualThreadsAvailable()) {
+            return new BoundedExecutor(newVirtualThreadPerTaskExecutor(), capacity);
+        }
+        return new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(capacity), newThreadFactory(prefix, false));
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task, i.e. invokes
+     * {@code Executors.newVirtualThreadPerTaskExecutor()}.
+     *
+     * @return Returns the executor.
+     * @throws IllegalStateException If the running JVM doesn't support virtual threads.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            final Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            throw new IllegalStateException("Virtual threads are not supported by this JVM!", e);
+        }
+    }
+
+    /**
+     * Creates a thread factory producing named daemon threads.
+     *
+     * @param prefix The prefix of the thread names.
+     * @param virtual Whether virtual threads should be used if available.
+     * @return Returns a factory for virtual threads or platform daemon threads.
+     */
+    public static ThreadFactory newThreadFactory(final String prefix, final boolean virtual) {
+
+        final var threadCount = new AtomicInteger(0);
+
+        return runnable -> {
+            final Thread thread;
+            if (virtual && virtualThreadsAvailable()) {
+                // virtual threads are always daemon threads
+                thread = VIRTUAL_THREAD_FACTORY.newThread(runnable);
+            } else {
+                thread = new Thread(runnable);
+                thread.setDaemon(true);
+            }
+            thread.setName(prefix + "-" + threadCount.incrementAndGet());
+            return thread;
+        };
+    }
+
+    /**
+     * Looks up the factory for virtual threads, i.e. {@code Thread.ofVirtual().factory()}.
+     *
+     * @return Returns the factory for virtual threads or {@code null} if not supported by the running JVM.
+     */
+    private static ThreadFactory lookupVirtualThreadFactory() {
+        try {
+            final Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            final Object builder = ofVirtual.invoke(null);
+            final Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            // either an older JDK or virtual threads are a disabled preview feature
+            return null;
+        }
+    }
+
+    /**
+     * Limits the number of tasks that are executed concurrently by an executor. Instead of queueing further tasks,
+     * which would keep the requests waiting without any feedback, further tasks are rejected.
+     */
+    private static final class BoundedExecutor extends AbstractExecutorService {
+
+        private final ExecutorService delegate;
+        private final Semaphore permits;
+
+        private BoundedExecutor(final ExecutorService delegate, final int capacity) {
+            this.delegate = delegate;
+            permits = new Semaphore(capacity);
+        }
+
+        @Override
+        public void execute(final Runnable command) {
+            if (!permits.tryAcquire()) {
+                throw new RejectedExecutionException("Maximal number of concurrent tasks reached");
+            }
+            try {
+                delegate.execute(() -> {
+                    try {
+                        command.run();
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.mate.coverage;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mate.util.Log;
+
+import java.util.BitSet;
+
+public class CoverageVectorTest {
+
+    @Before
+    public void setup() {
+        Log logger = new Log();
+        logger.doNotLog();
+        Log.registerLogger(logger);
+    }
+
+    private static BitSet bits(int... ids) {
+        BitSet bitSet = new BitSet();
+        for (int id : ids) {
+            bitSet.set(id);
+        }
+        return bitSet;
+    }
+
+    @Test
+    public void test_CosineSimilarity() {
+        int[] targets = {4, 7, 9, 12};
+
+        // covers the targets 7 and 9, the trace 5 is no target
+        CoverageVector v1 = new CoverageVector(targets, bits(5, 7, 9));
+        // covers the targets 9 and 12
+        CoverageVector v2 = new CoverageVector(targets, bits(9, 12));
+
+        Assert.assertEquals("CoverageVector{vector=[0, 1, 1, 0]}", v1.toString());
+        Assert.assertEquals(0.5, v1.cosineSimilarity(v2), 1e-9);
+        Assert.assertEquals(1.0, v1.cosineSimilarity(v1), 1e-9);
+    }
+
+    @Test
+    public void test_ZeroVector() {
+        int[] targets = {1, 2};
+        CoverageVector zero = new CoverageVector(targets, bits(3));
+        CoverageVector other = new CoverageVector(targets, bits(1));
+
+        Assert.assertTrue(zero.isZeroVector());
+        Assert.assertFalse(other.isZeroVector());
+        Assert.assertEquals(0.0, zero.cosineSimilarity(other), 0.0);
+    }
+
+    @Test
+    public void test_CosineSimilarityAcrossWords() {
+        int[] targets = new int[200];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = i;
+        }
+
+        // the vectors share the targets 63, 64 and 199, which are stored in different words
+        CoverageVector v1 = new CoverageVector(targets, bits(0, 63, 64, 199));
+        CoverageVector v2 = new CoverageVector(targets, bits(63, 64, 128, 199));
+
+        Assert.assertEquals(3 / 4.0, v1.cosineSimilarity(v2), 1e-9);
+        Assert.assertEquals(1.0, v2.cosineSimilarity(v2), 1e-9);
+    }
+}
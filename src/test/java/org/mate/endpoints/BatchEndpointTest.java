@@ -0,0 +1,144 @@
+package org.mate.endpoints;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mate.network.message.Message;
+import org.mate.network.message.Messages;
+import org.mate.util.Log;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class BatchEndpointTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setup() {
+        Log logger = new Log();
+        logger.doNotLog();
+        Log.registerLogger(logger);
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void teardown() {
+        executor.shutdownNow();
+    }
+
+    private static Message batch(String... requests) {
+        Message batch = new Message("/batch");
+        batch.addParameter("requests", String.valueOf(requests.length));
+        for (int i = 0; i < requests.length; i++) {
+            batch.addParameter("request_" + i, requests[i]);
+        }
+        return batch;
+    }
+
+    @Test
+    public void test_ResponsesKeepTheOrderOfTheRequests() {
+        BatchEndpoint endpoint = new BatchEndpoint(request -> {
+            int delay = Integer.parseInt(request.getParameter("delay"));
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new Message.MessageBuilder(request.getSubject())
+                    .withParameter("value", "a;b:c~\\" + delay)
+                    .build();
+        }, executor);
+
+        Message response = endpoint.handle(batch("/first;delay:60~", "/second;delay:30~", "/third;delay:0~"));
+
+        Assert.assertEquals("3", response.getParameter("requests"));
+        Assert.assertEquals("/first", response.getParameter("response_0"));
+        Assert.assertEquals("/second", response.getParameter("response_1"));
+        Assert.assertEquals("/third", response.getParameter("response_2"));
+        // the sub responses are embedded unescaped
+        Assert.assertEquals("a;b:c~\\60", response.getParameter("response_0.value"));
+        Assert.assertEquals("a;b:c~\\0", response.getParameter("response_2.value"));
+    }
+
+    @Test
+    public void test_FailingSubRequestYieldsErrorResponse() {
+        BatchEndpoint endpoint = new BatchEndpoint(request -> {
+            if (request.getSubject().equals("/fail")) {
+                throw new IllegalStateException("failed");
+            }
+            return new Message(request.getSubject());
+        }, executor);
+
+        Message response = endpoint.handle(batch("/fail~", "/ok~"));
+
+        Assert.assertEquals("/error", response.getParameter("response_0"));
+        Assert.assertEquals("failed", response.getParameter("response_0.info"));
+        Assert.assertEquals("/ok", response.getParameter("response_1"));
+    }
+
+    @Test
+    public void test_RejectedSubRequestYieldsBusyResponse() {
+        executor.shutdown();
+        BatchEndpoint endpoint = new BatchEndpoint(request -> new Message(request.getSubject()), executor);
+
+        Message response = endpoint.handle(batch("/rejected~"));
+
+        Assert.assertEquals("/error", response.getParameter("response_0"));
+        Assert.assertEquals("true", response.getParameter("response_0.busy"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_RejectsMalformedSubRequest() {
+        new BatchEndpoint(request -> new Message(request.getSubject()), executor)
+                .handle(batch("/ok~", "/incomplete;key:value"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_RejectsTrailingBytesAfterSubRequest() {
+        new BatchEndpoint(request -> new Message(request.getSubject()), executor)
+                .handle(batch("/first~/second~"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_RejectsMissingSubRequest() {
+        Message batch = batch("/ok~");
+        batch.addParameter("requests", "2");
+        new BatchEndpoint(request -> new Message(request.getSubject()), executor).handle(batch);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_RejectsNestedBatch() {
+        new BatchEndpoint(request -> new Message(request.getSubject()), executor)
+                .handle(batch("/batch;requests:0~"));
+    }
+
+    @Test
+    public void test_SubRequestsInheritMetadata() {
+        BatchEndpoint endpoint = new BatchEndpoint(request -> {
+            Messages.stripMetadata(request);
+            return new Message.MessageBuilder(request.getSubject())
+                    .withParameter("encodings", String.valueOf(request.getMetadata("encodings")))
+                    .withParameter("id", String.valueOf(request.getMetadata("id")))
+                    .withParameter("compressions", String.valueOf(request.getMetadata("compressions")))
+                    .build();
+        }, executor);
+
+        Message batch = batch("/inherit~", "/own;__meta__encodings:plain;__meta__compressions:deflate~");
+        batch.addMetadata("encodings", "base64");
+        batch.addMetadata("id", "42");
+        batch.addMetadata("compressions", "deflate");
+
+        Message response = endpoint.handle(batch);
+
+        Assert.assertEquals("base64", response.getParameter("response_0.encodings"));
+        // the sub request's own metadata takes precedence
+        Assert.assertEquals("plain", response.getParameter("response_1.encodings"));
+        // the correlation id belongs to the batch request only
+        Assert.assertEquals("null", response.getParameter("response_0.id"));
+        // only the batch response is compressed
+        Assert.assertEquals("null", response.getParameter("response_0.compressions"));
+        Assert.assertEquals("null", response.getParameter("response_1.compressions"));
+    }
+}
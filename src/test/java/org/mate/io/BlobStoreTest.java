@@ -0,0 +1,51 @@
+package org.mate.io;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mate.util.Log;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class BlobStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setup() {
+        Log logger = new Log();
+        logger.doNotLog();
+        Log.registerLogger(logger);
+    }
+
+    @Test
+    public void test_CopiesShareTheirContent() throws IOException {
+        Path appDir = folder.newFolder("com.example.app").toPath();
+        Path suite = Files.createDirectories(appDir.resolve("traces").resolve("s1"));
+        Path other = Files.createDirectories(appDir.resolve("traces").resolve("s2"));
+        Path copies = Files.createDirectories(appDir.resolve("traces").resolve("s3"));
+
+        Path source = Files.write(suite.resolve("t1"), List.of("A->foo->0", "A->foo->1"));
+        Path duplicate = Files.write(other.resolve("t2"), List.of("A->foo->0", "A->foo->1"));
+
+        BlobStore store = BlobStore.forApp(appDir);
+        store.copy(source, copies.resolve("t1"));
+        store.copy(duplicate, copies.resolve("t2"));
+
+        // identical content is stored once
+        Assert.assertTrue(Files.isSameFile(source, copies.resolve("t1")));
+        Assert.assertTrue(Files.isSameFile(source, duplicate));
+        Assert.assertTrue(Files.isSameFile(source, copies.resolve("t2")));
+        Assert.assertEquals(List.of("A->foo->0", "A->foo->1"), Files.readAllLines(copies.resolve("t2")));
+
+        try (var blobs = Files.walk(appDir.resolve(BlobStore.BLOBS_DIR))) {
+            Assert.assertEquals(1, blobs.filter(Files::isRegularFile).count());
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.mate.network;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mate.network.message.Message;
+import org.mate.network.message.Messages;
+import org.mate.util.Log;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+public class AdmissionControllerTest {
+
+    @Before
+    public void setup() {
+        Log logger = new Log();
+        logger.doNotLog();
+        Log.registerLogger(logger);
+    }
+
+    @Test
+    public void test_UnrestrictedSubject() {
+        AdmissionController controller = AdmissionController.fromProperties(new Properties());
+        Message response = controller.admit("/android/get_activities", () -> new Message("/android/get_activities"));
+        Assert.assertEquals("/android/get_activities", response.getSubject());
+    }
+
+    /**
+     * Runs a request with the given subject that blocks until the returned latch is released.
+     */
+    private static CountDownLatch block(AdmissionController controller, String subject) throws InterruptedException {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        new Thread(() -> controller.admit(subject, () -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new Message(subject);
+        })).start();
+        running.await();
+        return release;
+    }
+
+    @Test
+    public void test_DisabledByDefault() throws InterruptedException {
+        AdmissionController controller = AdmissionController.fromProperties(new Properties());
+        CountDownLatch release = block(controller, "/graph/init");
+        // the predefined 'graph' class admits a single request only, but is not enabled
+        Assert.assertEquals("/graph/init", controller.admit("/graph/init",
+                () -> new Message("/graph/init")).getSubject());
+        release.countDown();
+    }
+
+    @Test
+    public void test_EnablesPredefinedClass() throws InterruptedException {
+        Properties properties = new Properties();
+        properties.setProperty("admission.graph.enabled", "true");
+        properties.setProperty("admission.graph.queue", "0");
+        properties.setProperty("admission.flickering.enabled", "false");
+        AdmissionController controller = AdmissionController.fromProperties(properties);
+
+        CountDownLatch release = block(controller, "/graph/init");
+        Assert.assertTrue(Messages.isErrorMessage(controller.admit("/graph/init",
+                () -> new Message("/graph/init"))));
+        release.countDown();
+
+        // the disabled 'flickering' class would admit two concurrent requests only
+        CountDownLatch first = block(controller, "/accessibility/check_flickering");
+        CountDownLatch second = block(controller, "/accessibility/check_flickering");
+        Assert.assertEquals("/accessibility/check_flickering", controller.admit("/accessibility/check_flickering",
+                () -> new Message("/accessibility/check_flickering")).getSubject());
+        first.countDown();
+        second.countDown();
+    }
+
+    @Test
+    public void test_MatchesSubjectsExactly() throws InterruptedException {
+        Properties properties = new Properties();
+        properties.setProperty("admission.coverage.concurrency", "1");
+        properties.setProperty("admission.coverage.queue", "0");
+        AdmissionController controller = AdmissionController.fromProperties(properties);
+
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread worker = new Thread(() -> controller.admit("/coverage/get", () -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new Message("/coverage/get");
+        }));
+        worker.start();
+        running.await();
+
+        // the cheap lookups share the prefix of the saturated '/coverage/get' class, but are not restricted
+        Assert.assertEquals("/coverage/getSourceLines", controller.admit("/coverage/getSourceLines",
+                () -> new Message("/coverage/getSourceLines")).getSubject());
+        Assert.assertEquals("/coverage/getNumberOfSourceLines", controller.admit("/coverage/getNumberOfSourceLines",
+                () -> new Message("/coverage/getNumberOfSourceLines")).getSubject());
+        Assert.assertTrue(Messages.isErrorMessage(controller.admit("/coverage/get",
+                () -> new Message("/coverage/get"))));
+
+        release.countDown();
+        worker.join();
+    }
+
+    @Test
+    public void test_RejectWhenSaturated() throws InterruptedException {
+        Properties properties = new Properties();
+        properties.setProperty("admission.test.subjects", "/test");
+        properties.setProperty("admission.test.concurrency", "1");
+        properties.setProperty("admission.test.queue", "0");
+        properties.setProperty("admission.test.retry_after", "7");
+        AdmissionController controller = AdmissionController.fromProperties(properties);
+
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread worker = new Thread(() -> controller.admit("/test/slow", () -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new Message("/test/slow");
+        }));
+        worker.start();
+        running.await();
+
+        Message busy = controller.admit("/test/fast", () -> new Message("/test/fast"));
+        Assert.assertTrue(Messages.isErrorMessage(busy));
+        Assert.assertEquals("7", busy.getParameter("retry_after"));
+
+        release.countDown();
+        worker.join();
+
+        Assert.assertEquals("/test/fast", controller.admit("/test/fast", () -> new Message("/test/fast")).getSubject());
+    }
+}
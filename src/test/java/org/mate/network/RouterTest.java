@@ -0,0 +1,59 @@
+package org.mate.network;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mate.network.message.Message;
+
+import java.util.Map;
+
+public class RouterTest {
+    Router router;
+    Endpoint graphEndpoint;
+    Endpoint branchDistance;
+    Endpoint branchDistanceVector;
+    Endpoint legacyEndpoint;
+
+    @Before
+    public void setup() {
+        branchDistance = request -> new Message("/graph/get_branch_distance");
+        branchDistanceVector = request -> new Message("/graph/get_branch_distance_vector");
+        graphEndpoint = new Endpoint() {
+            @Override
+            public Message handle(Message request) {
+                return Endpoint.resolve(routes(), request.getSubject()).handle(request);
+            }
+
+            @Override
+            public Map<String, Endpoint> routes() {
+                return Map.of("/graph/get_branch_distance", branchDistance,
+                        "/graph/get_branch_distance_vector", branchDistanceVector);
+            }
+        };
+        legacyEndpoint = request -> new Message("/legacy");
+
+        router = new Router();
+        router.add("/graph", graphEndpoint);
+        router.add("/legacy", legacyEndpoint);
+    }
+
+    @Test
+    public void test_ResolveExactRoute() {
+        Assert.assertSame(branchDistance, router.resolve("/graph/get_branch_distance"));
+        Assert.assertSame(branchDistanceVector, router.resolve("/graph/get_branch_distance_vector"));
+    }
+
+    @Test
+    public void test_ResolvePrefix() {
+        Assert.assertSame(graphEndpoint, router.resolve("/graph/draw"));
+        Assert.assertSame(legacyEndpoint, router.resolve("/legacy/get_activity"));
+        Assert.assertNull(router.resolve("/graphs"));
+        Assert.assertNull(router.resolve("/unknown"));
+    }
+
+    @Test
+    public void test_EndpointResolveLongestPrefix() {
+        Message response = graphEndpoint.handle(new Message("/graph/get_branch_distance_vector/suffix"));
+        Assert.assertEquals("/graph/get_branch_distance_vector", response.getSubject());
+    }
+}
@@ -0,0 +1,202 @@
+package org.mate.network;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mate.network.message.Message;
+import org.mate.network.message.serialization.MessageDecoder;
+import org.mate.network.message.serialization.Serializer;
+import org.mate.network.metrics.RequestMetrics;
+import org.mate.util.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class SelectorServerTest {
+
+    private SelectorServer server;
+    private int port;
+    private final List<Thread> workers = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Boolean> closeRequested = ThreadLocal.withInitial(() -> false);
+
+    @Before
+    public void setup() throws IOException {
+        Log logger = new Log();
+        logger.doNotLog();
+        Log.registerLogger(logger);
+
+        // the responses span many more chunks than may be pending per connection
+        server = new SelectorServer(0, null, new ThreadPoolExecutor(4, 4, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(16), runnable -> {
+                    Thread worker = new Thread(runnable);
+                    workers.add(worker);
+                    return worker;
+                }),
+                request -> {
+                    closeRequested.set(request.getSubject().equals("/close"));
+                    return new Message.MessageBuilder(request.getSubject())
+                            .withParameter("payload", payload(request.getSubject(), length(request)))
+                            .build();
+                },
+                closeRequested::get, new RequestMetrics());
+        port = server.bind();
+        Thread selector = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException | RuntimeException e) {
+                // the server has been closed
+            }
+        });
+        selector.setDaemon(true);
+        selector.start();
+    }
+
+    @After
+    public void teardown() {
+        server.close();
+    }
+
+    private static int length(Message request) {
+        String length = request.getParameter("length");
+        return length != null ? Integer.parseInt(length) : 1024 * 1024;
+    }
+
+    private static void send(SocketChannel client, Message request) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Serializer.serialize(request));
+        while (buffer.hasRemaining()) {
+            client.write(buffer);
+        }
+    }
+
+    private static String payload(String subject, int length) {
+        StringBuilder payload = new StringBuilder(length);
+        while (payload.length() < length) {
+            // escaped characters and multi-byte characters end up at the edges of the chunks
+            payload.append(subject).append(";~:\\ä€😀");
+        }
+        return payload.toString();
+    }
+
+    @Test
+    public void test_StreamsLargePipelinedResponsesWithoutInterleaving() throws IOException {
+        try (SocketChannel client = SocketChannel.open(new InetSocketAddress("localhost", port))) {
+            for (String subject : List.of("/first", "/second", "/third")) {
+                Message request = new Message(subject);
+                request.addParameter("__meta__id", subject);
+                send(client, request);
+            }
+
+            MessageDecoder decoder = new MessageDecoder();
+            List<Message> responses = new ArrayList<>();
+            ByteBuffer buffer = ByteBuffer.allocate(8 * 1024);
+            while (responses.size() < 3 && client.read(buffer) != -1) {
+                buffer.flip();
+                Message response;
+                while ((response = decoder.decode(buffer)) != null) {
+                    responses.add(response);
+                }
+                buffer.clear();
+            }
+
+            Assert.assertEquals(3, responses.size());
+            for (Message response : responses) {
+                Assert.assertEquals(payload(response.getSubject(), 1024 * 1024), response.getParameter("payload"));
+            }
+        }
+    }
+
+    @Test
+    public void test_ClosingPeerMidStreamReleasesBuffersOnce() throws Exception {
+        // start with an empty pool, such that a buffer released twice shows up twice
+        for (int i = BufferPool.pooledBuffers(); i > 0; i--) {
+            BufferPool.acquire();
+        }
+
+        try (SocketChannel client = SocketChannel.open(new InetSocketAddress("localhost", port))) {
+            Message request = new Message("/large");
+            request.addParameter("length", String.valueOf(16 * 1024 * 1024));
+            send(client, request);
+            // the response is much larger than the socket buffers, thus the worker is still streaming
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            client.read(buffer);
+        }
+
+        Assert.assertTrue(server.awaitConnectionsClosed(10, TimeUnit.SECONDS));
+        server.close();
+        for (Thread worker : workers) {
+            worker.join(10_000);
+        }
+
+        int pooled = BufferPool.pooledBuffers();
+        Set<ByteBuffer> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < pooled; i++) {
+            distinct.add(BufferPool.acquire());
+        }
+        Assert.assertEquals(pooled, distinct.size());
+        distinct.forEach(BufferPool::release);
+    }
+
+    /**
+     * Reads the responses until the server closes the connection.
+     *
+     * @return Returns the received responses.
+     */
+    private static List<Message> readUntilClosed(SocketChannel client) throws IOException {
+        MessageDecoder decoder = new MessageDecoder();
+        List<Message> responses = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        while (client.read(buffer) != -1) {
+            buffer.flip();
+            Message response;
+            while ((response = decoder.decode(buffer)) != null) {
+                responses.add(response);
+            }
+            buffer.clear();
+        }
+        return responses;
+    }
+
+    @Test
+    public void test_ClosesConnectionAfterStreamedCloseResponse() throws Exception {
+        for (int length : List.of(16, 256 * 1024)) {
+            try (SocketChannel client = SocketChannel.open(new InetSocketAddress("localhost", port))) {
+                Message request = new Message("/close");
+                request.addParameter("length", String.valueOf(length));
+                send(client, request);
+
+                List<Message> responses = readUntilClosed(client);
+                Assert.assertEquals(1, responses.size());
+                Assert.assertEquals("/close", responses.get(0).getSubject());
+            }
+        }
+        Assert.assertTrue(server.awaitConnectionsClosed(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void test_DrainClosesConnectionAfterStreamedResponse() throws Exception {
+        try (SocketChannel client = SocketChannel.open(new InetSocketAddress("localhost", port))) {
+            Message request = new Message("/slow");
+            request.addParameter("length", String.valueOf(256 * 1024));
+            send(client, request);
+            // wait until the request has been read before draining
+            ByteBuffer first = ByteBuffer.allocate(1);
+            client.read(first);
+            server.drain();
+
+            readUntilClosed(client);
+            Assert.assertTrue(server.awaitConnectionsClosed(10, TimeUnit.SECONDS));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.mate.network.message;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+public class ParameterMapTest {
+
+    @Test
+    public void test_PutGetRemove() {
+        Map<String, String> parameters = new ParameterMap();
+        Map<String, String> expected = new HashMap<>();
+        for (int i = 0; i < 20; i++) {
+            parameters.put("k" + i, "v" + i);
+            expected.put("k" + i, "v" + i);
+        }
+        Assert.assertEquals("v3", parameters.put("k3", "w3"));
+        expected.put("k3", "w3");
+        Assert.assertEquals("v7", parameters.remove("k7"));
+        expected.remove("k7");
+
+        Assert.assertNull(parameters.get("k7"));
+        Assert.assertEquals(expected, parameters);
+        Assert.assertEquals(parameters, expected);
+        Assert.assertEquals(expected.hashCode(), parameters.hashCode());
+    }
+
+    @Test
+    public void test_IndexedLookupAfterRemovals() {
+        ParameterMap parameters = new ParameterMap();
+        int count = 10 * ParameterMap.INDEX_THRESHOLD;
+        for (int i = 0; i < count; i++) {
+            parameters.put("k" + i, "v" + i);
+        }
+        Assert.assertEquals("v100", parameters.put("k100", "w100"));
+
+        // removing entries shifts the positions of the subsequent entries
+        for (int i = 0; i < count; i += 3) {
+            Assert.assertEquals(i == 100 ? "w100" : "v" + i, parameters.remove("k" + i));
+        }
+        Assert.assertNull(parameters.put("k0", "x0"));
+
+        for (int i = 1; i < count; i++) {
+            Assert.assertEquals(i % 3 == 0 ? null : i == 100 ? "w100" : "v" + i, parameters.get("k" + i));
+        }
+        Assert.assertEquals("x0", parameters.get("k0"));
+        Assert.assertEquals("k0", parameters.keyAt(parameters.size() - 1));
+        Assert.assertEquals("x0", parameters.valueAt(parameters.size() - 1));
+        Assert.assertEquals("k1", parameters.keyAt(0));
+    }
+
+    @Test
+    public void test_IteratorRemovePreservesOrder() {
+        Map<String, String> parameters = new ParameterMap();
+        for (String key : List.of("a", "__meta__x", "b", "__meta__y", "c")) {
+            parameters.put(key, key);
+        }
+
+        Iterator<Map.Entry<String, String>> entries = parameters.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, String> entry = entries.next();
+            if (entry.getKey().startsWith("__meta__")) {
+                entries.remove();
+            } else {
+                entry.setValue(entry.getValue().toUpperCase());
+            }
+        }
+
+        Assert.assertEquals(List.of("a", "b", "c"), List.copyOf(parameters.keySet()));
+        Assert.assertEquals(List.of("A", "B", "C"), List.copyOf(parameters.values()));
+    }
+}
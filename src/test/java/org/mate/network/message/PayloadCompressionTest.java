@@ -0,0 +1,80 @@
+package org.mate.network.message;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PayloadCompressionTest {
+    Message request;
+    String sourceLines;
+
+    @Before
+    public void setup() {
+        request = new Message("/coverage/getSourceLines");
+        request.addParameter("__meta__compressions", "lz4,deflate");
+        Messages.stripMetadata(request);
+
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            lines.append("com.example.Activity:").append(i).append("\n");
+        }
+        sourceLines = lines.toString();
+    }
+
+    @Test
+    public void test_CompressLargeParameters() {
+        Message response = new Message("/coverage/getSourceLines");
+        response.addParameter("lines", sourceLines);
+        response.addParameter("count", "500");
+        PayloadCompression.compress(request, response);
+
+        Assert.assertEquals("deflate", response.getMetadata("compression.lines"));
+        Assert.assertNull(response.getMetadata("compression.count"));
+        Assert.assertTrue(response.getParameter("lines").length() < sourceLines.length());
+
+        // the client sends the compressed parameter back
+        Messages.addMetadata(response);
+        Messages.stripMetadata(response);
+        PayloadCompression.decompress(response);
+
+        Assert.assertEquals(sourceLines, response.getParameter("lines"));
+        Assert.assertEquals("500", response.getParameter("count"));
+        Assert.assertNull(response.getMetadata("compression.lines"));
+    }
+
+    @Test
+    public void test_NoCompressionWithoutNegotiation() {
+        Message plainRequest = new Message("/coverage/getSourceLines");
+        Messages.stripMetadata(plainRequest);
+
+        Message response = new Message("/coverage/getSourceLines");
+        response.addParameter("lines", sourceLines);
+        PayloadCompression.compress(plainRequest, response);
+
+        Assert.assertEquals(sourceLines, response.getParameter("lines"));
+        Assert.assertTrue(response.getMetadata().isEmpty());
+    }
+
+    @Test
+    public void test_RejectsCompressionBomb() {
+        Message response = new Message("/coverage/getSourceLines");
+        response.addParameter("zeros", "0".repeat(4 * 1024 * 1024));
+        response.addParameter("more", "0".repeat(4 * 1024 * 1024));
+        PayloadCompression.compress(request, response);
+        Assert.assertTrue(response.getParameter("zeros").length() < 64 * 1024);
+
+        Messages.addMetadata(response);
+        Messages.stripMetadata(response);
+
+        // each parameter fits, but not both of them
+        PayloadCompression.setMaxSize(6 * 1024 * 1024);
+        try {
+            PayloadCompression.decompress(response);
+            Assert.fail("Expected the decompressed size to be exceeded!");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("maximal size"));
+        } finally {
+            PayloadCompression.setMaxSize(PayloadCompression.DEFAULT_MAX_SIZE);
+        }
+    }
+}
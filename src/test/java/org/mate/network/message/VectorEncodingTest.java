@@ -0,0 +1,88 @@
+package org.mate.network.message;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+public class VectorEncodingTest {
+    Message textRequest;
+    Message binaryRequest;
+    boolean[] bits;
+    float[] distances;
+    double[] novelty;
+
+    @Before
+    public void setup() {
+        textRequest = new Message("/fitness/get_branch_fitness_vector");
+        Messages.stripMetadata(textRequest);
+
+        binaryRequest = new Message("/fitness/get_branch_fitness_vector");
+        binaryRequest.addParameter("__meta__encodings", "bitset,float32");
+        Messages.stripMetadata(binaryRequest);
+
+        bits = new boolean[] {true, false, false, true, false, false, false, false, true};
+        distances = new float[] {0, 1, 0.25f};
+        novelty = new double[] {0.5, 0.125};
+    }
+
+    @Test
+    public void test_TextFallback() {
+        Message response = new Message("/fitness/get_branch_fitness_vector");
+        VectorEncoding.addBitVector(textRequest, response, "vector", bits);
+        VectorEncoding.addNumberVector(textRequest, response, "distances", distances);
+        VectorEncoding.addNumberVector(textRequest, response, "novelty", novelty);
+
+        Assert.assertEquals("1+0+0+1+0+0+0+0+1", response.getParameter("vector"));
+        Assert.assertEquals("0.0+1.0+0.25", response.getParameter("distances"));
+        Assert.assertEquals("0.5+0.125", response.getParameter("novelty"));
+        Assert.assertTrue(response.getMetadata().isEmpty());
+    }
+
+    @Test
+    public void test_BinaryEncoding() {
+        Message response = new Message("/fitness/get_branch_fitness_vector");
+        VectorEncoding.addBitVector(binaryRequest, response, "vector", bits);
+        VectorEncoding.addNumberVector(binaryRequest, response, "distances", distances);
+        // float64 is not advertised
+        VectorEncoding.addNumberVector(binaryRequest, response, "novelty", novelty);
+        Messages.addMetadata(response);
+
+        Assert.assertEquals("bitset", response.getParameter("__meta__encoding.vector"));
+        ByteBuffer vector = ByteBuffer.wrap(Base64.getDecoder().decode(response.getParameter("vector")));
+        Assert.assertEquals(9, vector.getInt());
+        Assert.assertEquals(0b00001001, vector.get());
+        Assert.assertEquals(0b00000001, vector.get());
+        Assert.assertFalse(vector.hasRemaining());
+
+        Assert.assertEquals("float32", response.getParameter("__meta__encoding.distances"));
+        ByteBuffer floats = ByteBuffer.wrap(Base64.getDecoder().decode(response.getParameter("distances")));
+        Assert.assertEquals(3, floats.getInt());
+        Assert.assertEquals(0.0, floats.getFloat(), 0.0);
+        Assert.assertEquals(1.0, floats.getFloat(), 0.0);
+        Assert.assertEquals(0.25, floats.getFloat(), 0.0);
+
+        Assert.assertEquals("0.5+0.125", response.getParameter("novelty"));
+        Assert.assertNull(response.getParameter("__meta__encoding.novelty"));
+    }
+
+    @Test
+    public void test_DoubleEncoding() {
+        Message request = new Message("/fitness/get_novelty_vector");
+        request.addParameter("__meta__encodings", "float64");
+        Messages.stripMetadata(request);
+
+        Message response = new Message("/fitness/get_novelty_vector");
+        VectorEncoding.addNumberVector(request, response, "novelty", novelty);
+        Messages.addMetadata(response);
+
+        Assert.assertEquals("float64", response.getParameter("__meta__encoding.novelty"));
+        ByteBuffer doubles = ByteBuffer.wrap(Base64.getDecoder().decode(response.getParameter("novelty")));
+        Assert.assertEquals(2, doubles.getInt());
+        Assert.assertEquals(0.5, doubles.getDouble(), 0.0);
+        Assert.assertEquals(0.125, doubles.getDouble(), 0.0);
+        Assert.assertFalse(doubles.hasRemaining());
+    }
+}
@@ -0,0 +1,75 @@
+package org.mate.network.message.serialization;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mate.network.message.Message;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MessageDecoderTest {
+    Message message;
+    Message message2;
+    byte[] serialized;
+
+    @Before
+    public void setup() {
+        message = new Message("/fitness/\\get;~");
+        message.addParameter("", "v;\\~1");
+        message.addParameter(":\\;~", "");
+        message.addParameter("unicode", "ä€😀:~");
+
+        message2 = new Message("/close");
+
+        byte[] first = Serializer.serialize(message);
+        byte[] second = Serializer.serialize(message2);
+        serialized = new byte[first.length + second.length];
+        System.arraycopy(first, 0, serialized, 0, first.length);
+        System.arraycopy(second, 0, serialized, first.length, second.length);
+    }
+
+    @Test
+    public void test_DecodeSingleChunk() {
+        MessageDecoder decoder = new MessageDecoder();
+        ByteBuffer buffer = ByteBuffer.wrap(serialized);
+
+        Assert.assertEquals(message, decoder.decode(buffer));
+        Assert.assertEquals(Serializer.serialize(message).length, decoder.getLastMessageSize());
+        Assert.assertEquals(message2, decoder.decode(buffer));
+        Assert.assertNull(decoder.decode(buffer));
+        Assert.assertFalse(decoder.hasPartialMessage());
+    }
+
+    @Test
+    public void test_DecodeSplitChunks() {
+        // split the input at every possible position, including within escape sequences and UTF-8 sequences
+        for (int split = 0; split <= serialized.length; split++) {
+            MessageDecoder decoder = new MessageDecoder();
+            List<Message> decoded = new ArrayList<>();
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(serialized.length);
+            direct.put(serialized, 0, split).flip();
+            Message next;
+            while ((next = decoder.decode(direct)) != null) {
+                decoded.add(next);
+            }
+
+            direct.clear();
+            direct.put(serialized, split, serialized.length - split).flip();
+            while ((next = decoder.decode(direct)) != null) {
+                decoded.add(next);
+            }
+
+            Assert.assertEquals(2, decoded.size());
+            Assert.assertEquals(message, decoded.get(0));
+            Assert.assertEquals(message2, decoded.get(1));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_DecodeIllegalParameterKey() {
+        new MessageDecoder().decode(ByteBuffer.wrap("subject;key~".getBytes(Lexer.CHARSET)));
+    }
+}
@@ -0,0 +1,97 @@
+package org.mate.network.message.serialization;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mate.network.message.Message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class MessageWriterTest {
+    Message message;
+    byte[] expected;
+
+    @Before
+    public void setup() {
+        message = new Message("/fitness/\\get;~");
+        message.addParameter("", "v;\\~1");
+        message.addParameter(":\\;~", "");
+        message.addParameter("unicode", "ä€😀:~\\\\;;");
+
+        StringBuilder serialized = new StringBuilder(Serializer.escapeParameterValue(message.getSubject()));
+        for (Map.Entry<String, String> parameter : message.getParameters().entrySet()) {
+            serialized.append(Lexer.END_PARAMETER_CHAR)
+                    .append(Serializer.escapeParameterValue(parameter.getKey()))
+                    .append(Lexer.RELATION_SEPARATOR_CHAR)
+                    .append(Serializer.escapeParameterValue(parameter.getValue()));
+        }
+        serialized.append(Lexer.END_MESSAGE_CHAR);
+        expected = serialized.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the message with buffers of the given capacity.
+     *
+     * @param capacity The capacity of the buffers.
+     * @return Returns the chunks handed to the sink.
+     */
+    private List<byte[]> write(int capacity) throws IOException {
+        List<byte[]> chunks = new ArrayList<>();
+        long written;
+        try (MessageWriter writer = new MessageWriter(filled -> {
+            Assert.assertTrue(filled.remaining() <= capacity);
+            byte[] chunk = new byte[filled.remaining()];
+            filled.get(chunk);
+            chunks.add(chunk);
+            return ByteBuffer.allocate(capacity);
+        }, ByteBuffer.allocate(capacity))) {
+            written = writer.write(message);
+        }
+        Assert.assertEquals(expected.length, written);
+        return chunks;
+    }
+
+    @Test
+    public void test_ChunksMatchSerializedMessage() throws IOException {
+        // small buffers place escape sequences and UTF-8 sequences at every possible buffer edge
+        for (int capacity = 4; capacity <= expected.length + 1; capacity++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (byte[] chunk : write(capacity)) {
+                out.writeBytes(chunk);
+            }
+            Assert.assertArrayEquals(expected, out.toByteArray());
+        }
+    }
+
+    @Test
+    public void test_ChunksAreFilledUpToCharacterBoundaries() throws IOException {
+        List<byte[]> chunks = write(16);
+        Assert.assertTrue(chunks.size() > 1);
+        // a chunk is only handed over early if the next UTF-8 sequence (at most 4 bytes) doesn't fit anymore
+        for (byte[] chunk : chunks.subList(0, chunks.size() - 1)) {
+            Assert.assertTrue(chunk.length > 16 - 4);
+        }
+        // a message fitting into a single buffer is handed over at once
+        Assert.assertEquals(1, write(expected.length).size());
+    }
+
+    @Test
+    public void test_EscapesAcrossBufferEdgesAreDecoded() throws IOException {
+        for (int capacity = 4; capacity <= 16; capacity++) {
+            MessageDecoder decoder = new MessageDecoder();
+            Message decoded = null;
+            for (byte[] chunk : write(capacity)) {
+                Assert.assertNull(decoded);
+                decoded = decoder.decode(ByteBuffer.wrap(chunk));
+            }
+            Assert.assertEquals(message, decoded);
+            Assert.assertFalse(decoder.hasPartialMessage());
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.mate.network.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+
+public class RequestMetricsTest {
+
+    @Test
+    public void test_UnknownSubjectsShareBucket() {
+        RequestMetrics metrics = new RequestMetrics(subject -> subject.startsWith("/graph"));
+        metrics.recordBytesIn("/graph/init", 10);
+        metrics.recordBytesIn("/garbage/1", 10);
+        metrics.recordBytesIn("/garbage/2", 10);
+
+        Map<String, String> snapshot = metrics.snapshot();
+        Assert.assertEquals(2, snapshot.size());
+        Assert.assertTrue(snapshot.containsKey("/graph/init"));
+        Assert.assertTrue(snapshot.get(RequestMetrics.UNKNOWN_SUBJECT).contains("bytes_in=20"));
+    }
+
+    @Test
+    public void test_NumberOfSubjectsIsBounded() {
+        RequestMetrics metrics = new RequestMetrics();
+        for (int i = 0; i < 2 * RequestMetrics.MAX_SUBJECTS; i++) {
+            metrics.recordRequest("/graph/" + i, 1000, false);
+        }
+        // the subjects tracked so far are still recorded on their own
+        metrics.recordRequest("/graph/0", 1000, true);
+
+        Map<String, String> snapshot = metrics.snapshot();
+        Assert.assertEquals(RequestMetrics.MAX_SUBJECTS + 1, snapshot.size());
+        Assert.assertTrue(snapshot.get("/graph/0").startsWith("count=2,errors=1"));
+        String unknown = snapshot.get(RequestMetrics.UNKNOWN_SUBJECT);
+        Assert.assertTrue(unknown.startsWith("count=" + RequestMetrics.MAX_SUBJECTS + ","));
+    }
+}
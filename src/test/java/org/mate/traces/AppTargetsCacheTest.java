@@ -0,0 +1,67 @@
+package org.mate.traces;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mate.util.Log;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+public class AppTargetsCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setup() {
+        Log logger = new Log();
+        logger.doNotLog();
+        Log.registerLogger(logger);
+    }
+
+    @Test
+    public void test_ReadsBlocksOnceAndReloadsOnChange() throws IOException {
+        Path blocksFile = folder.newFolder("com.example.app").toPath().resolve("blocks.txt");
+        Files.writeString(blocksFile, "A->foo->0->3->isBranch\r\nA->foo->1->2->noBranch\n\nB->bar->0->4->isBranch\n",
+                StandardCharsets.UTF_8);
+
+        AppTargetsCache.Targets targets = AppTargetsCache.get(blocksFile);
+        Assert.assertEquals(List.of("A->foo->0->3->isBranch", "A->foo->1->2->noBranch", "B->bar->0->4->isBranch"),
+                targets.getLines());
+        Assert.assertSame(targets, AppTargetsCache.get(blocksFile));
+
+        AppTargetsCache.BlockCounts counts = targets.getBlockCounts();
+        Assert.assertEquals(2, counts.getNumberOfMethods());
+        Assert.assertEquals(2, counts.getNumberOfBranches());
+        Assert.assertEquals(9, counts.getNumberOfInstructions());
+
+        // re-instrumentation replaces the file
+        Files.writeString(blocksFile, "C->baz->0->1->isBranch\n", StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(blocksFile, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+
+        AppTargetsCache.Targets reloaded = AppTargetsCache.get(blocksFile);
+        Assert.assertNotSame(targets, reloaded);
+        Assert.assertEquals(1, reloaded.size());
+        Assert.assertEquals(1, reloaded.getBlockCounts().getNumberOfInstructions());
+    }
+
+    @Test
+    public void test_AppsAreKeptApart() throws IOException {
+        Path first = folder.newFolder("com.example.first").toPath().resolve("branches.txt");
+        Path second = folder.newFolder("com.example.second").toPath().resolve("branches.txt");
+        Files.write(first, List.of("A->foo->0", "A->foo->1"));
+        Files.write(second, List.of("B->bar->0"));
+
+        Assert.assertEquals(2, AppTargetsCache.get(first).size());
+        Assert.assertEquals(1, AppTargetsCache.get(second).size());
+        Assert.assertArrayEquals(new int[]{0, 1}, AppTargetsCache.get(first).getTraceIds());
+        Assert.assertArrayEquals(new int[]{0}, AppTargetsCache.get(second).getTraceIds());
+    }
+}
@@ -0,0 +1,69 @@
+package org.mate.traces;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.util.BitSet;
+
+public class TraceCacheTest {
+
+    private static final TraceCache.Stamp STAMP = new TraceCache.Stamp("inode", 1000L, 42L);
+
+    @Test
+    public void test_EvictsLeastRecentlyUsed() {
+        Path first = Path.of("traces", "c1");
+        Path second = Path.of("traces", "c2");
+        Path third = Path.of("traces", "c3");
+
+        // room for two entries with 100 ids each
+        TraceCache cache = new TraceCache(2 * (128 + 400));
+        cache.putIds(first, STAMP, new int[100]);
+        cache.putIds(second, STAMP, new int[100]);
+
+        // accessing the first entry makes the second one the least recently used
+        Assert.assertNotNull(cache.getIds(first, STAMP));
+        cache.putIds(third, STAMP, new int[100]);
+
+        Assert.assertNotNull(cache.getIds(first, STAMP));
+        Assert.assertNull(cache.getIds(second, STAMP));
+        Assert.assertNotNull(cache.getIds(third, STAMP));
+    }
+
+    @Test
+    public void test_Invalidate() {
+        Path traceFile = Path.of("traces", "c1");
+        TraceCache cache = new TraceCache(1024 * 1024);
+
+        BitSet targets = new BitSet();
+        targets.set(3);
+        cache.putIds(traceFile, STAMP, new int[]{1, 2});
+        cache.putCoverage(traceFile, STAMP, "branches.txt", new TraceFile.Coverage(42L, targets));
+        Assert.assertSame(targets, cache.getCoverage(traceFile, STAMP, "branches.txt").targets);
+
+        cache.invalidate(traceFile);
+        Assert.assertNull(cache.getIds(traceFile, STAMP));
+        Assert.assertNull(cache.getCoverage(traceFile, STAMP, "branches.txt"));
+
+        // a capacity of 0 disables the cache
+        cache.setCapacity(0);
+        cache.putIds(traceFile, STAMP, new int[]{1, 2});
+        Assert.assertNull(cache.getIds(traceFile, STAMP));
+    }
+
+    @Test
+    public void test_RejectsStaleContent() {
+        Path traceFile = Path.of("traces", "c1");
+        TraceCache cache = new TraceCache(1024 * 1024);
+
+        // a reader caches the content of the previous file after it has been replaced and invalidated
+        TraceCache.Stamp replaced = new TraceCache.Stamp("other inode", 2000L, 42L);
+        cache.invalidate(traceFile);
+        cache.putIds(traceFile, STAMP, new int[]{1, 2});
+
+        Assert.assertNull(cache.getIds(traceFile, replaced));
+        cache.putIds(traceFile, replaced, new int[]{3});
+        Assert.assertArrayEquals(new int[]{3}, cache.getIds(traceFile, replaced));
+        Assert.assertNull(cache.getIds(traceFile, STAMP));
+    }
+}
@@ -0,0 +1,95 @@
+package org.mate.traces;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Set;
+
+public class TraceCollectorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test_CollectsDeadChromosomes() throws IOException {
+        Path appsDir = folder.newFolder("apps").toPath();
+        Path appDir = appsDir.resolve("com.zola.bmi");
+        Path live = createChromosome(appDir, "live", 1000);
+        Path dead = createChromosome(appDir, "dead", 2000);
+        Path young = createChromosome(appDir, "young", 0);
+
+        TraceCollector collector = new TraceCollector(appsDir, 500, 0);
+
+        // nothing is collected as long as the live chromosomes are unknown
+        Assert.assertEquals(0, collector.collect("com.zola.bmi"));
+
+        collector.retain("com.zola.bmi", Set.of("live"));
+        Assert.assertEquals(1, collector.collect("com.zola.bmi"));
+
+        Assert.assertTrue(Files.exists(live));
+        Assert.assertFalse(Files.exists(dead));
+        Assert.assertFalse(Files.exists(appDir.resolve("coverage").resolve("dead")));
+        Assert.assertTrue(Files.exists(young));
+        Assert.assertEquals(1, TraceStore.forApp(appDir).getTraceFiles("live").size());
+    }
+
+    @Test
+    public void test_CollectsOldestFirstAboveMaxSize() throws IOException {
+        Path appsDir = folder.newFolder("apps").toPath();
+        Path appDir = appsDir.resolve("com.zola.bmi");
+        Path oldest = createChromosome(appDir, "c1", 3000);
+        Path older = createChromosome(appDir, "c2", 2000);
+
+        // the traces file and coverage file of a single chromosome fit
+        TraceCollector collector = new TraceCollector(appsDir, 0, 2 * 100);
+        collector.retain("com.zola.bmi", Set.of());
+        Assert.assertEquals(1, collector.collect("com.zola.bmi"));
+
+        Assert.assertFalse(Files.exists(oldest));
+        Assert.assertFalse(Files.exists(appDir.resolve("coverage").resolve("c1")));
+        Assert.assertTrue(Files.exists(older));
+    }
+
+    @Test
+    public void test_SharedFilesAreCountedOnce() throws IOException {
+        Path appsDir = folder.newFolder("apps").toPath();
+        Path appDir = appsDir.resolve("com.zola.bmi");
+        Path shared = createChromosome(appDir, "c1", 3000);
+        createChromosome(appDir, "c2", 2000);
+        Files.delete(appDir.resolve("coverage").resolve("c1").resolve("entity"));
+        Files.delete(appDir.resolve("coverage").resolve("c2").resolve("entity"));
+
+        // the traces file of c1 is shared with the live chromosome c3
+        Path copy = appDir.resolve("traces").resolve("c3");
+        TraceStore.forApp(appDir).copy(shared, copy);
+
+        // c1 and c2 occupy 200 bytes, although 300 bytes are linked from the traces directory
+        TraceCollector collector = new TraceCollector(appsDir, 0, 250);
+        collector.retain("com.zola.bmi", Set.of("c3"));
+        Assert.assertEquals(0, collector.collect("com.zola.bmi"));
+
+        // removing c1 frees nothing, thus c2 needs to be removed as well
+        collector = new TraceCollector(appsDir, 0, 150);
+        collector.retain("com.zola.bmi", Set.of("c3"));
+        Assert.assertEquals(2, collector.collect("com.zola.bmi"));
+        Assert.assertTrue(Files.exists(copy));
+        Assert.assertEquals(1, TraceStore.forApp(appDir).getTraceFiles(null).size());
+    }
+
+    private static Path createChromosome(Path appDir, String chromosome, long age) throws IOException {
+        FileTime time = FileTime.fromMillis(System.currentTimeMillis() - age);
+        Path traceFile = Files.createDirectories(appDir.resolve("traces")).resolve(chromosome);
+        Files.write(traceFile, new byte[100]);
+        Files.setLastModifiedTime(traceFile, time);
+        Path coverageDir = Files.createDirectories(appDir.resolve("coverage").resolve(chromosome));
+        Files.write(coverageDir.resolve("entity"), new byte[100]);
+        Files.setLastModifiedTime(coverageDir, time);
+        return traceFile;
+    }
+}
@@ -0,0 +1,54 @@
+package org.mate.traces;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mate.util.Log;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+public class TraceDictionaryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setup() {
+        Log logger = new Log();
+        logger.doNotLog();
+        Log.registerLogger(logger);
+    }
+
+    @Test
+    public void test_DiscardsIncompleteLastLine() throws IOException {
+        Path appDir = folder.newFolder("com.example.app").toPath();
+        Files.write(appDir.resolve("branches.txt"), List.of("A->foo->0", "A->foo->1"));
+
+        TraceDictionary dictionary = TraceDictionary.load(appDir);
+        Assert.assertEquals(2, dictionary.idOf("B->bar->entry"));
+        dictionary.flush();
+
+        // an interrupted flush leaves a partial line behind
+        Path dictionaryFile = appDir.resolve(TraceDictionary.DICTIONARY_FILE);
+        Files.write(dictionaryFile, "C->ba".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        dictionary = TraceDictionary.load(appDir);
+        Assert.assertEquals(3, dictionary.size());
+        Assert.assertEquals("B->bar->entry", dictionary.traceOf(2));
+
+        // the next flush doesn't merge the new trace with the partial line
+        Assert.assertEquals(3, dictionary.idOf("C->baz->exit"));
+        dictionary.flush();
+
+        dictionary = TraceDictionary.load(appDir);
+        Assert.assertEquals(4, dictionary.size());
+        Assert.assertEquals("C->baz->exit", dictionary.traceOf(3));
+    }
+}
@@ -0,0 +1,50 @@
+package org.mate.traces;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class TraceIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test_IndexIsMaintainedIncrementally() throws IOException {
+        Path tracesDir = folder.newFolder("traces").toPath();
+        Path testCase = Files.createFile(tracesDir.resolve("t1"));
+        Path suite = Files.createDirectories(tracesDir.resolve("s1"));
+        Path first = Files.createFile(suite.resolve("t2"));
+        Files.createFile(suite.resolve("t3.tmp"));
+
+        TraceIndex index = new TraceIndex(tracesDir);
+        Assert.assertEquals(List.of(testCase.toFile(), first.toFile()), index.getTraceFiles("t1+s1"));
+
+        // files stored by the server are registered
+        Path second = Files.createFile(suite.resolve("t3"));
+        index.add(second);
+        Assert.assertEquals(List.of(first.toFile(), second.toFile()), index.getTraceFiles("s1"));
+
+        // a new chromosome is scanned on registration
+        Path copy = Files.createDirectories(tracesDir.resolve("s2")).resolve("t2");
+        Files.copy(first, copy);
+        index.add(copy);
+
+        List<File> all = index.getTraceFiles(null);
+        Assert.assertEquals(4, all.size());
+        Assert.assertTrue(all.contains(copy.toFile()));
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void test_UnknownChromosome() throws IOException {
+        new TraceIndex(folder.newFolder("traces").toPath()).getTraceFiles("unknown");
+    }
+}
@@ -0,0 +1,221 @@
+package org.mate.traces;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mate.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class TraceStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setup() {
+        Log logger = new Log();
+        logger.doNotLog();
+        Log.registerLogger(logger);
+    }
+
+    @Test
+    public void test_IngestPreservesDistinctTraces() throws IOException {
+        Path appDir = folder.newFolder("com.example.app").toPath();
+        Files.write(appDir.resolve("branches.txt"), List.of("A->foo->0", "A->foo->1", "B->bar->0"));
+
+        Path traceFile = Files.createDirectories(appDir.resolve("traces").resolve("c1")).resolve("e1");
+        List<String> lines = List.of("B->bar->0", "A->foo->0", "B->bar->0", "A->foo->0:0.5", "A->foo->0");
+        Files.write(traceFile, lines, StandardCharsets.UTF_8);
+
+        TraceStore store = TraceStore.forTraceFile(traceFile.toFile());
+        Assert.assertEquals(5, store.ingest(traceFile));
+        Assert.assertTrue(TraceFile.isBinary(traceFile));
+        // ingesting twice is a no-op
+        Assert.assertEquals(5, store.ingest(traceFile));
+
+        List<String> expected = List.of("B->bar->0", "A->foo->0", "A->foo->0:0.5");
+        Assert.assertEquals(expected, store.readTraces(traceFile.toFile()));
+
+        // a fresh dictionary loaded from disk resolves the same ids, the distance trace is not part of it
+        TraceDictionary dictionary = TraceDictionary.load(appDir);
+        Assert.assertEquals(3, dictionary.size());
+        Assert.assertEquals(Set.of("A->foo->0:0.5"), store.readDistanceTraces(List.of(traceFile.toFile())));
+        for (int id : store.readIds(traceFile.toFile())) {
+            Assert.assertEquals(store.getDictionary().traceOf(id), dictionary.traceOf(id));
+        }
+    }
+
+    @Test
+    public void test_FlushAllPersistsDictionaries() throws IOException {
+        Path appDir = folder.newFolder("com.example.flush").toPath();
+        TraceStore store = TraceStore.forApp(appDir);
+        int id = store.getDictionary().idOf("A->foo->0");
+
+        TraceStore.flushAll();
+
+        Assert.assertEquals("A->foo->0", TraceDictionary.load(appDir).traceOf(id));
+    }
+
+    @Test
+    public void test_ReadsTextTracesFile() throws IOException {
+        Path appDir = folder.newFolder("com.example.text").toPath();
+        File traceFile = Files.createDirectories(appDir.resolve("traces")).resolve("c1").toFile();
+        Files.write(traceFile.toPath(), List.of("A->foo", "B->bar", "A->foo"), StandardCharsets.UTF_8);
+
+        Assert.assertEquals(List.of("A->foo", "B->bar"), TraceStore.forApp(appDir).readTraces(traceFile));
+        Assert.assertFalse(TraceFile.isBinary(traceFile.toPath()));
+    }
+
+    @Test
+    public void test_CoverageIsStoredAndRecomputedOnChange() throws IOException {
+        Path appDir = folder.newFolder("com.example.coverage").toPath();
+        Path branchesFile = appDir.resolve("branches.txt");
+        Files.write(branchesFile, List.of("A->foo->0", "A->foo->1", "B->bar->0"));
+
+        Path tracesDir = Files.createDirectories(appDir.resolve("traces").resolve("c1"));
+        Path first = tracesDir.resolve("e1");
+        Path second = tracesDir.resolve("e2");
+        Files.write(first, List.of("A->foo->0", "A->foo->0:0.5"), StandardCharsets.UTF_8);
+        Files.write(second, List.of("B->bar->0"), StandardCharsets.UTF_8);
+
+        TraceStore store = TraceStore.forApp(appDir);
+        store.ingest(first);
+        store.ingest(second);
+        Assert.assertTrue(TraceFile.read(first).coverage.containsKey("branches.txt"));
+
+        BitSet covered = store.readCoverage(List.of(first.toFile(), second.toFile()), branchesFile.toFile());
+        BitSet expected = new BitSet();
+        expected.set(0);
+        expected.set(2);
+        Assert.assertEquals(expected, covered);
+
+        // re-instrumentation re-orders the branches
+        Files.write(branchesFile, List.of("B->bar->0", "A->foo->0", "A->foo->1"));
+        Files.setLastModifiedTime(branchesFile, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+
+        covered = store.readCoverage(List.of(first.toFile()), branchesFile.toFile());
+        Assert.assertEquals(BitSet.valueOf(new long[]{0b010}), covered);
+        Assert.assertEquals(AppTargetsCache.get(branchesFile).getFingerprint(),
+                TraceFile.read(first).coverage.get("branches.txt").fingerprint);
+    }
+
+    @Test
+    public void test_ConcurrentWritersDontInterfere() throws Exception {
+        Path tracesDir = folder.newFolder("traces").toPath();
+        Path traceFile = tracesDir.resolve("c1");
+
+        List<Thread> writers = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            int[] ids = {i, i + 1};
+            Thread writer = new Thread(() -> {
+                try {
+                    for (int j = 0; j < 50; j++) {
+                        TraceFile.write(traceFile, new TraceFile.Content(ids, 2, new String[0]));
+                    }
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        Assert.assertEquals(List.of(), failures);
+        Assert.assertEquals(2, TraceFile.read(traceFile).ids.length);
+        try (Stream<Path> files = Files.list(tracesDir)) {
+            Assert.assertEquals(List.of(traceFile), files.collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void test_ReadsManyTracesFiles() throws IOException {
+        Path appDir = folder.newFolder("com.example.bulk").toPath();
+        Path tracesDir = Files.createDirectories(appDir.resolve("traces"));
+
+        List<File> traceFiles = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            Path traceFile = tracesDir.resolve("c" + i);
+            // windows line breaks and no final line break
+            Files.writeString(traceFile, "T" + i + "\r\nT" + (i + 1) + "\r\nT" + i, StandardCharsets.UTF_8);
+            traceFiles.add(traceFile.toFile());
+        }
+
+        TraceStore store = TraceStore.forApp(appDir);
+        Assert.assertEquals(3, store.ingest(traceFiles.get(0).toPath()));
+
+        Set<String> traces = store.readTraces(traceFiles);
+        Assert.assertEquals(17, traces.size());
+        Assert.assertEquals(List.of("T0", "T1", "T2"), new ArrayList<>(traces).subList(0, 3));
+        Assert.assertEquals(17, store.readIdSet(traceFiles).cardinality());
+    }
+
+    @Test
+    public void test_IngestsStreamedTraces() throws IOException {
+        Path appDir = folder.newFolder("com.example.stream").toPath();
+        Path traceFile = Files.createDirectories(appDir.resolve("traces")).resolve("c1");
+        Path archiveFile = appDir.resolve("archive").resolve("c1");
+
+        // the traces span several chunks and contain a line that exceeds the buffer
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            text.append("A->foo->").append(i % 1000).append('\n');
+        }
+        String longTrace = "B->" + "x".repeat(200 * 1024);
+        text.append(longTrace).append("\r\nA->foo->0");
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+
+        TraceStore store = TraceStore.forApp(appDir);
+        TraceStore.StreamedTraces received = store.receive(new ByteArrayInputStream(bytes), archiveFile);
+        Assert.assertEquals(20002, received.getLines());
+        Assert.assertEquals(bytes.length, received.getBytes());
+
+        // the traces file is only written and the traces are only added to the dictionary once the stream has been
+        // validated
+        Assert.assertFalse(Files.exists(traceFile));
+        Assert.assertEquals(0, store.getDictionary().size());
+        received.store(traceFile);
+        Assert.assertTrue(TraceFile.isBinary(traceFile));
+        Assert.assertArrayEquals(bytes, Files.readAllBytes(archiveFile));
+
+        List<String> traces = store.readTraces(traceFile.toFile());
+        Assert.assertEquals(1001, traces.size());
+        Assert.assertEquals("A->foo->999", traces.get(999));
+        Assert.assertEquals(longTrace, traces.get(1000));
+    }
+
+    @Test
+    public void test_RejectedStreamDoesntReachTheDictionary() throws IOException {
+        Path appDir = folder.newFolder("com.example.rejected").toPath();
+        TraceStore store = TraceStore.forApp(appDir);
+
+        byte[] bytes = "A->foo->0\ncat: traces.txt: Permission denied\nA->fo".getBytes(StandardCharsets.UTF_8);
+        TraceStore.StreamedTraces received = store.receive(new ByteArrayInputStream(bytes), null);
+        Assert.assertEquals(3, received.getLines());
+
+        // the stream is rejected, i.e. never stored
+        store.getDictionary().flush();
+        Assert.assertEquals(0, store.getDictionary().size());
+        Assert.assertEquals(0, TraceDictionary.load(appDir).size());
+    }
+}